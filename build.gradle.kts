@@ -2,11 +2,25 @@ plugins {
     id("org.springframework.boot") version "3.3.0"
     id("io.spring.dependency-management") version "1.1.5"
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.turtlemessenger"
 version = "1.0.0"
-java.sourceCompatibility = JavaVersion.VERSION_17
+
+// -PvirtualThreads builds with a Java 21 toolchain, adds src/main/java21 (virtual-thread STOMP
+// channel executors) and runs bootRun/loadTest with spring.threads.virtual.enabled=true.
+val virtualThreads = hasProperty("virtualThreads")
+java {
+    if (virtualThreads) {
+        toolchain.languageVersion.set(JavaLanguageVersion.of(21))
+    } else {
+        sourceCompatibility = JavaVersion.VERSION_17
+    }
+}
+if (virtualThreads) {
+    sourceSets.main { java.srcDir("src/main/java21") }
+}
 
 repositories {
     mavenCentral()
@@ -17,6 +31,9 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.springframework.boot:spring-boot-starter-websocket")
     implementation("org.springframework.boot:spring-boot-starter-security")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
     //SqLite
     implementation("org.hibernate.orm:hibernate-community-dialects:6.4.1.Final")
     implementation("org.xerial:sqlite-jdbc:3.45.1.0")
@@ -28,3 +45,62 @@ dependencies {
 tasks.test {
     useJUnitPlatform()
 }
+
+// End-to-end STOMP load generator in src/loadtest/java, see StompLoadTest for the options.
+// ./gradlew loadTest -PloadArgs="--sessions=5000 --rooms=50 --rate=2000 --json=build/reports/loadtest.json"
+// --nodes=3 starts three instances relaying to each other (tm.cluster.mode=tcp); --url=ws://a/ws,ws://b/ws spreads
+// sessions over separately started JVMs, e.g. bootRun --args="--server.port=8081 --tm.cluster.mode=tcp --tm.cluster.port=7401 --tm.cluster.secret=... ..."
+val loadtest by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadtest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "loadtestImplementation"("org.hdrhistogram:HdrHistogram:2.2.2")
+}
+
+val loadArgs = (findProperty("loadArgs") as String?)?.trim()?.split(Regex("\\s+")).orEmpty().filter { it.isNotEmpty() }
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the STOMP load generator against an embedded instance."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("io.turtlemessenger.loadtest.StompLoadTest")
+    args(loadArgs)
+    jvmArgs("-Xss512k")
+    if (virtualThreads) systemProperty("spring.threads.virtual.enabled", "true")
+}
+
+// Platform vs virtual threads at thousands of concurrent REST clients, see ConcurrencyLoadTest.
+// Always runs on Java 21 since the virtual mode needs it.
+tasks.register<JavaExec>("concurrencyTest") {
+    group = "verification"
+    description = "Compares platform and virtual request threads under thousands of concurrent clients."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("io.turtlemessenger.loadtest.ConcurrencyLoadTest")
+    args(loadArgs)
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(21)) })
+}
+
+tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
+    if (virtualThreads) systemProperty("spring.threads.virtual.enabled", "true")
+}
+
+// Micro-benchmarks live in src/jmh/java. Run with ./gradlew jmh, optionally
+// -PjmhIncludes=<regex> to pick benchmarks and -PjmhResults=<file> to name the JSON report
+// (e.g. build/reports/jmh/$(git rev-parse --short HEAD).json) so runs can be compared across commits.
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(
+        (findProperty("jmhResults") as String?)?.let { layout.projectDirectory.file(it) }
+            ?: layout.buildDirectory.file("reports/jmh/results.json").get()
+    )
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+    (findProperty("jmhProfilers") as String?)?.let { profilers.set(it.split(",")) }
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+}
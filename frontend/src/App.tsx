@@ -1,16 +1,31 @@
-import React, { useEffect, useState } from 'react'
+import React, { useEffect, useRef, useState } from 'react'
 import { Client, IMessage } from '@stomp/stompjs'
 import axios from 'axios'
 
 type Message = {
+  id?: number | null
   roomId: number
   senderId: string
   content: string
   ts: number
+  seq?: number | null
+}
+
+const messageKey = (m: Message) => m.seq != null ? `#${m.seq}` : `${m.ts}|${m.senderId}|${m.content}`
+
+// merges without duplicates, in room order: by seq where both have one, else by timestamp
+const mergeMessages = (prev: Message[], incoming: Message[]) => {
+  const seen = new Set(prev.map(messageKey))
+  const merged = [...prev]
+  for (const m of incoming) { if (!seen.has(messageKey(m))) { seen.add(messageKey(m)); merged.push(m) } }
+  merged.sort((a, b) => (a.seq != null && b.seq != null) ? a.seq - b.seq : a.ts - b.ts)
+  return merged
 }
 
 
 const ROOM_ID = 1
+// a seq missing from catch-up pages for this long was lost on the server, not just not yet stored
+const HOLE_GIVE_UP_MS = 10_000
 
 type Contact = {
   id: number
@@ -18,6 +33,28 @@ type Contact = {
   status: 'PENDING' | 'ACCEPTED' | 'BLOCKED'
 }
 
+type ContactSnapshot = {
+  epoch: number
+  version: number
+  contacts: Contact[]
+  requests: Contact[]
+}
+
+// a send the server did not accept, on /user/queue/errors
+type SendError = {
+  roomId: number
+  ts: number
+  error: 'queue_full' | 'rate_limited'
+  retryAfterMillis: number
+}
+
+type ContactEvent = {
+  epoch: number
+  version: number
+  type: 'CONTACT' | 'REQUEST' | 'REMOVED'
+  contact: Contact
+}
+
 export default function App() {
   const [messages, setMessages] = useState<Message[]>([])
   const [draft, setDraft] = useState('')
@@ -35,6 +72,17 @@ export default function App() {
   const [requests, setRequests] = useState<Contact[]>([])
   const [newContact, setNewContact] = useState('')
   const [contactsError, setContactsError] = useState<string | null>(null)
+  const [sendError, setSendError] = useState<string | null>(null)
+  // version of the contact lists on screen; null until the first snapshot arrives
+  const contactsVersion = useRef<{ epoch: number, version: number } | null>(null)
+  const pendingEvents = useRef<ContactEvent[]>([])
+  // highest room seq up to which nothing is missing; null until history is loaded
+  const lastSeq = useRef<number | null>(null)
+  const catchingUp = useRef(false)
+  // the missing seq catch-up is waiting on, and since when
+  const hole = useRef<{ seq: number, since: number } | null>(null)
+  // highest seq seen live
+  const newestSeq = useRef(0)
 
   // Attach Authorization header for REST
   useEffect(() => {
@@ -86,31 +134,119 @@ export default function App() {
     return () => axios.interceptors.response.eject(id)
   }, [refreshToken])
 
-  // Fetch contacts after login and on changes triggered by actions
-  const refreshContacts = async () => {
-    if (!accessToken) return
+  // Contacts come as a snapshot on (re)connect, then as deltas on /user/queue/contacts
+  const applyContactEvent = (e: ContactEvent) => {
+    const without = (list: Contact[]) => list.filter((c) => c.id !== e.contact.id)
+    if (e.type === 'CONTACT') {
+      setContacts((prev) => [...without(prev), e.contact])
+      setRequests(without)
+    } else if (e.type === 'REQUEST') {
+      setRequests((prev) => [...without(prev), e.contact])
+    } else {
+      setContacts(without)
+      setRequests(without)
+    }
+  }
+
+  const syncContacts = async () => {
+    const known = contactsVersion.current
     try {
-      const [c, r] = await Promise.all([
-        axios.get('/api/contacts'),
-        axios.get('/api/contacts/requests')
-      ])
-      setContacts(c.data as Contact[])
-      setRequests(r.data as Contact[])
+      const res = await axios.get('/api/contacts/snapshot', {
+        params: known ? { epoch: known.epoch, version: known.version } : {},
+        validateStatus: (s) => s === 200 || s === 304
+      })
+      if (res.status === 200) {
+        const snap = res.data as ContactSnapshot
+        setContacts(snap.contacts)
+        setRequests(snap.requests)
+        contactsVersion.current = { epoch: snap.epoch, version: snap.version }
+      }
       setContactsError(null)
     } catch (e: any) {
       const msg = e?.response?.data?.error || 'Failed to load contacts'
       setContactsError(msg)
+      return
     }
+    const buffered = pendingEvents.current
+    pendingEvents.current = []
+    buffered.forEach(onContactEvent)
   }
 
-  useEffect(() => {
-    refreshContacts()
-    // eslint-disable-next-line react-hooks/exhaustive-deps
-  }, [accessToken])
+  const onContactEvent = (e: ContactEvent) => {
+    const known = contactsVersion.current
+    if (!known) { pendingEvents.current.push(e); return }
+    if (e.epoch === known.epoch && e.version <= known.version) return // already in the snapshot
+    if (e.epoch !== known.epoch || e.version !== known.version + 1) {
+      // missed a delta or the server restarted
+      contactsVersion.current = null
+      pendingEvents.current = [e]
+      syncContacts()
+      return
+    }
+    applyContactEvent(e)
+    contactsVersion.current = { epoch: e.epoch, version: e.version }
+  }
+
+  const holeExpired = (seq: number) => {
+    if (hole.current?.seq !== seq) { hole.current = { seq, since: Date.now() }; return false }
+    return Date.now() - hole.current.since > HOLE_GIVE_UP_MS
+  }
+
+  // Fetches only what was missed since lastSeq, following the cursor header page by page.
+  // lastSeq only moves through consecutive seqs: a hole is usually a message the server has not
+  // stored yet, so paging stops there and is retried shortly.
+  const catchUp = async () => {
+    if (catchingUp.current || lastSeq.current == null) return
+    catchingUp.current = true
+    let stalled = false
+    try {
+      let after: number | null = lastSeq.current
+      while (after != null && !stalled) {
+        const res = await axios.get(`/api/rooms/${ROOM_ID}/messages`, { params: { afterSeq: after, size: 200 } })
+        const incoming = res.data as Message[]
+        setMessages((prev) => mergeMessages(prev, incoming))
+        for (const m of incoming) {
+          const last: number = lastSeq.current ?? 0
+          if (m.seq == null || m.seq <= last) continue
+          if (m.seq !== last + 1 && !holeExpired(last + 1)) { stalled = true; break }
+          lastSeq.current = m.seq
+          hole.current = null
+        }
+        const next = res.headers['x-next-cursor']
+        after = next ? Number(next) : null
+      }
+      const upTo = lastSeq.current
+      if (!stalled && upTo != null && upTo < newestSeq.current) {
+        // live messages past lastSeq are not stored yet either; a lost one is skipped
+        if (holeExpired(upTo + 1)) lastSeq.current = upTo + 1
+        stalled = true
+      }
+    } catch (e) {
+      // retried on the next gap or reconnect
+    } finally {
+      catchingUp.current = false
+    }
+    if (stalled) setTimeout(catchUp, 1000)
+  }
+
+  const onLiveMessages = (incoming: Message[]) => {
+    setMessages((prev) => mergeMessages(prev, incoming))
+    let gap = false
+    for (const m of incoming) {
+      if (m.seq != null) newestSeq.current = Math.max(newestSeq.current, m.seq)
+      if (m.seq == null || lastSeq.current == null) continue
+      if (m.seq === lastSeq.current + 1) lastSeq.current = m.seq
+      else if (m.seq > lastSeq.current + 1) gap = true
+    }
+    if (gap) catchUp()
+  }
 
   // STOMP connection
   useEffect(() => {
     if (!accessToken) return
+    // a new token may be another user; plain reconnects of this client keep the version
+    contactsVersion.current = null
+    pendingEvents.current = []
     const url = `${location.protocol === 'https:' ? 'wss' : 'ws'}://${location.hostname}:8080/ws`
     const c = new Client({
       brokerURL: url,
@@ -122,20 +258,34 @@ export default function App() {
       setConnected(true)
       // Subscribe first to avoid missing any real-time messages
       c.subscribe(`/topic/rooms.${ROOM_ID}`, (frame: IMessage) => {
-        const msg: Message = JSON.parse(frame.body)
-        setMessages((prev) => [...prev, msg])
+        // busy rooms may be coalesced into one frame holding an array of messages
+        const body = JSON.parse(frame.body)
+        onLiveMessages(Array.isArray(body) ? body : [body])
+      })
+      c.subscribe('/user/queue/contacts', (frame: IMessage) => onContactEvent(JSON.parse(frame.body) as ContactEvent))
+      c.subscribe('/user/queue/errors', (frame: IMessage) => {
+        const e = JSON.parse(frame.body) as SendError
+        const sent = e.ts > 0 ? `message from ${new Date(e.ts).toLocaleTimeString()}` : 'message'
+        setSendError(e.error === 'rate_limited'
+          ? `Sending too fast: ${sent} was not sent, retry in ${Math.ceil(e.retryAfterMillis / 1000)} s`
+          : `Server busy: ${sent} was not sent, please retry`)
       })
-      // Then merge recent history without overwriting live messages
+      syncContacts()
+      // After a reconnect fetch only the gap; the first time, merge recent history without
+      // overwriting live messages
+      if (lastSeq.current != null) {
+        catchUp()
+        return
+      }
       axios.get(`/api/rooms/${ROOM_ID}/messages?size=50`).then(res => {
         const incoming = res.data as Message[]
-        setMessages((prev) => {
-          const key = (m: Message) => `${m.ts}|${m.senderId}|${m.content}`
-          const seen = new Set(prev.map(key))
-          const merged = [...prev]
-          for (const m of incoming) { if (!seen.has(key(m))) merged.push(m) }
-          merged.sort((a,b) => a.ts - b.ts)
-          return merged
-        })
+        setMessages((prev) => mergeMessages(prev, incoming))
+        const seqs = incoming.map((m) => m.seq).filter((q): q is number => q != null)
+        if (seqs.length > 0) {
+          lastSeq.current = Math.max(...seqs)
+          // live messages that came in while the page loaded may sit past a gap
+          catchUp()
+        }
       }).catch(() => {})
     }
     c.onStompError = (frame) => {
@@ -154,6 +304,7 @@ export default function App() {
     const payload: Message = { roomId: ROOM_ID, senderId: username || 'me', content: text, ts: Date.now() }
     client.publish({ destination: `/app/rooms.${ROOM_ID}.send`, body: JSON.stringify(payload) })
     setDraft('')
+    setSendError(null)
   }
 
   const doLogin = async (e: React.FormEvent) => {
@@ -197,7 +348,6 @@ export default function App() {
       setContactsError(null)
       await axios.post('/api/contacts', { user: u })
       setNewContact('')
-      await refreshContacts()
     } catch (e: any) {
       const msg = e?.response?.data?.error || 'Failed to add contact'
       setContactsError(msg)
@@ -207,16 +357,14 @@ export default function App() {
   const acceptRequest = async (u: string) => {
     try {
       await axios.post('/api/contacts/accept', { user: u })
-      await refreshContacts()
     } catch (e) {
-      // ignore; UI will refetch
+      // ignore; the list changes through the pushed delta
     }
   }
 
   const removeContact = async (u: string) => {
     try {
       await axios.delete('/api/contacts', { params: { user: u } })
-      await refreshContacts()
     } catch (e) {
       // ignore
     }
@@ -326,6 +474,7 @@ export default function App() {
             />
             <button onClick={send} disabled={!connected}>Send</button>
           </div>
+          {sendError && <div style={{ color: '#d55', marginTop: 8 }}>{sendError}</div>}
           <p style={{ color: connected ? '#2a7' : '#d55' }}>
             {connected ? 'Connected' : 'Disconnected'} to room #{ROOM_ID} via STOMP/WebSocket.
           </p>
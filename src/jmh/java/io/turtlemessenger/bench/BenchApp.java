@@ -0,0 +1,41 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.TurtleMessengerApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boots the application on a random port against a throwaway SQLite file.
+ */
+final class BenchApp {
+    private BenchApp() {}
+
+    static ConfigurableApplicationContext start(String... extraProperties) {
+        Path db;
+        try {
+            db = Files.createTempFile("tm-bench", ".db");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        db.toFile().deleteOnExit();
+        List<String> props = new ArrayList<>(List.of(
+                "server.port=0",
+                "management.server.port=0",
+                "spring.datasource.url=jdbc:sqlite:" + db,
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN",
+                "tm.rate-limit.enabled=false"
+        ));
+        props.addAll(List.of(extraProperties));
+        // command-line arguments outrank application.properties, builder properties do not
+        return new SpringApplicationBuilder(TurtleMessengerApplication.class)
+                .run(props.stream().map(p -> "--" + p).toArray(String[]::new));
+    }
+}
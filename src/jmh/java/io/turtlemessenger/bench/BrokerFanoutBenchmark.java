@@ -0,0 +1,135 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.broker.RoomBroadcaster;
+import io.turtlemessenger.broker.ShardedRoomBroker;
+import io.turtlemessenger.broker.WireFormatRegistry;
+import io.turtlemessenger.dto.MessageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Room fan-out throughput: Spring's simple broker with the default client outbound pool against
+ * {@link ShardedRoomBroker}. Both end in a counting handler standing in for the WebSocket
+ * sub-protocol handler; {@code deliveryCost} burns CPU per frame as a stand-in for encoding and
+ * the socket write. One operation is one chat message delivered to its whole room.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BrokerFanoutBenchmark {
+    private static final int BATCH = 1_000;
+
+    @Param({"simple", "sharded"})
+    public String broker;
+
+    @Param({"10000"})
+    public int sessions;
+
+    @Param({"100", "1000"})
+    public int rooms;
+
+    @Param({"0", "200"})
+    public int deliveryCost;
+
+    private final LongAdder delivered = new LongAdder();
+    private RoomBroadcaster broadcaster;
+    private ThreadPoolTaskExecutor outboundExecutor;
+    private SimpleBrokerMessageHandler simpleBroker;
+    private ShardedRoomBroker shardedBroker;
+    private MessageDTO payload;
+    private long nextRoom;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        converter.setContentTypeResolver(resolver);
+        MessageHandler client = message -> {
+            if (deliveryCost > 0) Blackhole.consumeCPU(deliveryCost);
+            delivered.increment();
+        };
+        payload = new MessageDTO(1L, 1L, "bench-user", "hello from the fan-out benchmark", System.currentTimeMillis());
+
+        if (broker.equals("simple")) {
+            // the same setup WebSocketMessageBrokerConfigurationSupport gives the client outbound channel
+            outboundExecutor = new ThreadPoolTaskExecutor();
+            outboundExecutor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+            outboundExecutor.setAllowCoreThreadTimeOut(true);
+            outboundExecutor.setThreadNamePrefix("clientOutboundChannel-");
+            outboundExecutor.initialize();
+            ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel(outboundExecutor);
+            outbound.subscribe(client);
+            ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+            ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+            simpleBroker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic"));
+            simpleBroker.start();
+            for (int i = 0; i < sessions; i++) {
+                SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+                connect.setSessionId("s" + i);
+                simpleBroker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+                SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+                subscribe.setSessionId("s" + i);
+                subscribe.setSubscriptionId("sub-0");
+                subscribe.setDestination(RoomBroadcaster.topic(1 + i % rooms));
+                simpleBroker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+            }
+            // the broker answers every CONNECT with a CONNECT_ACK; let those drain before measuring
+            while (delivered.sum() < sessions) LockSupport.parkNanos(100_000);
+            SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+            template.setMessageConverter(converter);
+            broadcaster = (roomId, p) -> template.convertAndSend(RoomBroadcaster.topic(roomId), p);
+        } else {
+            shardedBroker = new ShardedRoomBroker(() -> converter, () -> client, new WireFormatRegistry(), 0, 65_536, 1_000);
+            shardedBroker.start();
+            for (int i = 0; i < sessions; i++) shardedBroker.subscribe("s" + i, "sub-0", 1 + i % rooms);
+            broadcaster = shardedBroker;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (simpleBroker != null) simpleBroker.stop();
+        if (outboundExecutor != null) outboundExecutor.shutdown();
+        if (shardedBroker != null) shardedBroker.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void broadcast() {
+        long target = delivered.sum();
+        for (int i = 0; i < BATCH; i++) {
+            long room = 1 + (nextRoom++ % rooms);
+            target += sessions / rooms + (room <= sessions % rooms ? 1 : 0);
+            broadcaster.broadcast(room, payload);
+        }
+        // wait for the whole batch to reach the handler
+        while (delivered.sum() < target) LockSupport.parkNanos(10_000);
+    }
+}
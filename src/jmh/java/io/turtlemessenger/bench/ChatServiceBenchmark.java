@@ -0,0 +1,100 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.service.ChatService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * saveMessage and getHistory against a temporary SQLite file ({@code store=jpa}) or a temporary
+ * message log directory ({@code store=log}). {@code historyCache=false} turns the recent-message
+ * ring buffer off so every history read goes to the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatServiceBenchmark {
+    private static final Principal SENDER = () -> "bench-user";
+    private static final int SEED_PER_ROOM = 500;
+    // the deep page starts this many messages from the oldest, well out of the recent-message cache
+    private static final int DEEP_PAGE_AT = 100;
+
+    @Param({"true", "false"})
+    public boolean historyCache;
+
+    @Param({"jpa", "log"})
+    public String store;
+
+    @Param({"16"})
+    public int rooms;
+
+    private Path logDir;
+    // per room, the id the deep page reads before; ids are global, so each room has its own
+    private long[] deepPageCursor;
+
+    private ConfigurableApplicationContext context;
+    private ChatService chat;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        logDir = Files.createTempDirectory("tm-bench-log");
+        context = BenchApp.start("tm.chat.history-cache.per-room=" + (historyCache ? 200 : 0),
+                "tm.store=" + store, "tm.store.log.dir=" + logDir);
+        chat = context.getBean(ChatService.class);
+        deepPageCursor = new long[rooms + 1];
+        for (long room = 1; room <= rooms; room++) {
+            for (int i = 0; i < SEED_PER_ROOM; i++) {
+                MessageDTO saved = chat.saveMessage(room, new MessageDTO(room, "bench-user", "seed message " + i, 0), SENDER);
+                if (i == DEEP_PAGE_AT) deepPageCursor[(int) room] = saved.getId();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(logDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    private long randomRoom() {
+        return 1 + ThreadLocalRandom.current().nextInt(rooms);
+    }
+
+    @Benchmark
+    public Object saveMessage() {
+        long room = randomRoom();
+        return chat.saveMessage(room, new MessageDTO(room, "bench-user", "benchmark message", 0), SENDER);
+    }
+
+    @Benchmark
+    public List<MessageDTO> getHistoryLatest() {
+        return chat.getHistory(randomRoom(), 50, null);
+    }
+
+    @Benchmark
+    public List<MessageDTO> getHistoryDeepPage() {
+        long room = randomRoom();
+        return chat.getPage(room, 50, deepPageCursor[(int) room], null).messages();
+    }
+}
@@ -0,0 +1,117 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.repository.JdbcTimestamps;
+import io.turtlemessenger.service.ContactGraph;
+import io.turtlemessenger.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * incomingRequests and listContacts for a user with a large contact list, from the warm contact
+ * graph and after an eviction ({@code coldListContacts}, one load query), plus a mutation
+ * round trip against the large list. Rows are seeded with plain JDBC so setup doesn't pay for
+ * BCrypt or JPA.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContactServiceBenchmark {
+    private static final Principal HUB = () -> "hub";
+
+    private static final Principal SPARE = () -> "spare";
+
+    @Param({"1000", "10000", "50000"})
+    public int contacts;
+
+    private ConfigurableApplicationContext context;
+    private ContactService service;
+    private ContactGraph graph;
+    private long hubId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchApp.start();
+        service = context.getBean(ContactService.class);
+        graph = context.getBean(ContactGraph.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        Instant now = Instant.now();
+
+        List<String> names = new ArrayList<>();
+        names.add("hub");
+        names.add("spare");
+        for (int i = 0; i < contacts; i++) names.add("peer" + i);
+        jdbc.batchUpdate("INSERT INTO users (username, password_hash, created_at) VALUES (?, 'x', ?)", names, 1000,
+                (ps, name) -> {
+                    ps.setString(1, name);
+                    JdbcTimestamps.bind(ps, 2, now);
+                });
+        Long hub = jdbc.queryForObject("SELECT id FROM users WHERE username = 'hub'", Long.class);
+        hubId = hub;
+        List<Long> peers = jdbc.queryForList("SELECT id FROM users WHERE username NOT IN ('hub', 'spare') ORDER BY id", Long.class);
+
+        // half of the peers sent the hub a request, the other half are accepted both ways
+        List<Object[]> edges = new ArrayList<>();
+        for (int i = 0; i < peers.size(); i++) {
+            long peer = peers.get(i);
+            if (i % 2 == 0) {
+                edges.add(new Object[]{peer, hub, "PENDING"});
+            } else {
+                edges.add(new Object[]{peer, hub, "ACCEPTED"});
+                edges.add(new Object[]{hub, peer, "ACCEPTED"});
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO contacts (user_id, contact_id, status, created_at) VALUES (?, ?, ?, ?)", edges, 1000,
+                (ps, e) -> {
+                    ps.setLong(1, (Long) e[0]);
+                    ps.setLong(2, (Long) e[1]);
+                    ps.setString(3, (String) e[2]);
+                    JdbcTimestamps.bind(ps, 4, now);
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ContactDTO> incomingRequests() {
+        return service.incomingRequests(HUB);
+    }
+
+    @Benchmark
+    public List<ContactDTO> listContacts() {
+        return service.listContacts(HUB);
+    }
+
+    @Benchmark
+    public List<ContactDTO> coldListContacts() {
+        graph.invalidate(hubId);
+        return service.listContacts(HUB);
+    }
+
+    @Benchmark
+    public ContactDTO requestAcceptRemove() {
+        service.addContact("spare", HUB);
+        ContactDTO accepted = service.accept("hub", SPARE);
+        service.remove("spare", HUB);
+        return accepted;
+    }
+}
@@ -0,0 +1,43 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.security.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtBenchmark {
+    private JwtUtil jwt;
+    private JwtUtil uncached;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwt = new JwtUtil("bench-secret", 900);
+        uncached = new JwtUtil("bench-secret", 900, 0);
+        token = jwt.generateToken("bench-user");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwt.generateToken("bench-user");
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return jwt.isValid(token);
+    }
+
+    @Benchmark
+    public boolean isValidWithoutCache() {
+        return uncached.isValid(token);
+    }
+}
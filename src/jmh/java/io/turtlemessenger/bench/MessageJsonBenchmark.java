@@ -0,0 +1,52 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.dto.MessageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageDTO serialization the way the broker's message converter does it for every broadcast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageJsonBenchmark {
+    private MappingJackson2MessageConverter converter;
+    private MessageHeaders headers;
+    private MessageDTO dto;
+    private Message<?> encoded;
+
+    @Setup
+    public void setup() {
+        converter = new MappingJackson2MessageConverter();
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        converter.setContentTypeResolver(resolver);
+        headers = new MessageHeaders(Map.of());
+        dto = new MessageDTO(12345L, 1L, "bench-user", "hello from the benchmark, this is a typical short chat line", System.currentTimeMillis());
+        encoded = converter.toMessage(dto, headers);
+    }
+
+    @Benchmark
+    public Message<?> serialize() {
+        return converter.toMessage(dto, headers);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(encoded, MessageDTO.class);
+    }
+}
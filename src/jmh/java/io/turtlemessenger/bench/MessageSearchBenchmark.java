@@ -0,0 +1,102 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.repository.MessageBatchWriter;
+import io.turtlemessenger.service.IdentityCache;
+import io.turtlemessenger.service.MessageSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room search over a large messages table. Messages are eight words drawn from a skewed
+ * 5000-word vocabulary, so {@code w0} is in a large share of rows and {@code w4000} in few.
+ * Rows are seeded through the write-behind batch writer, so the FTS5 triggers index them
+ * as they would in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageSearchBenchmark {
+    private static final int ROOMS = 100;
+    private static final int VOCABULARY = 5000;
+    private static final int BATCH = 10_000;
+
+    @Param({"1000000", "10000000"})
+    public int messages;
+
+    private ConfigurableApplicationContext context;
+    private MessageSearch search;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchApp.start();
+        search = context.getBean(MessageSearch.class);
+        MessageBatchWriter writer = context.getBean(MessageBatchWriter.class);
+        IdentityCache identities = context.getBean(IdentityCache.class);
+        for (long room = 1; room <= ROOMS; room++) identities.ensureRoom(room);
+
+        SplittableRandom random = new SplittableRandom(42);
+        Instant now = Instant.now();
+        List<PendingMessage> batch = new ArrayList<>(BATCH);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            text.setLength(0);
+            for (int w = 0; w < 8; w++) {
+                double u = random.nextDouble();
+                text.append(w == 0 ? "w" : " w").append((int) (u * u * u * VOCABULARY));
+            }
+            batch.add(new PendingMessage(1 + random.nextInt(ROOMS), "bench-user", text.toString(), now));
+            if (batch.size() == BATCH) {
+                writer.insert(batch, Map.of());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) writer.insert(batch, Map.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private long randomRoom() {
+        return 1 + ThreadLocalRandom.current().nextInt(ROOMS);
+    }
+
+    @Benchmark
+    public Object commonTerm() {
+        return search.search(randomRoom(), "w0", 0, 20);
+    }
+
+    @Benchmark
+    public Object rareTerm() {
+        return search.search(randomRoom(), "w4000", 0, 20);
+    }
+
+    @Benchmark
+    public Object twoTermsWithPrefix() {
+        return search.search(randomRoom(), "w1 w40", 0, 20);
+    }
+
+    @Benchmark
+    public Object deepPage() {
+        return search.search(randomRoom(), "w0", 20, 20);
+    }
+}
@@ -0,0 +1,87 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.service.MessageExporter;
+import io.turtlemessenger.service.MessageImporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bulk NDJSON import and streaming export of {@code messages} rows, each invocation timed end
+ * to end. Imports go into a fresh room every time; exports read a room seeded in setup and
+ * discard the bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class MessageTransferBenchmark {
+    @Param({"1000000"})
+    public int messages;
+
+    @Param({"jpa", "log"})
+    public String store;
+
+    private Path logDir;
+    private ConfigurableApplicationContext context;
+    private MessageImporter importer;
+    private MessageExporter exporter;
+    private byte[] ndjson;
+    private long nextRoom = 2;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        logDir = Files.createTempDirectory("tm-bench-log");
+        context = BenchApp.start("tm.store=" + store, "tm.store.log.dir=" + logDir, "tm.import.enabled=true");
+        importer = context.getBean(MessageImporter.class);
+        exporter = context.getBean(MessageExporter.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(messages * 96);
+        long ts = System.currentTimeMillis() - messages;
+        for (int i = 0; i < messages; i++) {
+            out.writeBytes(("{\"senderId\":\"user-" + (i % 500) + "\",\"content\":\"migrated message number " + i
+                    + "\",\"ts\":" + (ts + i) + "}\n").getBytes(StandardCharsets.UTF_8));
+        }
+        ndjson = out.toByteArray();
+        importer.importRoom(1, new ByteArrayInputStream(ndjson));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(logDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public Object importRoom() throws IOException {
+        return importer.importRoom(nextRoom++, new ByteArrayInputStream(ndjson));
+    }
+
+    @Benchmark
+    public long exportRoom() throws IOException {
+        return exporter.export(1, 0, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,61 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.service.SendRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one rate-limit check on the send path. Limits are high enough that every check is
+ * allowed, except in {@code refused}; {@code users} sets how many buckets the checks spread over.
+ * The multi-threaded variants all send to one room, so they contend on its bucket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SendRateLimiterBenchmark {
+    @Param({"1", "10000"})
+    public int users;
+
+    private SendRateLimiter limiter;
+    private SendRateLimiter strict;
+    private String[] names;
+
+    @Setup
+    public void setup() {
+        limiter = new SendRateLimiter(true, 1e9, 1_000_000, 1e9, 1_000_000, 120);
+        strict = new SendRateLimiter(true, 1, 1, 1, 1, 120);
+        strict.check("user-0", 1);
+        names = new String[users];
+        for (int i = 0; i < users; i++) names[i] = "user-" + i;
+    }
+
+    private String randomUser() {
+        return names[ThreadLocalRandom.current().nextInt(users)];
+    }
+
+    @Benchmark
+    public Object allowed() {
+        return limiter.check(randomUser(), 1 + ThreadLocalRandom.current().nextInt(100));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object allowedOneRoomContended() {
+        return limiter.check(randomUser(), 1);
+    }
+
+    @Benchmark
+    public Object refused() {
+        return strict.check("user-0", 1);
+    }
+}
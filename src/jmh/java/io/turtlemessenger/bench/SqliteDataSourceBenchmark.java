@@ -0,0 +1,92 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.service.ChatService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed read/write load on SQLite: six threads reading history pages (ring buffer off, so every
+ * read reaches the database) while two threads save messages synchronously. {@code mode=default}
+ * is Spring Boot's single Hikari pool without pragmas, {@code mode=sqlite} the WAL writer plus
+ * reader pool. Operations that fail (SQLITE_BUSY, pool timeouts) are reported as the
+ * {@code failures} counter instead of ending the run.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SqliteDataSourceBenchmark {
+    private static final Principal SENDER = () -> "bench-user";
+    private static final int ROOMS = 16;
+
+    @Param({"default", "sqlite"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private ChatService chat;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Failures {
+        public long failures;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchApp.start("tm.db.mode=" + mode, "tm.chat.history-cache.per-room=0");
+        chat = context.getBean(ChatService.class);
+        for (long room = 1; room <= ROOMS; room++) {
+            for (int i = 0; i < 500; i++) {
+                chat.saveMessage(room, new MessageDTO(room, "bench-user", "seed message " + i, 0), SENDER);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public List<MessageDTO> read(Failures failures) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            return chat.getPage(1L + random.nextInt(ROOMS), 50, 100L + random.nextInt(5_000), null).messages();
+        } catch (RuntimeException e) {
+            failures.failures++;
+            return List.of();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Object write(Failures failures) {
+        long room = 1L + ThreadLocalRandom.current().nextInt(ROOMS);
+        try {
+            return chat.saveMessage(room, new MessageDTO(room, "bench-user", "benchmark message", 0), SENDER);
+        } catch (RuntimeException e) {
+            failures.failures++;
+            return null;
+        }
+    }
+}
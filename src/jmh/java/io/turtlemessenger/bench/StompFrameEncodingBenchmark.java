@@ -0,0 +1,74 @@
+package io.turtlemessenger.bench;
+
+import io.turtlemessenger.broker.RoomBroadcaster;
+import io.turtlemessenger.broker.SharedFrameStompEncoder;
+import io.turtlemessenger.dto.MessageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one room MESSAGE frame for every subscriber, as StompSubProtocolHandler does per
+ * session: Spring's {@link StompEncoder} against {@link SharedFrameStompEncoder}. One operation is
+ * one broadcast; the payload array is shared by all subscribers, as it is in a real fan-out.
+ * Run with {@code -PjmhProfilers=gc} to see the allocation per broadcast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StompFrameEncodingBenchmark {
+
+    @Param({"spring", "shared"})
+    public String encoder;
+
+    @Param({"10", "100", "1000"})
+    public int subscribers;
+
+    private StompEncoder stompEncoder;
+    private MessageHeaders[] headers;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        stompEncoder = encoder.equals("shared") ? new SharedFrameStompEncoder() : new StompEncoder();
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        converter.setContentTypeResolver(resolver);
+        MessageDTO dto = new MessageDTO(12345L, 42L, "bench-user", "hello from the benchmark, this is a typical short chat line", System.currentTimeMillis());
+        payload = (byte[]) converter.toMessage(dto, new MessageHeaders(Map.of())).getPayload();
+
+        headers = new MessageHeaders[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            accessor.setNativeHeader("destination", RoomBroadcaster.topic(42));
+            accessor.setNativeHeader("content-type", "application/json");
+            accessor.setNativeHeader("subscription", "sub-" + (i % 4));
+            accessor.setNativeHeader("message-id", "session" + i + "-" + 1000);
+            headers[i] = accessor.getMessageHeaders();
+        }
+    }
+
+    @Benchmark
+    public void broadcast(Blackhole bh) {
+        // a fresh payload array per broadcast, so the shared encoder cannot carry frames across operations
+        byte[] body = payload.clone();
+        for (MessageHeaders h : headers) bh.consume(stompEncoder.encode(h, body));
+    }
+}
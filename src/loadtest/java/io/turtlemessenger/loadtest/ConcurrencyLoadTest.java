@@ -0,0 +1,180 @@
+package io.turtlemessenger.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.repository.MessageBatchWriter;
+import io.turtlemessenger.security.JwtUtil;
+import io.turtlemessenger.service.AuthService;
+import io.turtlemessenger.service.IdentityCache;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop REST load at thousands of concurrent clients, once with platform request threads
+ * and once with {@code spring.threads.virtual.enabled=true}. Every client keeps exactly one
+ * request in flight: a history page (the ring buffer is disabled so every read reaches SQLite),
+ * a message post, or a login (BCrypt), by {@code --write-ratio} and {@code --login-ratio}.
+ *
+ * Options: --clients=2000 --rooms=100 --warmup=5 --duration=20 --write-ratio=0.2
+ * --login-ratio=0.05 --modes=platform,virtual --json=<file> and --app.<property>=value.
+ * The virtual mode needs a Java 21 runtime.
+ */
+public final class ConcurrencyLoadTest {
+    private static final Set<String> KNOWN = Set.of("clients", "rooms", "warmup", "duration",
+            "write-ratio", "login-ratio", "modes", "json");
+    private static final String PASSWORD = "load-test-password";
+
+    private ConcurrencyLoadTest() {}
+
+    private record Result(String mode, int clients, double seconds, long requests, long errors,
+                          double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+        double perSecond() {
+            return requests / seconds;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> app = new LinkedHashMap<>();
+        Map<String, String> opts = LoadTestOptions.split(args, KNOWN, app);
+        int clients = Integer.parseInt(opts.getOrDefault("clients", "2000"));
+        int rooms = Integer.parseInt(opts.getOrDefault("rooms", "100"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("warmup", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("duration", "20")));
+        double writeRatio = Double.parseDouble(opts.getOrDefault("write-ratio", "0.2"));
+        double loginRatio = Double.parseDouble(opts.getOrDefault("login-ratio", "0.05"));
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : opts.getOrDefault("modes", "platform,virtual").split(",")) {
+            if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+                System.out.println("skipping virtual mode: needs Java 21, running on " + Runtime.version());
+                continue;
+            }
+            if (!mode.equals("virtual") && !mode.equals("platform")) throw new IllegalArgumentException("unknown mode " + mode);
+            Map<String, String> props = new LinkedHashMap<>(app);
+            props.put("spring.threads.virtual.enabled", String.valueOf(mode.equals("virtual")));
+            props.putIfAbsent("tm.chat.history-cache.per-room", "0");
+            props.putIfAbsent("server.tomcat.max-connections", String.valueOf(Math.max(8192, clients * 2)));
+            props.putIfAbsent("server.tomcat.accept-count", "1000");
+            try (ConfigurableApplicationContext ctx = EmbeddedApp.start(props)) {
+                results.add(run(mode, ctx, clients, rooms, warmup, duration, writeRatio, loginRatio));
+            }
+        }
+
+        System.out.printf("%n%-9s %8s %12s %8s %9s %9s %9s %9s%n", "mode", "clients", "requests/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Result r : results) {
+            System.out.printf("%-9s %8d %12.0f %8d %9.2f %9.2f %9.2f %9.2f%n", r.mode(), r.clients(), r.perSecond(),
+                    r.errors(), r.p50Millis(), r.p99Millis(), r.p999Millis(), r.maxMillis());
+        }
+        if (opts.containsKey("json")) {
+            Path json = Path.of(opts.get("json"));
+            if (json.getParent() != null) Files.createDirectories(json.getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(json.toFile(), results);
+        }
+    }
+
+    private static Result run(String mode, ConfigurableApplicationContext ctx, int clients, int rooms,
+                              Duration warmup, Duration duration, double writeRatio, double loginRatio) throws Exception {
+        seed(ctx, rooms);
+        String base = "http://127.0.0.1:" + EmbeddedApp.port(ctx);
+        String token = ctx.getBean("accessJwt", JwtUtil.class).generateToken("load-user");
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        Runnable[] loops = new Runnable[clients];
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            loops[i] = new Runnable() {
+                @Override
+                public void run() {
+                    long sent = System.nanoTime();
+                    if (sent >= end) return;
+                    http.sendAsync(request(base, token, client, rooms, writeRatio, loginRatio), HttpResponse.BodyHandlers.discarding())
+                            .whenComplete((response, ex) -> {
+                                long done = System.nanoTime();
+                                if (sent >= measureFrom) {
+                                    if (ex != null || response.statusCode() >= 400) {
+                                        errors.increment();
+                                    } else {
+                                        requests.increment();
+                                        latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(done - sent), latency.getHighestTrackableValue()));
+                                    }
+                                }
+                                run();
+                            });
+                }
+            };
+        }
+        System.out.printf("%s: %d clients, %d s warm-up, %d s measured%n", mode, clients, warmup.toSeconds(), duration.toSeconds());
+        for (Runnable loop : loops) loop.run();
+        // clients stop issuing at `end`; give in-flight requests a moment to finish
+        while (System.nanoTime() < end) TimeUnit.MILLISECONDS.sleep(100);
+        TimeUnit.SECONDS.sleep(2);
+
+        return new Result(mode, clients, duration.toNanos() / 1e9, requests.sum(), errors.sum(),
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, latency.getMaxValue() / 1000.0);
+    }
+
+    private static HttpRequest request(String base, String token, int client, int rooms, double writeRatio, double loginRatio) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double dice = random.nextDouble();
+        long room = 1 + random.nextInt(rooms);
+        HttpRequest.Builder b = HttpRequest.newBuilder().timeout(Duration.ofSeconds(60));
+        if (dice < loginRatio) {
+            return b.uri(URI.create(base + "/api/auth/login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"load-user\",\"password\":\"" + PASSWORD + "\"}"))
+                    .build();
+        }
+        b.header("Authorization", "Bearer " + token);
+        if (dice < loginRatio + writeRatio) {
+            return b.uri(URI.create(base + "/api/rooms/" + room + "/messages"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"content\":\"concurrency test message from client " + client + "\"}"))
+                    .build();
+        }
+        return b.uri(URI.create(base + "/api/rooms/" + room + "/messages?size=50")).GET().build();
+    }
+
+    /** One account for the login requests and 200 messages per room, inserted in bulk. */
+    private static void seed(ConfigurableApplicationContext ctx, int rooms) {
+        ctx.getBean(AuthService.class).register("load-user", PASSWORD);
+        IdentityCache identities = ctx.getBean(IdentityCache.class);
+        MessageBatchWriter writer = ctx.getBean(MessageBatchWriter.class);
+        Map<String, Long> senders = identities.userIds(List.of("load-user"));
+        Instant now = Instant.now();
+        for (long room = 1; room <= rooms; room++) {
+            identities.ensureRoom(room);
+            List<PendingMessage> batch = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                batch.add(new PendingMessage(room, "load-user", "seed message " + i, now.minusSeconds(200 - i)));
+            }
+            writer.insert(batch, senders);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.turtlemessenger.loadtest;
+
+import io.turtlemessenger.TurtleMessengerApplication;
+import io.turtlemessenger.broker.TcpClusterRelay;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Starts the application on a random port against a throwaway SQLite file, or several of them
+ * relaying room broadcasts to each other.
+ */
+final class EmbeddedApp {
+    private EmbeddedApp() {}
+
+    static ConfigurableApplicationContext start(Map<String, String> overrides) throws IOException {
+        Path db = Files.createTempFile("tm-loadtest", ".db");
+        db.toFile().deleteOnExit();
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("server.port", "0");
+        props.put("management.server.port", "0");
+        props.put("spring.datasource.url", "jdbc:sqlite:" + db);
+        props.put("spring.main.banner-mode", "off");
+        props.put("logging.level.root", "WARN");
+        // load generators send far faster than any one user is allowed to
+        props.put("tm.rate-limit.enabled", "false");
+        props.putAll(overrides);
+        // as arguments, not builder properties: those are defaults that application.properties overrides
+        return new SpringApplicationBuilder(TurtleMessengerApplication.class).run(props.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new));
+    }
+
+    /**
+     * Starts {@code nodes} instances with {@code tm.cluster.mode=tcp}, all given the same peer list,
+     * and returns once each has a relay connection to every other one.
+     */
+    static List<ConfigurableApplicationContext> startCluster(int nodes, Map<String, String> overrides) throws IOException {
+        String secret = UUID.randomUUID().toString();
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) peers.add("127.0.0.1:" + freePort());
+        List<ConfigurableApplicationContext> apps = new ArrayList<>();
+        try {
+            for (String peer : peers) {
+                Map<String, String> props = new LinkedHashMap<>(overrides);
+                props.put("tm.cluster.mode", "tcp");
+                props.put("tm.cluster.port", peer.substring(peer.lastIndexOf(':') + 1));
+                props.put("tm.cluster.peers", String.join(",", peers));
+                props.putIfAbsent("tm.cluster.secret", secret);
+                props.putIfAbsent("tm.cluster.reconnect-millis", "200");
+                apps.add(start(props));
+            }
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            for (ConfigurableApplicationContext app : apps) {
+                TcpClusterRelay relay = app.getBean(TcpClusterRelay.class);
+                while (relay.stats().connected() < nodes - 1) {
+                    if (System.nanoTime() > deadline) throw new IllegalStateException("cluster peers did not connect within 30 s");
+                    Thread.sleep(50);
+                }
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            for (ConfigurableApplicationContext app : apps) app.close();
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw e instanceof RuntimeException r ? r : new IllegalStateException(e);
+        }
+        return apps;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static int port(ConfigurableApplicationContext app) {
+        return ((WebServerApplicationContext) app).getWebServer().getPort();
+    }
+}
@@ -0,0 +1,68 @@
+package io.turtlemessenger.loadtest;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * One simulated client: a STOMP session subscribed to a single room.
+ */
+final class LoadSession extends StompSessionHandlerAdapter {
+    final int room;
+    private final LoadStats stats;
+    private volatile StompSession session;
+
+    LoadSession(int room, LoadStats stats) {
+        this.room = room;
+        this.stats = stats;
+    }
+
+    static String topic(int room) {
+        return "/topic/rooms." + room;
+    }
+
+    StompSession session() {
+        return session;
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        session.subscribe(topic(room), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                stats.onDelivery((byte[]) payload);
+            }
+        });
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return byte[].class;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        // only ERROR frames reach the session handler
+        stats.sessionError();
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+        stats.sessionError();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        stats.sessionError();
+    }
+}
@@ -0,0 +1,66 @@
+package io.turtlemessenger.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by publishers and subscribers. Every published message carries its send time
+ * as {@code lt|<nanos since origin>|} in the content, so any subscriber can compute the latency
+ * without a lookup. Only messages sent inside the measurement window are counted.
+ */
+final class LoadStats {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    final long origin = System.nanoTime();
+    final Histogram latencyMicros = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    final LongAdder sent = new LongAdder();
+    final LongAdder sendFailures = new LongAdder();
+    final LongAdder expected = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder sessionErrors = new LongAdder();
+    volatile long measureFrom = Long.MAX_VALUE;
+    volatile long measureUntil = Long.MAX_VALUE;
+    // set before the sessions disconnect; the client reports each closing session as an error
+    volatile boolean closing;
+
+    void sessionError() {
+        if (!closing) sessionErrors.increment();
+    }
+
+    long now() {
+        return System.nanoTime() - origin;
+    }
+
+    boolean measured(long sentAt) {
+        return sentAt >= measureFrom && sentAt < measureUntil;
+    }
+
+    /** A frame holds one message, or an array of them when the room is coalesced. */
+    void onDelivery(byte[] payload) {
+        long now = now();
+        for (int from = 0; from < payload.length; ) {
+            int at = marker(payload, from);
+            if (at < 0) return;
+            long sentAt = 0;
+            int j = at + 3;
+            for (; j < payload.length && payload[j] >= '0' && payload[j] <= '9'; j++) sentAt = sentAt * 10 + (payload[j] - '0');
+            from = j;
+            if (j == at + 3 || !measured(sentAt)) continue;
+            long micros = (now - sentAt) / 1_000;
+            latencyMicros.recordValue(Math.max(0, Math.min(micros, MAX_LATENCY_MICROS)));
+            delivered.increment();
+        }
+    }
+
+    /** Scans the raw JSON for the next marker, so the client doesn't spend its CPU on Jackson. */
+    private static int marker(byte[] p, int from) {
+        for (int i = from; i + 3 < p.length; i++) {
+            if (p[i] == 'l' && p[i + 1] == 't' && p[i + 2] == '|') return i;
+        }
+        return -1;
+    }
+}
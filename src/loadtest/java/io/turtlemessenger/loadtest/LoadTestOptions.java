@@ -0,0 +1,72 @@
+package io.turtlemessenger.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line options, given as {@code --name=value}. Options starting with {@code --app.}
+ * are passed to the embedded application as Spring properties (e.g. {@code --app.tm.chat.write-behind.batch-size=64}).
+ */
+record LoadTestOptions(String url, int nodes, int sessions, int rooms, double roomSkew, int rate, int publishers,
+                       Duration warmup, Duration duration, Duration drain, int connectConcurrency,
+                       int payloadBytes, Path json, double maxP99Millis, long maxDrops,
+                       Map<String, String> appProperties) {
+
+    private static final Set<String> KNOWN = Set.of("url", "nodes", "sessions", "rooms", "room-skew", "rate", "publishers",
+            "warmup", "duration", "drain", "connect-concurrency", "payload", "json", "max-p99-ms", "max-drops");
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> app = new LinkedHashMap<>();
+        Map<String, String> opts = split(args, KNOWN, app);
+        LoadTestOptions o = new LoadTestOptions(
+                opts.get("url"),
+                Integer.parseInt(opts.getOrDefault("nodes", "1")),
+                Integer.parseInt(opts.getOrDefault("sessions", "2000")),
+                Integer.parseInt(opts.getOrDefault("rooms", "20")),
+                Double.parseDouble(opts.getOrDefault("room-skew", "0")),
+                Integer.parseInt(opts.getOrDefault("rate", "500")),
+                Integer.parseInt(opts.getOrDefault("publishers", "4")),
+                Duration.ofSeconds(Long.parseLong(opts.getOrDefault("warmup", "5"))),
+                Duration.ofSeconds(Long.parseLong(opts.getOrDefault("duration", "30"))),
+                Duration.ofSeconds(Long.parseLong(opts.getOrDefault("drain", "5"))),
+                Integer.parseInt(opts.getOrDefault("connect-concurrency", "64")),
+                Integer.parseInt(opts.getOrDefault("payload", "64")),
+                opts.containsKey("json") ? Path.of(opts.get("json")) : null,
+                Double.parseDouble(opts.getOrDefault("max-p99-ms", "-1")),
+                Long.parseLong(opts.getOrDefault("max-drops", "-1")),
+                app);
+        if (o.nodes <= 0 || o.sessions <= 0 || o.rooms <= 0 || o.rate <= 0 || o.publishers <= 0 || o.connectConcurrency <= 0) {
+            throw new IllegalArgumentException("nodes, sessions, rooms, rate, publishers and connect-concurrency must be positive");
+        }
+        if (o.url != null && o.nodes > 1) {
+            throw new IllegalArgumentException("--nodes starts embedded instances; list running ones in --url instead");
+        }
+        if (o.url != null && !o.appProperties.isEmpty()) {
+            throw new IllegalArgumentException("--app.* options only apply to the embedded application, not with --url");
+        }
+        return o;
+    }
+
+    /** Splits {@code --name=value} arguments into known options, collecting {@code --app.*} into {@code app}. */
+    static Map<String, String> split(String[] args, Set<String> known, Map<String, String> app) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("expected --name=value, got " + arg);
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            if (name.startsWith("app.")) {
+                app.put(name.substring(4), value);
+            } else if (known.contains(name)) {
+                opts.put(name, value);
+            } else {
+                throw new IllegalArgumentException("unknown option --" + name);
+            }
+        }
+        return opts;
+    }
+}
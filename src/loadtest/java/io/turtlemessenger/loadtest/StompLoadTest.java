@@ -0,0 +1,251 @@
+package io.turtlemessenger.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.turtlemessenger.security.JwtUtil;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load generator for the real-time path: CONNECT on /ws, SEND to /app/rooms.{id}.send,
+ * receive on /topic/rooms.{id}. Starts the application on a random port against a throwaway
+ * SQLite file unless {@code --url} points at a running instance.
+ *
+ * Cluster fan-out: {@code --url} takes a comma-separated list of instances, or {@code --nodes=N}
+ * starts N embedded instances relaying to each other over TCP on localhost. Sessions are spread
+ * round-robin over the instances, so most deliveries cross from the sender's instance to another.
+ *
+ * Every session subscribes to one room; room sizes follow a Zipf distribution with exponent
+ * {@code --room-skew} (0 spreads sessions evenly). Publishers pick a random connected session and
+ * send to its room at a combined {@code --rate} messages per second. The report covers messages
+ * sent inside the measurement window after {@code --warmup}: send-to-receive latency, delivered
+ * messages per second, and deliveries that never arrived within {@code --drain}.
+ *
+ * Exits with status 1 if {@code --max-p99-ms} or {@code --max-drops} is exceeded.
+ */
+public final class StompLoadTest {
+    private StompLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions opts = LoadTestOptions.parse(args);
+        List<ConfigurableApplicationContext> apps = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        JwtUtil jwt;
+        boolean passed;
+        try {
+            if (opts.url() == null) {
+                apps.addAll(opts.nodes() == 1 ? List.of(EmbeddedApp.start(opts.appProperties()))
+                        : EmbeddedApp.startCluster(opts.nodes(), opts.appProperties()));
+                for (ConfigurableApplicationContext app : apps) urls.add("ws://127.0.0.1:" + EmbeddedApp.port(app) + "/ws");
+                jwt = apps.get(0).getBean("accessJwt", JwtUtil.class);
+            } else {
+                for (String url : opts.url().split(",")) urls.add(url.trim());
+                jwt = new JwtUtil(System.getenv().getOrDefault("TM_JWT_SECRET", "dev-secret-change-me"), 3600);
+            }
+            passed = run(opts, urls, jwt);
+        } finally {
+            for (ConfigurableApplicationContext app : apps) app.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(LoadTestOptions opts, List<String> urls, JwtUtil jwt) throws Exception {
+        LoadStats stats = new LoadStats();
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setMessageConverter(new SimpleMessageConverter());
+        client.setDefaultHeartbeat(new long[]{0, 0});
+        client.setInboundMessageSizeLimit(1024 * 1024);
+
+        int[] assignment = assignRooms(opts.sessions(), opts.rooms(), opts.roomSkew());
+        List<LoadSession> sessions = connect(client, urls, jwt, opts, assignment, stats);
+        int[] roomSize = new int[opts.rooms() + 1];
+        for (LoadSession s : sessions) roomSize[s.room]++;
+        // SUBSCRIBE has no acknowledgement; give the broker, and the peers of a cluster, a moment to register them
+        Thread.sleep(1_000);
+
+        long start = stats.now();
+        stats.measureFrom = start + opts.warmup().toNanos();
+        stats.measureUntil = stats.measureFrom + opts.duration().toNanos();
+        List<Thread> publishers = new ArrayList<>();
+        for (int i = 0; i < opts.publishers(); i++) {
+            Thread t = new Thread(() -> publish(opts, sessions, roomSize, stats, start), "tm-load-publisher-" + i);
+            t.start();
+            publishers.add(t);
+        }
+        for (Thread t : publishers) t.join();
+        Thread.sleep(opts.drain().toMillis());
+
+        stats.closing = true;
+        for (LoadSession s : sessions) {
+            StompSession session = s.session();
+            if (session != null && session.isConnected()) session.disconnect();
+        }
+        client.stop();
+        return report(opts, urls.size(), sessions.size(), roomSize, stats);
+    }
+
+    private static List<LoadSession> connect(WebSocketStompClient client, List<String> urls, JwtUtil jwt, LoadTestOptions opts,
+                                             int[] assignment, LoadStats stats) throws InterruptedException {
+        List<LoadSession> connected = Collections.synchronizedList(new ArrayList<>());
+        Semaphore inFlight = new Semaphore(opts.connectConcurrency());
+        CountDownLatch done = new CountDownLatch(assignment.length);
+        long began = System.nanoTime();
+        for (int i = 0; i < assignment.length; i++) {
+            inFlight.acquire();
+            LoadSession handler = new LoadSession(assignment[i], stats);
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + jwt.generateToken("load-" + i));
+            client.connectAsync(urls.get(i % urls.size()), new WebSocketHttpHeaders(), connectHeaders, handler)
+                    .orTimeout(30, TimeUnit.SECONDS)
+                    .whenComplete((session, ex) -> {
+                        if (ex == null) connected.add(handler); else stats.connectFailures.increment();
+                        inFlight.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        System.out.printf("connected %d/%d sessions in %d ms%n", connected.size(), assignment.length,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began));
+        return new ArrayList<>(connected);
+    }
+
+    /** Room (1-based) for each session, sized by a Zipf distribution with the given exponent. */
+    static int[] assignRooms(int sessions, int rooms, double skew) {
+        double[] cumulative = new double[rooms];
+        double total = 0;
+        for (int r = 0; r < rooms; r++) {
+            total += 1.0 / Math.pow(r + 1, skew);
+            cumulative[r] = total;
+        }
+        Random random = new Random(42);
+        int[] out = new int[sessions];
+        for (int i = 0; i < sessions; i++) {
+            // the first `rooms` sessions seed one member per room so no room is empty
+            if (i < rooms) {
+                out[i] = i + 1;
+                continue;
+            }
+            double x = random.nextDouble() * total;
+            int r = 0;
+            while (r < rooms - 1 && cumulative[r] < x) r++;
+            out[i] = r + 1;
+        }
+        return out;
+    }
+
+    private static void publish(LoadTestOptions opts, List<LoadSession> sessions, int[] roomSize, LoadStats stats, long start) {
+        if (sessions.isEmpty()) return;
+        long interval = Math.max(1, TimeUnit.SECONDS.toNanos(1) * opts.publishers() / opts.rate());
+        long end = stats.measureUntil;
+        String padding = "x".repeat(Math.max(0, opts.payloadBytes()));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long next = start + random.nextLong(interval);
+        while (next < end) {
+            long wait = next - stats.now();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            LoadSession from = sessions.get(random.nextInt(sessions.size()));
+            StompSession session = from.session();
+            long sentAt = stats.now();
+            byte[] body = ("{\"content\":\"lt|" + sentAt + "|" + padding + "\"}").getBytes(StandardCharsets.UTF_8);
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination("/app/rooms." + from.room + ".send");
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            try {
+                // the WebSocket session rejects concurrent writes, and publishers may pick the same one
+                synchronized (session) {
+                    session.send(headers, body);
+                }
+                if (stats.measured(sentAt)) {
+                    stats.sent.increment();
+                    stats.expected.add(roomSize[from.room]);
+                }
+            } catch (RuntimeException e) {
+                if (stats.measured(sentAt)) stats.sendFailures.increment();
+            }
+            next += interval;
+        }
+    }
+
+    private static boolean report(LoadTestOptions opts, int instances, int connected, int[] roomSize, LoadStats stats) throws Exception {
+        Histogram h = stats.latencyMicros;
+        double seconds = opts.duration().toNanos() / 1e9;
+        long expected = stats.expected.sum();
+        long delivered = stats.delivered.sum();
+        long dropped = Math.max(0, expected - delivered);
+        int minRoom = Integer.MAX_VALUE;
+        int maxRoom = 0;
+        for (int r = 1; r < roomSize.length; r++) {
+            minRoom = Math.min(minRoom, roomSize[r]);
+            maxRoom = Math.max(maxRoom, roomSize[r]);
+        }
+
+        System.out.printf("sessions  %d/%d connected (%d failed) to %d instance(s), %d rooms of %d..%d members%n",
+                connected, opts.sessions(), stats.connectFailures.sum(), instances, opts.rooms(), minRoom, maxRoom);
+        System.out.printf("publish   %d sent at %.0f/s target %d/s, %d send failures%n",
+                stats.sent.sum(), stats.sent.sum() / seconds, opts.rate(), stats.sendFailures.sum());
+        System.out.printf("deliver   %d of %d expected (%.0f/s), %d dropped, %d session errors%n",
+                delivered, expected, delivered / seconds, dropped, stats.sessionErrors.sum());
+        System.out.printf("latency   p50 %.2f ms  p99 %.2f ms  p999 %.2f ms  max %.2f ms%n",
+                millis(h, 50), millis(h, 99), millis(h, 99.9), h.getMaxValue() / 1000.0);
+
+        if (opts.json() != null) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("instances", instances);
+            out.put("sessions", opts.sessions());
+            out.put("connected", connected);
+            out.put("rooms", opts.rooms());
+            out.put("roomSkew", opts.roomSkew());
+            out.put("targetRate", opts.rate());
+            out.put("durationSeconds", seconds);
+            out.put("sent", stats.sent.sum());
+            out.put("sendFailures", stats.sendFailures.sum());
+            out.put("expected", expected);
+            out.put("delivered", delivered);
+            out.put("deliveredPerSecond", delivered / seconds);
+            out.put("dropped", dropped);
+            out.put("sessionErrors", stats.sessionErrors.sum());
+            out.put("p50Millis", millis(h, 50));
+            out.put("p99Millis", millis(h, 99));
+            out.put("p999Millis", millis(h, 99.9));
+            out.put("maxMillis", h.getMaxValue() / 1000.0);
+            if (opts.json().getParent() != null) Files.createDirectories(opts.json().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(opts.json().toFile(), out);
+        }
+
+        boolean passed = true;
+        if (opts.maxP99Millis() >= 0 && millis(h, 99) > opts.maxP99Millis()) {
+            System.out.printf("FAIL: p99 %.2f ms exceeds %.2f ms%n", millis(h, 99), opts.maxP99Millis());
+            passed = false;
+        }
+        if (opts.maxDrops() >= 0 && dropped > opts.maxDrops()) {
+            System.out.printf("FAIL: %d dropped deliveries exceed %d%n", dropped, opts.maxDrops());
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static double millis(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
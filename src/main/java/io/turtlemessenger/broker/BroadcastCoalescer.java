@@ -0,0 +1,232 @@
+package io.turtlemessenger.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional coalescing in front of the {@link RoomBroadcaster}. A coalescing room buffers its
+ * broadcasts and sends them as one frame whose body is an array of messages, at the latest
+ * {@code max-delay-millis} after the first one was buffered or as soon as {@code max-batch} are
+ * waiting. A room coalesces when it is listed in {@code tm.broadcast.coalesce.rooms}, or while it
+ * runs at {@code auto-threshold} messages per second or more; every other room, and every room
+ * when {@code enabled=false}, gets one frame per message as before.
+ *
+ * Broadcasts for one room are handed on under that room's lock, so batches and single messages
+ * reach the broadcaster, and then the {@link ClusterRelay}, in the order they were sent. A room's
+ * buffer is dropped by a periodic sweep once it is empty and the room has been quiet long enough
+ * for its rate to start over at 0.
+ */
+@Component
+public class BroadcastCoalescer implements SmartLifecycle {
+    public record Stats(long immediate, long batches, long batchedMessages) {}
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastCoalescer.class);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SWEEP_INTERVAL_SECONDS = 10;
+
+    private final RoomBroadcaster broadcaster;
+    private final ClusterRelay cluster;
+    private final boolean enabled;
+    private final Set<Long> pinnedRooms;
+    private final int autoThreshold;
+    private final long maxDelayNanos;
+    private final int maxBatch;
+    private final ConcurrentHashMap<Long, RoomBuffer> rooms = new ConcurrentHashMap<>();
+
+    private final LongAdder immediate = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedMessages = new LongAdder();
+
+    private volatile boolean running;
+    private ScheduledThreadPoolExecutor scheduler;
+
+    public BroadcastCoalescer(RoomBroadcaster broadcaster, ClusterRelay cluster,
+                              @Value("${tm.broadcast.coalesce.enabled:false}") boolean enabled,
+                              @Value("${tm.broadcast.coalesce.rooms:}") Set<Long> pinnedRooms,
+                              @Value("${tm.broadcast.coalesce.auto-threshold:200}") int autoThreshold,
+                              @Value("${tm.broadcast.coalesce.max-delay-millis:5}") long maxDelayMillis,
+                              @Value("${tm.broadcast.coalesce.max-batch:64}") int maxBatch) {
+        if (maxBatch <= 0) throw new IllegalArgumentException("coalesce max-batch must be positive");
+        this.broadcaster = broadcaster;
+        this.cluster = cluster;
+        this.enabled = enabled;
+        this.pinnedRooms = Set.copyOf(pinnedRooms);
+        this.autoThreshold = autoThreshold;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxDelayMillis));
+        this.maxBatch = maxBatch;
+    }
+
+    public void broadcast(long roomId, Object message) {
+        if (!enabled || !running) {
+            send(roomId, message);
+            return;
+        }
+        while (true) {
+            RoomBuffer room = rooms.computeIfAbsent(roomId, RoomBuffer::new);
+            synchronized (room) {
+                // swept between the lookup and the lock; a second buffer for the room would break ordering
+                if (room.removed) continue;
+                buffer(room, message);
+                return;
+            }
+        }
+    }
+
+    // caller holds the room lock
+    private void buffer(RoomBuffer room, Object message) {
+        long now = System.nanoTime();
+        room.lastUsed = now;
+        boolean coalescing = pinnedRooms.contains(room.roomId) || autoThreshold > 0 && room.tick(now) >= autoThreshold;
+        // anything already buffered must go out first, even if the room has calmed down
+        if (!coalescing && room.pending.isEmpty()) {
+            send(room.roomId, message);
+            return;
+        }
+        room.pending.add(message);
+        if (room.pending.size() >= maxBatch) {
+            flush(room);
+        } else if (!room.flushScheduled) {
+            room.flushScheduled = true;
+            try {
+                scheduler.schedule(() -> flushScheduled(room), maxDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // stopping; deliver now rather than leave the message behind
+                room.flushScheduled = false;
+                flush(room);
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(immediate.sum(), batches.sum(), batchedMessages.sum());
+    }
+
+    int bufferedRooms() {
+        return rooms.size();
+    }
+
+    /** Drops the buffers of rooms with nothing buffered and no message for two rate windows before {@code now}. */
+    void sweep(long now) {
+        for (RoomBuffer room : rooms.values()) {
+            synchronized (room) {
+                if (!room.pending.isEmpty() || room.flushScheduled) continue;
+                // tick() would start such a room over at a rate of 0 anyway
+                if (now - room.lastUsed < 2 * RATE_WINDOW_NANOS) continue;
+                room.removed = true;
+                rooms.remove(room.roomId, room);
+            }
+        }
+    }
+
+    private void flushScheduled(RoomBuffer room) {
+        synchronized (room) {
+            room.flushScheduled = false;
+            flush(room);
+        }
+    }
+
+    // caller holds the room lock
+    private void flush(RoomBuffer room) {
+        List<Object> pending = room.pending;
+        if (pending.isEmpty()) return;
+        if (pending.size() == 1) {
+            send(room.roomId, pending.get(0));
+        } else {
+            try {
+                List<Object> batch = List.copyOf(pending);
+                broadcaster.broadcast(room.roomId, batch);
+                cluster.relay(room.roomId, batch);
+                batches.increment();
+                batchedMessages.add(pending.size());
+            } catch (RuntimeException e) {
+                log.warn("Failed to broadcast batch of {} messages to room {}: {}", pending.size(), room.roomId, e.getMessage());
+            }
+        }
+        pending.clear();
+    }
+
+    private void send(long roomId, Object message) {
+        broadcaster.broadcast(roomId, message);
+        cluster.relay(roomId, message);
+        immediate.increment();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "tm-broadcast-coalesce");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.scheduleWithFixedDelay(() -> sweep(System.nanoTime()), SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        scheduler.shutdownNow();
+        for (RoomBuffer room : rooms.values()) {
+            synchronized (room) {
+                room.flushScheduled = false;
+                flush(room);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop after the web server and before the room broker, so buffered messages still go out
+        return SmartLifecycle.DEFAULT_PHASE - 2560;
+    }
+
+    private static final class RoomBuffer {
+        final long roomId;
+        final List<Object> pending = new ArrayList<>();
+        boolean flushScheduled;
+        boolean removed;
+        long lastUsed;
+        long windowStart;
+        int windowCount;
+        int lastRate;
+
+        RoomBuffer(long roomId) {
+            this.roomId = roomId;
+            this.windowStart = System.nanoTime();
+            this.lastUsed = windowStart;
+        }
+
+        /** Counts one message and returns the room's rate: the last full second, or this one if it is already higher. */
+        int tick(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed >= RATE_WINDOW_NANOS) {
+                // a window that ended long ago says nothing about the current rate
+                lastRate = elapsed < 2 * RATE_WINDOW_NANOS ? (int) (windowCount * RATE_WINDOW_NANOS / elapsed) : 0;
+                windowStart = now;
+                windowCount = 0;
+            }
+            windowCount++;
+            return Math.max(lastRate, windowCount);
+        }
+    }
+}
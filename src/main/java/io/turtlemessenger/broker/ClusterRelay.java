@@ -0,0 +1,12 @@
+package io.turtlemessenger.broker;
+
+/**
+ * Hands room broadcasts to the other application instances, which deliver them to their own
+ * subscribers. Selected with {@code tm.cluster.mode}: {@link LocalOnlyRelay} (default, a single
+ * instance) or {@link TcpClusterRelay}.
+ */
+public interface ClusterRelay {
+
+    /** Called after the payload went to this instance's subscribers. */
+    void relay(long roomId, Object payload);
+}
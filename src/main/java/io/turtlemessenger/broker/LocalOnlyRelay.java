@@ -0,0 +1,16 @@
+package io.turtlemessenger.broker;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * No other instances: broadcasts stay with this one's subscribers.
+ */
+@Component
+@ConditionalOnProperty(name = "tm.cluster.mode", havingValue = "none", matchIfMissing = true)
+public class LocalOnlyRelay implements ClusterRelay {
+
+    @Override
+    public void relay(long roomId, Object payload) {
+    }
+}
@@ -0,0 +1,25 @@
+package io.turtlemessenger.broker;
+
+/**
+ * Delivers a payload to everyone subscribed to {@code /topic/rooms.{roomId}}.
+ * Selected with {@code tm.broker.mode}: {@link ShardedRoomBroker} (default) or {@link SimpleRoomBroadcaster}.
+ */
+public interface RoomBroadcaster {
+    String ROOM_TOPIC_PREFIX = "/topic/rooms.";
+
+    void broadcast(long roomId, Object payload);
+
+    static String topic(long roomId) {
+        return ROOM_TOPIC_PREFIX + roomId;
+    }
+
+    /** The room of a room topic destination, or null if it isn't one. */
+    static Long roomId(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) return null;
+        try {
+            return Long.parseLong(destination, ROOM_TOPIC_PREFIX.length(), destination.length(), 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package io.turtlemessenger.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-process broker for {@code /topic/rooms.{id}}, next to the simple broker which keeps every
+ * other destination.
+ *
+ * Subscriptions are indexed by room id directly, each room holding a copy-on-write array of
+ * subscribers, so a broadcast is a map lookup plus an array walk with no destination matching.
+ * Every room is pinned to one of {@code tm.broker.shards} dispatch threads (room id modulo shard
+ * count), which keeps per-room order and stops a busy room from occupying the whole outbound pool.
+ * Frames are handed straight to the WebSocket sub-protocol handler from the shard thread.
+ *
+ * Room SUBSCRIBE/UNSUBSCRIBE frames are taken over on their way to the simple broker (see
+ * {@link #beforeHandle}); the other handlers, and session events, still see them.
+ */
+@Component
+@ConditionalOnProperty(name = "tm.broker.mode", havingValue = "sharded", matchIfMissing = true)
+public class ShardedRoomBroker implements RoomBroadcaster, ExecutorChannelInterceptor, SmartLifecycle {
+
+    public record Stats(int rooms, int subscriptions, int queued, long published, long delivered, long dropped) {}
+
+    private record Subscriber(String sessionId, String subscriptionId, boolean cbor) {}
+
+    private record Delivery(long roomId, Object payload, Message<?> source) {}
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedRoomBroker.class);
+    private static final Subscriber[] NONE = new Subscriber[0];
+
+    private final Supplier<MessageConverter> converter;
+    private final Supplier<MessageHandler> clientHandler;
+    private final WireFormatRegistry formats;
+    private final Shard[] shards;
+    private final long offerTimeoutMillis;
+    private final ConcurrentHashMap<Long, Room> rooms = new ConcurrentHashMap<>();
+    // sessionId -> subscriptionId -> roomId, for UNSUBSCRIBE (no destination) and DISCONNECT
+    private final ConcurrentHashMap<String, Map<String, Long>> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+
+    @Autowired
+    public ShardedRoomBroker(@Qualifier("brokerMessageConverter") ObjectProvider<MessageConverter> converter,
+                             @Qualifier("subProtocolWebSocketHandler") ObjectProvider<WebSocketHandler> clientHandler,
+                             WireFormatRegistry formats,
+                             @Value("${tm.broker.shards:0}") int shards,
+                             @Value("${tm.broker.shard-queue-capacity:65536}") int queueCapacity,
+                             @Value("${tm.broker.offer-timeout-millis:50}") long offerTimeoutMillis) {
+        // both beans belong to the broker configuration this class contributes to, so resolve them on first use
+        this(SingletonSupplier.of(converter::getObject),
+                SingletonSupplier.of(() -> (MessageHandler) clientHandler.getObject()),
+                formats, shards, queueCapacity, offerTimeoutMillis);
+    }
+
+    public ShardedRoomBroker(Supplier<MessageConverter> converter, Supplier<MessageHandler> clientHandler,
+                             WireFormatRegistry formats, int shards, int queueCapacity, long offerTimeoutMillis) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("shard queue capacity must be positive");
+        this.converter = converter;
+        this.clientHandler = clientHandler;
+        this.formats = formats;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) this.shards[i] = new Shard(i, queueCapacity);
+    }
+
+    @Override
+    public void broadcast(long roomId, Object payload) {
+        String destination = RoomBroadcaster.topic(roomId);
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        headers.setLeaveMutable(true);
+        // serialized once here, on the caller's thread; shards only fan out
+        Message<?> source = converter.get().toMessage(payload, headers.getMessageHeaders());
+        if (source == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName() + " for " + destination);
+        }
+        Shard shard = shards[(int) Math.floorMod(roomId, (long) shards.length)];
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = shard.queue.offer(new Delivery(roomId, payload, source), offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (queued) {
+            published.increment();
+        } else {
+            dropped.increment();
+            log.warn("Dropped broadcast to room {}: dispatch shard {} is full or stopped", roomId, shard.index);
+        }
+    }
+
+    public void subscribe(String sessionId, String subscriptionId, long roomId) {
+        Map<String, Long> subs = sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>());
+        if (subs.putIfAbsent(subscriptionId, roomId) != null) return;
+        // the wire format is fixed at CONNECT, which always precedes SUBSCRIBE
+        Subscriber subscriber = new Subscriber(sessionId, subscriptionId,
+                formats.formatOf(sessionId) == WireFormatRegistry.WireFormat.CBOR);
+        while (true) {
+            Room room = rooms.computeIfAbsent(roomId, k -> new Room());
+            synchronized (room) {
+                if (room.removed) continue; // emptied and unlinked concurrently, retry with a fresh one
+                Subscriber[] current = room.subscribers;
+                Subscriber[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = subscriber;
+                room.subscribers = next;
+                return;
+            }
+        }
+    }
+
+    /** Returns false if the subscription isn't a room subscription this broker knows. */
+    public boolean unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, Long> subs = sessions.get(sessionId);
+        Long roomId = subs == null ? null : subs.remove(subscriptionId);
+        if (roomId == null) return false;
+        removeSubscriber(roomId, sessionId, subscriptionId);
+        return true;
+    }
+
+    public void disconnect(String sessionId) {
+        Map<String, Long> subs = sessions.remove(sessionId);
+        if (subs == null) return;
+        subs.forEach((subscriptionId, roomId) -> removeSubscriber(roomId, sessionId, subscriptionId));
+    }
+
+    private void removeSubscriber(long roomId, String sessionId, String subscriptionId) {
+        Room room = rooms.get(roomId);
+        if (room == null) return;
+        synchronized (room) {
+            Subscriber[] current = room.subscribers;
+            int at = -1;
+            for (int i = 0; i < current.length && at < 0; i++) {
+                if (current[i].sessionId().equals(sessionId) && current[i].subscriptionId().equals(subscriptionId)) at = i;
+            }
+            if (at < 0) return;
+            if (current.length == 1) {
+                room.subscribers = NONE;
+                room.removed = true;
+                rooms.remove(roomId, room);
+                return;
+            }
+            Subscriber[] next = new Subscriber[current.length - 1];
+            System.arraycopy(current, 0, next, 0, at);
+            System.arraycopy(current, at + 1, next, at, current.length - at - 1);
+            room.subscribers = next;
+        }
+    }
+
+    /**
+     * Runs once per handler on the inbound executor. Room subscriptions are recorded here and
+     * withheld from the simple broker only, so its registry never sees room topics.
+     */
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (!(handler instanceof SimpleBrokerMessageHandler)) return message;
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (type == null || sessionId == null) return message;
+        switch (type) {
+            case SUBSCRIBE -> {
+                Long roomId = RoomBroadcaster.roomId(SimpMessageHeaderAccessor.getDestination(headers));
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                if (roomId == null || subscriptionId == null) return message;
+                subscribe(sessionId, subscriptionId, roomId);
+                return null;
+            }
+            case UNSUBSCRIBE -> {
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                return subscriptionId != null && unsubscribe(sessionId, subscriptionId) ? null : message;
+            }
+            case DISCONNECT -> {
+                disconnect(sessionId);
+                return message;
+            }
+            default -> {
+                return message;
+            }
+        }
+    }
+
+    private void fanOut(Delivery delivery) {
+        Room room = rooms.get(delivery.roomId());
+        if (room == null) return;
+        Subscriber[] subscribers = room.subscribers;
+        MessageHandler handler = clientHandler.get();
+        Message<?> source = delivery.source();
+        byte[] cbor = null;
+        for (Subscriber s : subscribers) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(s.sessionId());
+            accessor.setSubscriptionId(s.subscriptionId());
+            Object body = source.getPayload();
+            if (s.cbor()) {
+                if (cbor == null) cbor = formats.encodeCbor(delivery.payload());
+                WireFormatRegistry.markCbor(accessor);
+                body = cbor;
+            }
+            accessor.copyHeadersIfAbsent(source.getHeaders());
+            accessor.setLeaveMutable(true);
+            try {
+                handler.handleMessage(MessageBuilder.createMessage(body, accessor.getMessageHeaders()));
+                delivered.increment();
+            } catch (Exception e) {
+                // a closing session must not hold up the rest of the room
+                log.debug("Failed to deliver to session {}: {}", s.sessionId(), e.getMessage());
+            }
+        }
+    }
+
+    public Stats stats() {
+        int subscriptions = 0;
+        for (Room room : rooms.values()) subscriptions += room.subscribers.length;
+        int queued = 0;
+        for (Shard shard : shards) queued += shard.queue.size();
+        return new Stats(rooms.size(), subscriptions, queued, published.sum(), delivered.sum(), dropped.sum());
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (Shard shard : shards) {
+            shard.thread = new Thread(shard, "tm-broker-shard-" + shard.index);
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // start before and stop after the web server, so no broadcast arrives while the shards are down
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    /**
+     * Puts the broker on the inbound channel. A separate bean because
+     * {@link WebSocketMessageBrokerConfigurer#getPhase()} clashes with {@link SmartLifecycle#getPhase()}.
+     */
+    @Component
+    @ConditionalOnProperty(name = "tm.broker.mode", havingValue = "sharded", matchIfMissing = true)
+    static class Registration implements WebSocketMessageBrokerConfigurer {
+
+        private final ShardedRoomBroker broker;
+
+        Registration(ShardedRoomBroker broker) {
+            this.broker = broker;
+        }
+
+        @Override
+        public void configureClientInboundChannel(ChannelRegistration registration) {
+            registration.interceptors(broker);
+        }
+    }
+
+    private static final class Room {
+        volatile Subscriber[] subscribers = NONE;
+        boolean removed; // guarded by this
+    }
+
+    private final class Shard implements Runnable {
+        final int index;
+        final BlockingQueue<Delivery> queue;
+        Thread thread;
+
+        Shard(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            // keeps draining after stop() so accepted broadcasts still go out
+            while (running || !queue.isEmpty()) {
+                Delivery next;
+                try {
+                    next = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (next == null) continue;
+                try {
+                    fanOut(next);
+                } catch (RuntimeException e) {
+                    log.error("Broadcast to room {} failed: {}", next.roomId(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.turtlemessenger.broker;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * STOMP encoder that builds a MESSAGE frame once per broadcast instead of once per subscriber.
+ *
+ * A fan-out hands every subscriber the same payload array, and the frames differ only in the
+ * {@code subscription} and {@code message-id} headers. The rest of the frame (the other headers,
+ * content-length, the body and the trailing NUL) is encoded once and kept in a small table keyed
+ * by payload identity; each subscriber's frame is then its two headers followed by one bulk copy
+ * of that shared tail. Everything other than MESSAGE frames goes to {@link StompEncoder}.
+ */
+public class SharedFrameStompEncoder extends StompEncoder {
+    private static final byte LF = '\n';
+    private static final byte COLON = ':';
+    private static final byte[] MESSAGE = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.UTF_8);
+    private static final String SUBSCRIPTION = "subscription";
+    private static final String MESSAGE_ID = "message-id";
+    private static final int SLOTS = 64;
+
+    /** The part of a MESSAGE frame shared by all subscribers, and what it was built from. */
+    private record SharedTail(byte[] payload, Map<String, List<String>> headers, byte[] bytes) {}
+
+    private final AtomicReferenceArray<SharedTail> tails = new AtomicReferenceArray<>(SLOTS);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE || payload.length == 0) {
+            return super.encode(headers, payload);
+        }
+        Map<String, List<String>> nativeHeaders =
+                (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null) return super.encode(headers, payload);
+
+        byte[] tail = tail(nativeHeaders, payload);
+        List<String> subscription = nativeHeaders.get(SUBSCRIPTION);
+        List<String> messageId = nativeHeaders.get(MESSAGE_ID);
+        int length = MESSAGE.length + headerLength(SUBSCRIPTION, subscription) + headerLength(MESSAGE_ID, messageId) + tail.length;
+
+        byte[] frame = new byte[length];
+        System.arraycopy(MESSAGE, 0, frame, 0, MESSAGE.length);
+        int pos = writeHeader(frame, MESSAGE.length, SUBSCRIPTION, subscription);
+        pos = writeHeader(frame, pos, MESSAGE_ID, messageId);
+        System.arraycopy(tail, 0, frame, pos, tail.length);
+        return frame;
+    }
+
+    private byte[] tail(Map<String, List<String>> nativeHeaders, byte[] payload) {
+        int slot = System.identityHashCode(payload) & (SLOTS - 1);
+        SharedTail cached = tails.get(slot);
+        if (cached != null && cached.payload() == payload && sameSharedHeaders(cached.headers(), nativeHeaders)) {
+            return cached.bytes();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 256);
+        for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+            String key = entry.getKey();
+            if (isPerSubscriber(key) || key.equals("content-length")) continue;
+            byte[] encodedKey = escape(key).getBytes(StandardCharsets.UTF_8);
+            for (String value : entry.getValue()) {
+                out.writeBytes(encodedKey);
+                out.write(COLON);
+                out.writeBytes(escape(value).getBytes(StandardCharsets.UTF_8));
+                out.write(LF);
+            }
+        }
+        out.writeBytes(CONTENT_LENGTH);
+        out.writeBytes(Integer.toString(payload.length).getBytes(StandardCharsets.UTF_8));
+        out.write(LF);
+        out.write(LF);
+        out.writeBytes(payload);
+        out.write(0);
+        byte[] bytes = out.toByteArray();
+        tails.set(slot, new SharedTail(payload, nativeHeaders, bytes));
+        return bytes;
+    }
+
+    /** Whether two native header maps agree on everything but the per-subscriber headers. */
+    private static boolean sameSharedHeaders(Map<String, List<String>> a, Map<String, List<String>> b) {
+        if (a == b) return true;
+        Iterator<Map.Entry<String, List<String>>> ia = a.entrySet().iterator();
+        Iterator<Map.Entry<String, List<String>>> ib = b.entrySet().iterator();
+        while (true) {
+            Map.Entry<String, List<String>> ea = nextShared(ia);
+            Map.Entry<String, List<String>> eb = nextShared(ib);
+            if (ea == null || eb == null) return ea == eb;
+            if (!ea.getKey().equals(eb.getKey()) || !ea.getValue().equals(eb.getValue())) return false;
+        }
+    }
+
+    private static Map.Entry<String, List<String>> nextShared(Iterator<Map.Entry<String, List<String>>> it) {
+        while (it.hasNext()) {
+            Map.Entry<String, List<String>> e = it.next();
+            if (!isPerSubscriber(e.getKey())) return e;
+        }
+        return null;
+    }
+
+    private static boolean isPerSubscriber(String key) {
+        return key.equals(SUBSCRIPTION) || key.equals(MESSAGE_ID);
+    }
+
+    private static int headerLength(String key, List<String> values) {
+        if (values == null) return 0;
+        int length = 0;
+        for (String value : values) length += key.length() + 2 + encodedLength(value);
+        return length;
+    }
+
+    private static int writeHeader(byte[] frame, int pos, String key, List<String> values) {
+        if (values == null) return pos;
+        for (String value : values) {
+            pos = writeAscii(frame, pos, key);
+            frame[pos++] = COLON;
+            if (isPlainAscii(value)) {
+                pos = writeAscii(frame, pos, value);
+            } else {
+                byte[] encoded = escape(value).getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(encoded, 0, frame, pos, encoded.length);
+                pos += encoded.length;
+            }
+            frame[pos++] = LF;
+        }
+        return pos;
+    }
+
+    private static int encodedLength(String value) {
+        return isPlainAscii(value) ? value.length() : escape(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /** Session and subscription ids are normally plain ASCII and need neither escaping nor UTF-8 work. */
+    private static boolean isPlainAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || c == '\\' || c == ':' || c == '\n' || c == '\r') return false;
+        }
+        return true;
+    }
+
+    private static int writeAscii(byte[] frame, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) frame[pos++] = (byte) s.charAt(i);
+        return pos;
+    }
+
+    /** Header escaping from the STOMP 1.2 spec, as {@link StompEncoder} applies it to MESSAGE frames. */
+    private static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (replacement != null && sb == null) sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+            if (sb != null) {
+                if (replacement != null) sb.append(replacement);
+                else sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+}
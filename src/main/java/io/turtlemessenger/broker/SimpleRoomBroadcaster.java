@@ -0,0 +1,24 @@
+package io.turtlemessenger.broker;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Broadcasts through Spring's simple broker: subscription registry lookup, then one task per
+ * subscriber on the shared client outbound pool.
+ */
+@Component
+@ConditionalOnProperty(name = "tm.broker.mode", havingValue = "simple")
+public class SimpleRoomBroadcaster implements RoomBroadcaster {
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public SimpleRoomBroadcaster(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public void broadcast(long roomId, Object payload) {
+        messagingTemplate.convertAndSend(RoomBroadcaster.topic(roomId), payload);
+    }
+}
@@ -0,0 +1,598 @@
+package io.turtlemessenger.broker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code tm.cluster.mode=tcp}: room broadcasts fan out to the other instances over plain TCP,
+ * with no broker in between. Every instance listens on {@code tm.cluster.port} and dials each
+ * {@code host:port} in {@code tm.cluster.peers}. One list can serve every instance: a node that
+ * dials itself sees its own id in the handshake and drops that entry.
+ *
+ * A dialled connection carries traffic both ways. The listening side sends the rooms it has local
+ * subscribers for, then every change to that set; the dialling side sends broadcasts, only for
+ * rooms in the set. Each peer has one queue drained by one writer thread, which writes whatever
+ * has queued up as one frame with one flush, so batches grow with load without adding latency.
+ * Received broadcasts go to the local {@link RoomBroadcaster} only and are never relayed on.
+ *
+ * Delivery is best effort, like the local broker: broadcasts for a peer that is down or whose
+ * queue is full are dropped, and clients close the gap with an afterSeq history read.
+ *
+ * {@code tm.cluster.secret} is required. It never goes over the wire: both sides send a fresh
+ * nonce, the dialling side answers with an HMAC over both nonces, and only once that checks out
+ * does the listening side answer with its own. The traffic itself is not encrypted.
+ */
+@Component
+@ConditionalOnProperty(name = "tm.cluster.mode", havingValue = "tcp")
+public class TcpClusterRelay implements ClusterRelay, SmartLifecycle {
+    public record Stats(int peers, int connected, int localRooms, long relayed, long batches, long received, long dropped) {}
+
+    private record Relayed(long roomId, byte[] json) {}
+
+    private record Hello(String nodeId, byte[] nonce) {}
+
+    private record Announcement(byte type, long roomId) {}
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterRelay.class);
+    private static final byte HELLO = 1;
+    private static final byte SUBSCRIBED = 2;
+    private static final byte UNSUBSCRIBED = 3;
+    private static final byte BATCH = 4;
+    private static final byte PROOF = 5;
+    private static final byte DIALLER = 'D';
+    private static final byte LISTENER = 'L';
+    private static final int NONCE_BYTES = 32;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final RoomBroadcaster local;
+    private final ObjectMapper mapper;
+    private final String bindAddress;
+    private final int port;
+    private final SecretKeySpec secret;
+    private final SecureRandom random = new SecureRandom();
+    private final int maxBatch;
+    private final int queueCapacity;
+    private final long reconnectMillis;
+    private final List<Peer> peers = new ArrayList<>();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // sessionId -> subscriptionId -> roomId, subscribers per room, and the connections told about them
+    private final Object interest = new Object();
+    private final Map<String, Map<String, Long>> sessions = new HashMap<>();
+    private final Map<Long, Integer> localRooms = new HashMap<>();
+    private final Set<Inbound> inbound = new HashSet<>();
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running;
+    private ServerSocket server;
+    private Thread acceptor;
+
+    public TcpClusterRelay(RoomBroadcaster local, ObjectMapper mapper,
+                           @Value("${tm.cluster.bind-address:127.0.0.1}") String bindAddress,
+                           @Value("${tm.cluster.port:7400}") int port,
+                           @Value("${tm.cluster.peers:}") List<String> peers,
+                           @Value("${tm.cluster.secret:}") String secret,
+                           @Value("${tm.cluster.queue-capacity:65536}") int queueCapacity,
+                           @Value("${tm.cluster.max-batch:256}") int maxBatch,
+                           @Value("${tm.cluster.reconnect-millis:1000}") long reconnectMillis) {
+        if (queueCapacity <= 0 || maxBatch <= 0) throw new IllegalArgumentException("tm.cluster queue-capacity and max-batch must be positive");
+        if (secret.isBlank()) throw new IllegalArgumentException("tm.cluster.secret must be set when tm.cluster.mode=tcp");
+        this.local = local;
+        this.mapper = mapper;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.maxBatch = maxBatch;
+        this.queueCapacity = queueCapacity;
+        this.reconnectMillis = Math.max(10, reconnectMillis);
+        for (String peer : peers) {
+            String address = peer.trim();
+            if (address.isEmpty()) continue;
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("tm.cluster.peers entries must be host:port, got " + address);
+            this.peers.add(new Peer(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), queueCapacity));
+        }
+    }
+
+    @Override
+    public void relay(long roomId, Object payload) {
+        if (!running) return;
+        Relayed message = null;
+        for (Peer peer : peers) {
+            if (!peer.wants(roomId)) continue;
+            if (message == null) {
+                try {
+                    // serialized once for all peers
+                    message = new Relayed(roomId, mapper.writeValueAsBytes(payload));
+                } catch (JsonProcessingException e) {
+                    log.warn("Cannot relay broadcast to room {}: {}", roomId, e.getMessage());
+                    return;
+                }
+            }
+            if (peer.queue.offer(message)) {
+                relayed.increment();
+            } else {
+                dropped.increment();
+                log.warn("Dropped relay of room {} to cluster peer {}: queue is full", roomId, peer);
+            }
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        Long roomId = RoomBroadcaster.roomId(SimpMessageHeaderAccessor.getDestination(headers));
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (roomId == null || sessionId == null || subscriptionId == null) return;
+        synchronized (interest) {
+            if (sessions.computeIfAbsent(sessionId, k -> new HashMap<>()).putIfAbsent(subscriptionId, roomId) != null) return;
+            if (localRooms.merge(roomId, 1, Integer::sum) == 1) announce(SUBSCRIBED, roomId);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (sessionId == null || subscriptionId == null) return;
+        synchronized (interest) {
+            Map<String, Long> subs = sessions.get(sessionId);
+            Long roomId = subs == null ? null : subs.remove(subscriptionId);
+            if (roomId != null) release(roomId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        synchronized (interest) {
+            Map<String, Long> subs = sessions.remove(event.getSessionId());
+            if (subs != null) subs.values().forEach(this::release);
+        }
+    }
+
+    // caller holds interest
+    private void release(long roomId) {
+        if (localRooms.computeIfPresent(roomId, (k, n) -> n == 1 ? null : n - 1) == null) announce(UNSUBSCRIBED, roomId);
+    }
+
+    // caller holds interest; only queues, each connection's own thread does the writing
+    private void announce(byte type, long roomId) {
+        for (Iterator<Inbound> it = inbound.iterator(); it.hasNext(); ) {
+            if (!it.next().offer(type, roomId)) it.remove();
+        }
+    }
+
+    public Stats stats() {
+        int connected = 0;
+        for (Peer peer : peers) if (peer.connected) connected++;
+        int rooms;
+        synchronized (interest) {
+            rooms = localRooms.size();
+        }
+        return new Stats(peers.size(), connected, rooms, relayed.sum(), batches.sum(), received.sum(), dropped.sum());
+    }
+
+    /** Sends our node id and a fresh nonce, which is returned. */
+    private byte[] writeHello(DataOutputStream out) throws IOException {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        out.writeByte(HELLO);
+        out.writeUTF(nodeId);
+        out.write(nonce);
+        out.flush();
+        return nonce;
+    }
+
+    private static Hello readHello(DataInputStream in) throws IOException {
+        if (in.readByte() != HELLO) throw new IOException("not a cluster peer");
+        String id = in.readUTF();
+        byte[] nonce = new byte[NONCE_BYTES];
+        in.readFully(nonce);
+        return new Hello(id, nonce);
+    }
+
+    /**
+     * HMAC of one side's role over both node ids and both nonces. The role keeps the listener's
+     * answer from being replayed as a dialler's, the nonces keep any answer to its own connection.
+     */
+    private byte[] proof(byte role, Hello dialler, Hello listener) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(role);
+        data.writeUTF(dialler.nodeId());
+        data.write(dialler.nonce());
+        data.writeUTF(listener.nodeId());
+        data.write(listener.nonce());
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secret);
+            return mac.doFinal(bytes.toByteArray());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static void writeProof(DataOutputStream out, byte[] proof) throws IOException {
+        out.writeByte(PROOF);
+        out.write(proof);
+        out.flush();
+    }
+
+    private static void readProof(DataInputStream in, byte[] expected) throws IOException {
+        if (in.readByte() != PROOF) throw new IOException("not a cluster peer");
+        byte[] theirs = new byte[expected.length];
+        in.readFully(theirs);
+        if (!MessageDigest.isEqual(expected, theirs)) throw new IOException("cluster secret mismatch");
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (running) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (!running) return;
+                // e.g. out of file descriptors: retrying at once would only spin
+                backoffMillis = Math.min(Math.max(2 * backoffMillis, 10), 1000);
+                log.warn("Accepting cluster connection failed, retrying in {} ms: {}", backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            backoffMillis = 0;
+            Thread t = new Thread(() -> serve(socket), "tm-cluster-in-" + socket.getRemoteSocketAddress());
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** A peer that dialled us: tell it our rooms, then deliver the broadcasts it sends. */
+    private void serve(Socket socket) {
+        Inbound connection = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES));
+            // callers that never finish the handshake do not get to keep the thread
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            Hello dialler = readHello(in);
+            Hello us = new Hello(nodeId, writeHello(out));
+            if (nodeId.equals(dialler.nodeId())) return;
+            // the caller proves itself first, so nobody learns anything about the secret from us
+            readProof(in, proof(DIALLER, dialler, us));
+            writeProof(out, proof(LISTENER, dialler, us));
+            socket.setSoTimeout(0);
+            connection = new Inbound(socket, out);
+            synchronized (interest) {
+                for (long roomId : localRooms.keySet()) {
+                    if (!connection.offer(SUBSCRIBED, roomId)) throw new IOException("more local rooms than tm.cluster.queue-capacity");
+                }
+                inbound.add(connection);
+            }
+            Thread writer = new Thread(connection, "tm-cluster-announce-" + socket.getRemoteSocketAddress());
+            writer.setDaemon(true);
+            writer.start();
+            while (running) {
+                if (in.readByte() != BATCH) throw new IOException("unexpected frame");
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long roomId = in.readLong();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_PAYLOAD_BYTES) throw new IOException("relayed payload of " + length + " bytes");
+                    byte[] json = new byte[length];
+                    in.readFully(json);
+                    deliver(roomId, json);
+                }
+            }
+        } catch (EOFException e) {
+            // the peer closed the connection
+        } catch (IOException e) {
+            if (running) log.info("Cluster connection from {} closed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            if (connection != null) {
+                synchronized (interest) {
+                    inbound.remove(connection);
+                }
+            }
+        }
+    }
+
+    private void deliver(long roomId, byte[] json) {
+        try {
+            // a tree re-serializes to the same JSON, and to CBOR for sessions that asked for it
+            local.broadcast(roomId, mapper.readTree(json));
+            received.increment();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to deliver relayed broadcast to room {}: {}", roomId, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // nothing left to do with it
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(bindAddress, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen for cluster peers on " + bindAddress + ":" + port, e);
+        }
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "tm-cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (Peer peer : peers) {
+            peer.thread = new Thread(peer, "tm-cluster-peer-" + peer);
+            peer.thread.setDaemon(true);
+            peer.thread.start();
+        }
+        log.info("Cluster relay listening on {}:{} as node {} with {} peers", bindAddress, port, nodeId, peers.size());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        closeQuietly(server);
+        for (Peer peer : peers) {
+            // writers drain what is already queued before they close
+            try {
+                peer.thread.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            peer.thread.interrupt();
+            closeQuietly(peer.socket);
+        }
+        synchronized (interest) {
+            for (Inbound connection : inbound) closeQuietly(connection.socket);
+            inbound.clear();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // start after the room broker, which delivers what peers send; stop after the coalescer has flushed
+        return SmartLifecycle.DEFAULT_PHASE - 2816;
+    }
+
+    /**
+     * A connection a peer dialled, over which we announce our rooms. Announcements are queued by
+     * the STOMP threads and written by this connection's own thread, so a stalled peer holds up
+     * nobody else; one that falls a whole queue behind is disconnected and gets a fresh snapshot
+     * when it redials.
+     */
+    private final class Inbound implements Runnable {
+        final Socket socket;
+        final DataOutputStream out;
+        final ArrayBlockingQueue<Announcement> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Inbound(Socket socket, DataOutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        /** False once the connection is gone. */
+        boolean offer(byte type, long roomId) {
+            if (!socket.isClosed() && queue.offer(new Announcement(type, roomId))) return true;
+            closeQuietly(socket);
+            return false;
+        }
+
+        @Override
+        public void run() {
+            List<Announcement> batch = new ArrayList<>();
+            try {
+                while (!socket.isClosed()) {
+                    Announcement first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    for (Announcement a : batch) {
+                        out.writeByte(a.type());
+                        out.writeLong(a.roomId());
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                // the reading side sees the closed socket and deregisters the connection
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /** A peer we dial: learns its rooms and writes it the broadcasts for them, reconnecting as needed. */
+    private final class Peer implements Runnable {
+        final String host;
+        final int port;
+        final ArrayBlockingQueue<Relayed> queue;
+        final Set<Long> rooms = ConcurrentHashMap.newKeySet();
+        volatile boolean connected;
+        volatile Socket socket;
+        Thread thread;
+        private boolean reported;
+
+        Peer(String host, int port, int capacity) {
+            this.host = host;
+            this.port = port;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean wants(long roomId) {
+            return connected && rooms.contains(roomId);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    if (!session()) return;
+                } catch (IOException e) {
+                    // one line per outage, not per attempt
+                    if (running && !reported) log.warn("Cluster peer {} unavailable: {}", this, e.getMessage());
+                    reported = true;
+                } finally {
+                    connected = false;
+                    closeQuietly(socket);
+                    rooms.clear();
+                    queue.clear();
+                }
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /** One connection, until it breaks or the relay stops; false if the address is this node. */
+        private boolean session() throws IOException {
+            Socket s = new Socket();
+            socket = s;
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), BUFFER_BYTES));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), BUFFER_BYTES));
+            s.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            Hello us = new Hello(nodeId, writeHello(out));
+            Hello listener = readHello(in);
+            String peerId = listener.nodeId();
+            if (nodeId.equals(peerId)) {
+                log.info("Cluster peer {} is this node, not dialling it", this);
+                return false;
+            }
+            writeProof(out, proof(DIALLER, us, listener));
+            readProof(in, proof(LISTENER, us, listener));
+            s.setSoTimeout(0);
+            rooms.clear();
+            connected = true;
+            reported = false;
+            Thread reader = new Thread(() -> readRooms(s, in), "tm-cluster-rooms-" + this);
+            reader.setDaemon(true);
+            reader.start();
+            log.info("Connected to cluster peer {} ({})", this, peerId);
+
+            List<Relayed> batch = new ArrayList<>(maxBatch);
+            while (running || !queue.isEmpty()) {
+                if (!connected) throw new IOException("connection lost");
+                Relayed first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                out.writeByte(BATCH);
+                out.writeInt(batch.size());
+                for (Relayed r : batch) {
+                    out.writeLong(r.roomId());
+                    out.writeInt(r.json().length);
+                    out.write(r.json());
+                }
+                out.flush();
+                batches.increment();
+                batch.clear();
+            }
+            return true;
+        }
+
+        private void readRooms(Socket s, DataInputStream in) {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    long roomId = in.readLong();
+                    if (type == SUBSCRIBED) rooms.add(roomId);
+                    else if (type == UNSUBSCRIBED) rooms.remove(roomId);
+                    else throw new IOException("unexpected frame");
+                }
+            } catch (IOException e) {
+                // the writer notices and reconnects
+            } finally {
+                // a reader outliving its connection must not mark the next one down
+                if (socket == s) connected = false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.turtlemessenger.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-session wire format for MESSAGE frames. A client opts into CBOR with the CONNECT header
+ * {@code tm-encoding:cbor}; JSON stays the default.
+ *
+ * CBOR frames go out as binary WebSocket messages, which the STOMP handler only does for
+ * {@code application/octet-stream}, so they carry that content type plus {@code tm-encoding:cbor}.
+ * Clients may also SEND with {@code content-type:application/cbor}.
+ *
+ * The sharded broker encodes the payload object straight to CBOR once per broadcast. Frames that
+ * come through the client outbound channel (the simple broker) are transcoded from their JSON
+ * body here, reusing the result while the same body is fanned out.
+ */
+@Component
+public class WireFormatRegistry implements ChannelInterceptor, WebSocketMessageBrokerConfigurer {
+    public enum WireFormat { JSON, CBOR }
+
+    public static final String ENCODING_HEADER = "tm-encoding";
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private record Memo(byte[] json, byte[] cbor) {}
+
+    private final ConcurrentHashMap<String, WireFormat> sessions = new ConcurrentHashMap<>();
+    private final ObjectMapper json = new ObjectMapper();
+    private final CBORMapper cbor = new CBORMapper();
+    private final AtomicReference<Memo> lastTranscoded = new AtomicReference<>();
+
+    public WireFormat formatOf(String sessionId) {
+        return sessionId == null ? WireFormat.JSON : sessions.getOrDefault(sessionId, WireFormat.JSON);
+    }
+
+    public byte[] encodeCbor(Object payload) {
+        try {
+            return cbor.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    byte[] transcodeJson(byte[] body) {
+        Memo memo = lastTranscoded.get();
+        if (memo != null && memo.json() == body) return memo.cbor();
+        byte[] out;
+        try {
+            out = cbor.writeValueAsBytes(json.readTree(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastTranscoded.set(new Memo(body, out));
+        return out;
+    }
+
+    /** Marks a MESSAGE frame's headers as CBOR; the body must already be CBOR. */
+    static void markCbor(SimpMessageHeaderAccessor accessor) {
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(ENCODING_HEADER, "cbor");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(this);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                return toClient(message);
+            }
+        });
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(new CBORMapper());
+        // only for frames that say application/cbor, JSON stays the default
+        converter.setStrictContentTypeMatch(true);
+        messageConverters.add(converter);
+        return true;
+    }
+
+    /** Inbound: records the format requested on CONNECT and forgets it on DISCONNECT. */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) return message;
+        if (type == SimpMessageType.CONNECT) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            String requested = accessor.getFirstNativeHeader(ENCODING_HEADER);
+            if (requested != null && requested.trim().toLowerCase(Locale.ROOT).equals("cbor")) {
+                sessions.put(sessionId, WireFormat.CBOR);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            sessions.remove(sessionId);
+        }
+        return message;
+    }
+
+    private Message<?> toClient(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+        if (formatOf(SimpMessageHeaderAccessor.getSessionId(headers)) != WireFormat.CBOR) return message;
+        if (!(message.getPayload() instanceof byte[] body) || body.length == 0) return message;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (!MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(accessor.getContentType())) return message;
+        markCbor(accessor);
+        return MessageBuilder.createMessage(transcodeJson(body), accessor.getMessageHeaders());
+    }
+}
@@ -16,8 +16,15 @@ import java.util.Map;
 public class ApiExceptionHandler {
     private static final Logger log = LoggerFactory.getLogger(ApiExceptionHandler.class);
 
+    private final MessagingMetrics metrics;
+
+    public ApiExceptionHandler(MessagingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<Map<String, Object>> handleIllegalArg(IllegalArgumentException ex) {
+        metrics.apiError(ex, HttpStatus.BAD_REQUEST.value());
         return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(Map.of(
                         "error", ex.getMessage()
@@ -26,12 +33,14 @@ public class ApiExceptionHandler {
 
     @ExceptionHandler({ MethodArgumentNotValidException.class })
     public ResponseEntity<Map<String, Object>> handleValidation(MethodArgumentNotValidException ex) {
+        metrics.apiError(ex, HttpStatus.BAD_REQUEST.value());
         return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(Map.of("error", "invalid request"));
     }
 
     @ExceptionHandler(DataAccessException.class)
     public ResponseEntity<Map<String, Object>> handleDataAccess(DataAccessException ex, HttpServletRequest req) {
+        metrics.apiError(ex, HttpStatus.INTERNAL_SERVER_ERROR.value());
         log.error("DB error on {} {}: {}", req.getMethod(), req.getRequestURI(), ex.getMessage(), ex);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of(
@@ -42,6 +51,7 @@ public class ApiExceptionHandler {
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleGeneric(Exception ex, HttpServletRequest req) {
+        metrics.apiError(ex, HttpStatus.INTERNAL_SERVER_ERROR.value());
         log.error("Unhandled error on {} {}: {}", req.getMethod(), req.getRequestURI(), ex.getMessage(), ex);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of(
@@ -17,6 +17,7 @@ public class CorsConfig {
                         .allowedOriginPatterns("http://localhost:5173", "http://localhost:5174")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("X-Next-Cursor", "X-Next-Page", "ETag", "Retry-After")
                         .allowCredentials(true);
             }
         };
@@ -0,0 +1,40 @@
+package io.turtlemessenger.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * With virtual threads there is no request thread pool left to bound how many callers reach
+ * the database at once, and the SQLite driver pins its carrier thread for the whole native call.
+ * Every DataSource is therefore wrapped in a {@link ConcurrencyLimitedDataSource} sized to the
+ * Hikari pool, or to {@code tm.db.max-concurrency} when that is set. A {@link SqliteDataSource}
+ * already bounds both its writer and its reader pool and is left alone.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class DatabaseConcurrencyConfig {
+
+    @Bean
+    public static BeanPostProcessor databaseConcurrencyLimiter(Environment env) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource ds) || bean instanceof ConcurrencyLimitedDataSource
+                        || bean instanceof SqliteDataSource) return bean;
+                int permits = env.getProperty("tm.db.max-concurrency", Integer.class, 0);
+                if (permits <= 0) {
+                    permits = ds instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+                }
+                long timeoutMillis = env.getProperty("tm.db.permit-timeout-millis", Long.class, 30_000L);
+                return new ConcurrencyLimitedDataSource(ds, permits, timeoutMillis);
+            }
+        };
+    }
+}
@@ -0,0 +1,238 @@
+package io.turtlemessenger.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for the messaging pipeline. Hot-path timers are created once and handed
+ * out directly; everything is exported through /actuator/prometheus.
+ *
+ * Also tracks live WebSocket sessions, and per room the subscribed sessions and subscriptions
+ * to {@code /topic/rooms.{id}}. Per-room gauges are registered while a room has subscribers;
+ * past {@code max-room-gauges} rooms the rest are folded into {@code room="other"}.
+ */
+@Component
+public class MessagingMetrics {
+    private static final String ROOM_TOPIC = "/topic/rooms.";
+    private static final String OTHER_ROOM = "other";
+
+    private final MeterRegistry registry;
+    private final int maxRoomGauges;
+    private final Timer broadcast;
+    private final Timer saveMessage;
+    private final Timer persistBatch;
+    private final Timer search;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    // sessionId -> subscriptionId -> room tag; guarded by this
+    private final Map<String, Map<String, String>> subscriptions = new HashMap<>();
+    private final Map<String, RoomGauges> rooms = new HashMap<>();
+
+    public MessagingMetrics(MeterRegistry registry,
+                            @Value("${tm.metrics.max-room-gauges:1000}") int maxRoomGauges) {
+        this.registry = registry;
+        this.maxRoomGauges = maxRoomGauges;
+        this.broadcast = Timer.builder("tm.chat.broadcast")
+                .description("Hand-off of a chat message to the room broadcaster")
+                .register(registry);
+        this.saveMessage = Timer.builder("tm.chat.save")
+                .description("Synchronous saveMessage transaction, commit included")
+                .register(registry);
+        this.persistBatch = Timer.builder("tm.chat.persist.batch")
+                .description("Write-behind batch insert transaction")
+                .register(registry);
+        this.search = Timer.builder("tm.chat.search")
+                .description("Full-text search query")
+                .register(registry);
+        Gauge.builder("tm.ws.sessions", sessions, AtomicInteger::get)
+                .description("Connected STOMP sessions")
+                .register(registry);
+    }
+
+    public Timer broadcast() {
+        return broadcast;
+    }
+
+    public Timer saveMessage() {
+        return saveMessage;
+    }
+
+    public Timer persistBatch() {
+        return persistBatch;
+    }
+
+    public Timer search() {
+        return search;
+    }
+
+    /** Inbound STOMP handling time per message type and handler. */
+    public void recordInbound(SimpMessageType type, String handler, long nanos) {
+        String typeTag = type == null ? "unknown" : type.name();
+        timers.computeIfAbsent("inbound|" + typeTag + "|" + handler, k -> Timer.builder("tm.stomp.inbound")
+                        .description("Client inbound channel handling time")
+                        .tag("type", typeTag)
+                        .tag("handler", handler)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** History page latency; {@code source} is cache or db. */
+    public void recordHistory(int pageSize, String source, long nanos) {
+        String size = sizeBucket(pageSize);
+        timers.computeIfAbsent("history|" + size + "|" + source, k -> Timer.builder("tm.chat.history")
+                        .description("Room history page query")
+                        .tag("size", size)
+                        .tag("source", source)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** JWT verification on the given transport (http or stomp). */
+    public void recordJwtVerify(String transport, long nanos, boolean valid) {
+        String result = valid ? "valid" : "invalid";
+        timers.computeIfAbsent("jwt|" + transport + "|" + result, k -> Timer.builder("tm.jwt.verify")
+                        .description("Access token verification")
+                        .tag("transport", transport)
+                        .tag("result", result)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void apiError(Throwable ex, int status) {
+        String type = ex.getClass().getSimpleName();
+        String statusTag = String.valueOf(status);
+        counters.computeIfAbsent(type + "|" + statusTag, k -> Counter.builder("tm.api.errors")
+                        .description("Errors answered by ApiExceptionHandler")
+                        .tag("type", type)
+                        .tag("status", statusTag)
+                        .register(registry))
+                .increment();
+    }
+
+    public void rateLimited(String transport, String scope) {
+        counters.computeIfAbsent("ratelimit|" + transport + "|" + scope, k -> Counter.builder("tm.ratelimit.rejected")
+                        .description("Message sends refused by SendRateLimiter")
+                        .tag("transport", transport)
+                        .tag("scope", scope)
+                        .register(registry))
+                .increment();
+    }
+
+    private static String sizeBucket(int pageSize) {
+        if (pageSize <= 10) return "10";
+        if (pageSize <= 25) return "25";
+        if (pageSize <= 50) return "50";
+        if (pageSize <= 100) return "100";
+        return "200";
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        sessions.incrementAndGet();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (destination == null || !destination.startsWith(ROOM_TOPIC)) return;
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) return;
+        String room = destination.substring(ROOM_TOPIC.length());
+        synchronized (this) {
+            String tag = rooms.containsKey(room) || rooms.size() < maxRoomGauges ? room : OTHER_ROOM;
+            Map<String, String> subs = subscriptions.computeIfAbsent(sessionId, k -> new HashMap<>());
+            if (subs.containsKey(subscriptionId)) return; // duplicate subscription id
+            boolean firstInRoom = !subs.containsValue(tag);
+            subs.put(subscriptionId, tag);
+            RoomGauges gauges = rooms.computeIfAbsent(tag, this::registerRoom);
+            gauges.subscriptions.incrementAndGet();
+            if (firstInRoom) gauges.sessions.incrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) return;
+        synchronized (this) {
+            Map<String, String> subs = subscriptions.get(sessionId);
+            if (subs == null) return;
+            String tag = subs.remove(subscriptionId);
+            if (tag != null) release(tag, !subs.containsValue(tag));
+            if (subs.isEmpty()) subscriptions.remove(sessionId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        synchronized (this) {
+            Map<String, String> subs = subscriptions.remove(sessionId);
+            if (subs != null) {
+                Map<String, Integer> perRoom = new HashMap<>();
+                for (String tag : subs.values()) perRoom.merge(tag, 1, Integer::sum);
+                perRoom.forEach((tag, count) -> {
+                    for (int i = 0; i < count; i++) release(tag, i == count - 1);
+                });
+            }
+        }
+        // a session can disconnect without ever completing CONNECT
+        sessions.updateAndGet(n -> n > 0 ? n - 1 : 0);
+    }
+
+    private RoomGauges registerRoom(String tag) {
+        RoomGauges gauges = new RoomGauges();
+        gauges.sessionsGauge = Gauge.builder("tm.ws.room.sessions", gauges.sessions, AtomicInteger::get)
+                .description("Sessions subscribed to the room topic")
+                .tag("room", tag)
+                .register(registry);
+        gauges.subscriptionsGauge = Gauge.builder("tm.ws.room.subscriptions", gauges.subscriptions, AtomicInteger::get)
+                .description("Subscriptions to the room topic")
+                .tag("room", tag)
+                .register(registry);
+        return gauges;
+    }
+
+    private void release(String tag, boolean lastInSession) {
+        RoomGauges gauges = rooms.get(tag);
+        if (gauges == null) return;
+        gauges.subscriptions.decrementAndGet();
+        if (lastInSession) gauges.sessions.decrementAndGet();
+        if (gauges.subscriptions.get() <= 0) {
+            rooms.remove(tag);
+            registry.remove(gauges.sessionsGauge);
+            registry.remove(gauges.subscriptionsGauge);
+        }
+    }
+
+    private static final class RoomGauges {
+        final AtomicInteger sessions = new AtomicInteger();
+        final AtomicInteger subscriptions = new AtomicInteger();
+        Meter sessionsGauge;
+        Meter subscriptionsGauge;
+    }
+}
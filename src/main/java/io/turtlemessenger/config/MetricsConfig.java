@@ -0,0 +1,114 @@
+package io.turtlemessenger.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.turtlemessenger.broker.BroadcastCoalescer;
+import io.turtlemessenger.broker.ShardedRoomBroker;
+import io.turtlemessenger.broker.TcpClusterRelay;
+import io.turtlemessenger.service.ContactGraph;
+import io.turtlemessenger.service.IdentityCache;
+import io.turtlemessenger.service.MessageArchiver;
+import io.turtlemessenger.service.MessageWriteBehind;
+import io.turtlemessenger.service.RecentMessageCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the in-process pipeline statistics (write-behind queue, history ring buffers,
+ * identity cache, contact graph, broadcast coalescing, sharded broker, cluster relay, SQLite writer queue, archiver)
+ * as Micrometer meters.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder pipelineMeters(MessageWriteBehind writeBehind, RecentMessageCache recent, IdentityCache identities,
+                                      BroadcastCoalescer coalescer, ObjectProvider<ShardedRoomBroker> broker,
+                                      ObjectProvider<SqliteDataSource> sqlite, MessageArchiver archiver, ContactGraph contacts,
+                                      ObjectProvider<TcpClusterRelay> cluster) {
+        return registry -> {
+            Gauge.builder("tm.chat.write-behind.queue", writeBehind, w -> w.stats().queueDepth())
+                    .description("Messages waiting to be persisted")
+                    .register(registry);
+            FunctionCounter.builder("tm.chat.write-behind.persisted", writeBehind, w -> w.stats().persisted())
+                    .register(registry);
+            FunctionCounter.builder("tm.chat.write-behind.dropped", writeBehind, w -> w.stats().dropped())
+                    .description("Messages dropped because the queue stayed full")
+                    .register(registry);
+            FunctionCounter.builder("tm.chat.write-behind.failed", writeBehind, w -> w.stats().failed())
+                    .description("Messages in batches that failed to persist")
+                    .register(registry);
+
+            Gauge.builder("tm.chat.history-cache.bytes", recent, RecentMessageCache::sizeBytes)
+                    .register(registry);
+            Gauge.builder("tm.chat.history-cache.rooms", recent, RecentMessageCache::roomCount)
+                    .register(registry);
+
+            FunctionCounter.builder("tm.identity-cache.requests", identities, c -> c.stats().roomHits())
+                    .tags("kind", "room", "result", "hit").register(registry);
+            FunctionCounter.builder("tm.identity-cache.requests", identities, c -> c.stats().roomMisses())
+                    .tags("kind", "room", "result", "miss").register(registry);
+            FunctionCounter.builder("tm.identity-cache.requests", identities, c -> c.stats().userHits())
+                    .tags("kind", "user", "result", "hit").register(registry);
+            FunctionCounter.builder("tm.identity-cache.requests", identities, c -> c.stats().userMisses())
+                    .tags("kind", "user", "result", "miss").register(registry);
+
+            FunctionCounter.builder("tm.contacts.graph.requests", contacts, g -> g.stats().hits())
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("tm.contacts.graph.requests", contacts, g -> g.stats().misses())
+                    .tag("result", "miss").register(registry);
+            Gauge.builder("tm.contacts.graph.edges", contacts, g -> g.stats().edges())
+                    .description("Peers held across all cached contact tables")
+                    .register(registry);
+
+            FunctionCounter.builder("tm.broadcast.frames", coalescer, c -> c.stats().immediate())
+                    .tag("kind", "single").register(registry);
+            FunctionCounter.builder("tm.broadcast.frames", coalescer, c -> c.stats().batches())
+                    .tag("kind", "batch").register(registry);
+            FunctionCounter.builder("tm.broadcast.batched-messages", coalescer, c -> c.stats().batchedMessages())
+                    .description("Messages delivered inside coalesced batch frames")
+                    .register(registry);
+
+            sqlite.ifAvailable(ds -> Gauge.builder("tm.db.writer.waiting", ds, SqliteDataSource::waitingWriters)
+                    .description("Transactions queued for the SQLite writer connection")
+                    .register(registry));
+
+            FunctionCounter.builder("tm.archive.messages", archiver, a -> a.stats().archived())
+                    .tag("action", "archived").register(registry);
+            FunctionCounter.builder("tm.archive.messages", archiver, a -> a.stats().deleted())
+                    .tag("action", "deleted").register(registry);
+            FunctionCounter.builder("tm.archive.passes", archiver, a -> a.stats().failedPasses())
+                    .tag("result", "failed").register(registry);
+            FunctionCounter.builder("tm.archive.passes", archiver, a -> a.stats().passes())
+                    .tag("result", "ok").register(registry);
+
+            broker.ifAvailable(b -> {
+                Gauge.builder("tm.broker.queued", b, x -> x.stats().queued())
+                        .description("Broadcasts waiting on the dispatch shards")
+                        .register(registry);
+                FunctionCounter.builder("tm.broker.published", b, x -> x.stats().published()).register(registry);
+                FunctionCounter.builder("tm.broker.delivered", b, x -> x.stats().delivered()).register(registry);
+                FunctionCounter.builder("tm.broker.dropped", b, x -> x.stats().dropped())
+                        .description("Broadcasts dropped because a shard queue stayed full")
+                        .register(registry);
+            });
+
+            cluster.ifAvailable(c -> {
+                Gauge.builder("tm.cluster.peers.connected", c, x -> x.stats().connected())
+                        .description("Cluster peers with an open relay connection")
+                        .register(registry);
+                Gauge.builder("tm.cluster.rooms", c, x -> x.stats().localRooms())
+                        .description("Rooms with local subscribers, as announced to peers")
+                        .register(registry);
+                FunctionCounter.builder("tm.cluster.relayed", c, x -> x.stats().relayed()).register(registry);
+                FunctionCounter.builder("tm.cluster.batches", c, x -> x.stats().batches()).register(registry);
+                FunctionCounter.builder("tm.cluster.received", c, x -> x.stats().received()).register(registry);
+                FunctionCounter.builder("tm.cluster.dropped", c, x -> x.stats().dropped())
+                        .description("Relays dropped because a peer queue was full")
+                        .register(registry);
+            });
+        };
+    }
+}
@@ -4,6 +4,7 @@ import io.turtlemessenger.security.JwtAuthFilter;
 import io.turtlemessenger.security.JwtUtil;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -19,7 +20,8 @@ public class SecurityConfig {
     public JwtUtil accessJwt() {
         String secret = System.getenv().getOrDefault("TM_JWT_SECRET", "dev-secret-change-me");
         long ttl = Long.parseLong(System.getenv().getOrDefault("TM_JWT_ACCESS_TTL_SECONDS", String.valueOf(15L * 60L))); // 15 minutes
-        return new JwtUtil(secret, ttl);
+        int cacheSize = Integer.parseInt(System.getenv().getOrDefault("TM_JWT_VERIFY_CACHE_SIZE", String.valueOf(JwtUtil.DEFAULT_CACHE_SIZE)));
+        return new JwtUtil(secret, ttl, cacheSize);
     }
 
     @Bean(name = "refreshJwt")
@@ -30,16 +32,21 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http, @org.springframework.beans.factory.annotation.Qualifier("accessJwt") JwtUtil jwt) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, @org.springframework.beans.factory.annotation.Qualifier("accessJwt") JwtUtil jwt,
+                                           MessagingMetrics metrics, Environment env) throws Exception {
         http
                 .cors(Customizer.withDefaults())
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/**", "/ws/**").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        // scraping needs no token only on the management port (management.server.*), which binds
+                        // to loopback; served from the application port, the metrics are authenticated like the API
+                        .requestMatchers(request -> request.getLocalPort() == env.getProperty("local.management.port", Integer.class, -1)).permitAll()
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(new JwtAuthFilter(jwt), UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(new JwtAuthFilter(jwt, metrics), UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
 
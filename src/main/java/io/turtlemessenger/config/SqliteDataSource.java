@@ -0,0 +1,46 @@
+package io.turtlemessenger.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.io.Closeable;
+import java.sql.Connection;
+
+/**
+ * SQLite behind one writer connection and a separate read-only pool. Connections are fetched
+ * lazily, so a transaction marked {@code readOnly} gets a reader and everything else queues for
+ * the writer. Writers wait in FIFO order on a single permit instead of colliding on SQLite's
+ * write lock and failing with SQLITE_BUSY.
+ */
+public class SqliteDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+    private final HikariDataSource writerPool;
+    private final HikariDataSource readerPool;
+    private final ConcurrencyLimitedDataSource writer;
+
+    public SqliteDataSource(HikariDataSource writerPool, HikariDataSource readerPool, long writeTimeoutMillis) {
+        this.writerPool = writerPool;
+        this.readerPool = readerPool;
+        this.writer = new ConcurrencyLimitedDataSource(writerPool, 1, writeTimeoutMillis);
+        setTargetDataSource(writer);
+        setReadOnlyDataSource(readerPool);
+        // known up front, so the proxy doesn't open a connection at startup to find out
+        setDefaultAutoCommit(true);
+        setDefaultTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        afterPropertiesSet();
+    }
+
+    /** Transactions waiting for the writer connection. */
+    public int waitingWriters() {
+        return writer.waiting();
+    }
+
+    public HikariDataSource readerPool() {
+        return readerPool;
+    }
+
+    @Override
+    public void close() {
+        readerPool.close();
+        writerPool.close();
+    }
+}
@@ -0,0 +1,70 @@
+package io.turtlemessenger.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.sqlite.SQLiteConfig;
+
+import java.util.Locale;
+
+/**
+ * {@code tm.db.mode=sqlite}: replaces the default Hikari pool with a {@link SqliteDataSource}.
+ * Every connection opens with WAL journaling, {@code synchronous}, {@code busy_timeout},
+ * {@code cache_size} and {@code mmap_size} set; reader connections are also {@code query_only}.
+ * The writer pool is created first so the database is in WAL mode before any reader opens it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "tm.db.mode", havingValue = "sqlite")
+public class SqliteDataSourceConfig {
+
+    @Bean
+    public SqliteDataSource dataSource(@Value("${spring.datasource.url}") String url,
+                                       @Value("${tm.db.sqlite.readers:4}") int readers,
+                                       @Value("${tm.db.sqlite.synchronous:NORMAL}") String synchronous,
+                                       @Value("${tm.db.sqlite.busy-timeout-millis:5000}") int busyTimeoutMillis,
+                                       @Value("${tm.db.sqlite.cache-size-kib:16384}") int cacheSizeKib,
+                                       @Value("${tm.db.sqlite.mmap-size:268435456}") long mmapSize,
+                                       @Value("${tm.db.sqlite.write-timeout-millis:30000}") long writeTimeoutMillis,
+                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        if (readers <= 0) throw new IllegalArgumentException("tm.db.sqlite.readers must be positive");
+        SQLiteConfig pragmas = new SQLiteConfig();
+        pragmas.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        pragmas.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.trim().toUpperCase(Locale.ROOT)));
+        pragmas.setBusyTimeout(busyTimeoutMillis);
+        // negative cache_size is in KiB rather than pages
+        pragmas.setCacheSize(-cacheSizeKib);
+        pragmas.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(mmapSize));
+
+        HikariConfig writer = pool("tm-sqlite-writer", url, pragmas, 1, meterRegistry);
+        // a write transaction can outlast Hikari's default 30 s wait; the permit in front decides instead
+        writer.setConnectionTimeout(writeTimeoutMillis + 1_000);
+        // only takes effect on a database without tables yet; an existing file needs a one-off VACUUM
+        writer.setConnectionInitSql("PRAGMA auto_vacuum = INCREMENTAL");
+        HikariDataSource writerPool = new HikariDataSource(writer);
+
+        HikariConfig reader = pool("tm-sqlite-reader", url, pragmas, readers, meterRegistry);
+        reader.setConnectionInitSql("PRAGMA query_only = 1");
+        HikariDataSource readerPool = new HikariDataSource(reader);
+
+        return new SqliteDataSource(writerPool, readerPool, writeTimeoutMillis);
+    }
+
+    private static HikariConfig pool(String name, String url, SQLiteConfig pragmas, int size,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(url);
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setDataSourceProperties(pragmas.toProperties());
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+        meterRegistry.ifAvailable(registry -> config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        return config;
+    }
+}
@@ -13,7 +13,11 @@ import java.util.Collections;
 
 public class StompAuthChannelInterceptor implements ChannelInterceptor {
     private final JwtUtil jwt;
-    public StompAuthChannelInterceptor(JwtUtil jwt) { this.jwt = jwt; }
+    private final MessagingMetrics metrics;
+    public StompAuthChannelInterceptor(JwtUtil jwt, MessagingMetrics metrics) {
+        this.jwt = jwt;
+        this.metrics = metrics;
+    }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -21,10 +25,11 @@ public class StompAuthChannelInterceptor implements ChannelInterceptor {
         if (StompCommand.CONNECT.equals(accessor.getCommand())) {
             String auth = accessor.getFirstNativeHeader("Authorization");
             if (auth != null && auth.startsWith("Bearer ")) {
-                String token = auth.substring(7);
-                if (jwt.isValid(token)) {
-                    String username = jwt.getSubject(token);
-                    var principal = new User(username, "", Collections.emptyList());
+                long start = System.nanoTime();
+                JwtUtil.Claims claims = jwt.verify(auth.substring(7));
+                metrics.recordJwtVerify("stomp", System.nanoTime() - start, claims != null);
+                if (claims != null) {
+                    var principal = new User(claims.subject(), "", Collections.emptyList());
                     var authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                     accessor.setUser(authentication);
                 }
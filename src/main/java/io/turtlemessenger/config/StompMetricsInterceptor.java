@@ -0,0 +1,31 @@
+package io.turtlemessenger.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+/**
+ * Times each handler invocation on the client inbound channel. beforeHandle and
+ * afterMessageHandled run on the same executor thread, so the start time is kept in a ThreadLocal.
+ */
+public class StompMetricsInterceptor implements ExecutorChannelInterceptor {
+    private final MessagingMetrics metrics;
+    private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[1]);
+
+    public StompMetricsInterceptor(MessagingMetrics metrics) { this.metrics = metrics; }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        started.get()[0] = System.nanoTime();
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        long nanos = System.nanoTime() - started.get()[0];
+        metrics.recordInbound(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()),
+                handler.getClass().getSimpleName(), nanos);
+    }
+}
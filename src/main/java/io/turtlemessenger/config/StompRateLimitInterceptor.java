@@ -0,0 +1,83 @@
+package io.turtlemessenger.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.turtlemessenger.dto.SendErrorDTO;
+import io.turtlemessenger.service.SendRateLimiter;
+import io.turtlemessenger.service.SessionErrors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * Applies {@link SendRateLimiter} to {@code /app/rooms.{id}.send}. A refused send is dropped and
+ * the session told on {@code /user/queue/errors}, with the retry delay; the session stays
+ * connected. Headers are read in place, so other frames pass without an accessor being allocated.
+ */
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(StompRateLimitInterceptor.class);
+    private static final String PREFIX = "/app/rooms.";
+    private static final String SUFFIX = ".send";
+
+    private final SendRateLimiter limiter;
+    private final MessagingMetrics metrics;
+    // looked up on first use: SessionErrors needs the messaging template this configuration builds
+    private final ObjectProvider<SessionErrors> errors;
+    private final ObjectMapper json = new ObjectMapper();
+
+    public StompRateLimitInterceptor(SendRateLimiter limiter, MessagingMetrics metrics, ObjectProvider<SessionErrors> errors) {
+        this.limiter = limiter;
+        this.metrics = metrics;
+        this.errors = errors;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+        long roomId = roomId(SimpMessageHeaderAccessor.getDestination(headers));
+        if (roomId == Long.MIN_VALUE) return message;
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        String key = user != null ? user.getName() : "session:" + SimpMessageHeaderAccessor.getSessionId(headers);
+        SendRateLimiter.Rejection rejected = limiter.check(key, roomId);
+        if (rejected == null) return message;
+        metrics.rateLimited("stomp", rejected.scope());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        log.debug("Send to room {} by {} rate limited ({}), retry after {} ms", roomId, key, rejected.scope(), rejected.retryAfterMillis());
+        if (sessionId != null) {
+            errors.getObject().send(sessionId, new SendErrorDTO(roomId, clientTs(message.getPayload()),
+                    SendErrorDTO.RATE_LIMITED, rejected.retryAfterMillis()));
+        }
+        return null;
+    }
+
+    /** The {@code ts} the client put in a JSON send, 0 if there is none. Only read for refused sends. */
+    private long clientTs(Object payload) {
+        if (!(payload instanceof byte[] bytes)) return 0;
+        try {
+            JsonNode ts = json.readTree(bytes).get("ts");
+            return ts != null && ts.canConvertToLong() ? ts.asLong() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** The room of a send destination, or Long.MIN_VALUE if it isn't one. */
+    static long roomId(String destination) {
+        if (destination == null || !destination.startsWith(PREFIX) || !destination.endsWith(SUFFIX)) return Long.MIN_VALUE;
+        try {
+            return Long.parseLong(destination, PREFIX.length(), destination.length() - SUFFIX.length(), 10);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
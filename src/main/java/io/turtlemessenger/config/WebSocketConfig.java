@@ -7,7 +7,17 @@ import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import io.turtlemessenger.security.JwtUtil;
+import io.turtlemessenger.service.SendRateLimiter;
+import io.turtlemessenger.service.SessionErrors;
 import org.springframework.beans.factory.annotation.Qualifier;
+import io.turtlemessenger.broker.SharedFrameStompEncoder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -27,17 +37,44 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        // in-process; room topics reach other instances through the ClusterRelay (tm.cluster.mode)
+        registry.enableSimpleBroker("/topic", "/queue");
         registry.setApplicationDestinationPrefixes("/app");
+        // /user/queue/... is resolved to the sessions of the authenticated user, e.g. contact deltas
+        registry.setUserDestinationPrefix("/user");
     }
 
     private final JwtUtil jwtUtil;
-    public WebSocketConfig(@Qualifier("accessJwt") JwtUtil jwtUtil) {
+    private final MessagingMetrics metrics;
+    private final SendRateLimiter rateLimiter;
+    private final ObjectProvider<SessionErrors> sessionErrors;
+    public WebSocketConfig(@Qualifier("accessJwt") JwtUtil jwtUtil, MessagingMetrics metrics, SendRateLimiter rateLimiter,
+                           ObjectProvider<SessionErrors> sessionErrors) {
         this.jwtUtil = jwtUtil;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+        this.sessionErrors = sessionErrors;
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(new StompAuthChannelInterceptor(jwtUtil));
+        registration.interceptors(new StompAuthChannelInterceptor(jwtUtil, metrics),
+                new StompRateLimitInterceptor(rateLimiter, metrics, sessionErrors),
+                new StompMetricsInterceptor(metrics));
+    }
+
+    // STOMP handlers are registered with the sub-protocol handler while the endpoint mapping is built,
+    // so the encoder is swapped in once all singletons exist and before the handler starts
+    @Bean
+    @ConditionalOnProperty(name = "tm.ws.shared-frame-encoding", havingValue = "true", matchIfMissing = true)
+    public SmartInitializingSingleton sharedFrameEncoding(
+            @Qualifier("subProtocolWebSocketHandler") ObjectProvider<WebSocketHandler> handler) {
+        return () -> {
+            if (!(handler.getIfAvailable() instanceof SubProtocolWebSocketHandler subProtocol)) return;
+            SharedFrameStompEncoder encoder = new SharedFrameStompEncoder();
+            subProtocol.getProtocolHandlers().forEach(h -> {
+                if (h instanceof StompSubProtocolHandler stomp) stomp.setEncoder(encoder);
+            });
+        };
     }
 }
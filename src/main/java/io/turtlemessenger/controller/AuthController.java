@@ -70,18 +70,15 @@ public class AuthController {
         if (body != null) {
             bodyToken = body.get("refreshToken");
         }
-        String tokenToUse = null;
         // Prefer a valid token, regardless of where it comes from
-        if (headerToken != null && refreshJwt.isValid(headerToken)) {
-            tokenToUse = headerToken;
-        } else if (bodyToken != null && refreshJwt.isValid(bodyToken)) {
-            tokenToUse = bodyToken;
+        JwtUtil.Claims claims = refreshJwt.verify(headerToken);
+        if (claims == null) {
+            claims = refreshJwt.verify(bodyToken);
         }
-        if (tokenToUse == null) {
+        if (claims == null) {
             return ResponseEntity.status(401).body(Map.of("error", "invalid refresh token"));
         }
-        String subject = refreshJwt.getSubject(tokenToUse);
-        String newAccess = accessJwt.generateToken(subject);
+        String newAccess = accessJwt.generateToken(claims.subject());
         // For MVP we keep the same refresh token and return only a new access token
         return ResponseEntity.ok(Map.of("accessToken", newAccess));
     }
@@ -1,29 +1,40 @@
 package io.turtlemessenger.controller;
 
+import io.turtlemessenger.broker.BroadcastCoalescer;
 import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.SendErrorDTO;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.security.Principal;
+import io.turtlemessenger.config.MessagingMetrics;
 import io.turtlemessenger.service.ChatService;
+import io.turtlemessenger.service.SessionErrors;
 
 @Controller
 public class ChatMessageController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final BroadcastCoalescer broadcaster;
     private final ChatService chatService;
+    private final MessagingMetrics metrics;
+    private final SessionErrors errors;
     private final Logger logger = LoggerFactory.getLogger(ChatMessageController.class);
 
-    public ChatMessageController(SimpMessagingTemplate messagingTemplate, ChatService chatService) {
-        this.messagingTemplate = messagingTemplate;
+    public ChatMessageController(BroadcastCoalescer broadcaster, ChatService chatService, MessagingMetrics metrics,
+                                 SessionErrors errors) {
+        this.broadcaster = broadcaster;
         this.chatService = chatService;
+        this.metrics = metrics;
+        this.errors = errors;
     }
 
     @MessageMapping("rooms.{roomId}.send")
-    public void send(@DestinationVariable Long roomId, MessageDTO message, Principal principal) {
+    public void send(@DestinationVariable Long roomId, MessageDTO message, Principal principal,
+                     @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
         if (message.getTs() == 0) {
             message.setTs(System.currentTimeMillis());
         }
@@ -31,11 +42,13 @@ public class ChatMessageController {
         if (principal != null) {
             message.setSenderId(principal.getName());
         }
-        try {
-            chatService.saveMessage(roomId, message, principal);
-        } catch (Exception e) {
-            logger.error("Failed to persist message for room {}: {}", roomId, e.getMessage());
+        // Persistence is write-behind; the broadcast no longer waits on the database, but goes
+        // out before the next message of the room is numbered
+        if (!chatService.enqueueMessage(roomId, message, principal,
+                m -> metrics.broadcast().record(() -> broadcaster.broadcast(roomId, m)))) {
+            logger.warn("Dropped message for room {}: write-behind queue is full", roomId);
+            // it was never stored, so nobody else sees it either; the sender is told to retry
+            errors.send(sessionId, new SendErrorDTO(roomId, message.getTs(), SendErrorDTO.QUEUE_FULL, 0));
         }
-        messagingTemplate.convertAndSend("/topic/rooms." + roomId, message);
     }
 }
@@ -1,31 +1,114 @@
 package io.turtlemessenger.controller;
 
+import io.turtlemessenger.config.MessagingMetrics;
 import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.MessagePage;
+import io.turtlemessenger.dto.RetentionDTO;
+import io.turtlemessenger.dto.SearchHitDTO;
 import io.turtlemessenger.service.ChatService;
+import io.turtlemessenger.service.MessageArchiver;
+import io.turtlemessenger.service.MessageSearch;
+import io.turtlemessenger.service.SendRateLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
 public class ChatRestController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String NEXT_PAGE_HEADER = "X-Next-Page";
 
     private final ChatService chatService;
-    public ChatRestController(ChatService chatService) { this.chatService = chatService; }
+    private final MessagingMetrics metrics;
+    private final MessageArchiver archiver;
+    private final MessageSearch search;
+    private final SendRateLimiter rateLimiter;
+    public ChatRestController(ChatService chatService, MessagingMetrics metrics, MessageArchiver archiver, MessageSearch search,
+                              SendRateLimiter rateLimiter) {
+        this.chatService = chatService;
+        this.metrics = metrics;
+        this.archiver = archiver;
+        this.search = search;
+        this.rateLimiter = rateLimiter;
+    }
 
     @GetMapping("/rooms/{roomId}/messages")
-    public List<MessageDTO> getHistory(
+    public ResponseEntity<List<MessageDTO>> getHistory(
             @PathVariable Long roomId,
             @RequestParam(name = "size", required = false) Integer size,
-            @RequestParam(name = "before", required = false) Long before
+            @RequestParam(name = "before", required = false) Long before,
+            @RequestParam(name = "beforeId", required = false) Long beforeId,
+            @RequestParam(name = "afterId", required = false) Long afterId,
+            @RequestParam(name = "afterSeq", required = false) Long afterSeq,
+            WebRequest request
     ) {
-        return chatService.getHistory(roomId, size, before);
+        // answered from the room's version alone when the client's copy is current
+        String etag = chatService.historyTag(roomId);
+        if (request.checkNotModified(etag)) return null;
+        var response = ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate());
+        if (beforeId == null && afterId == null && before != null) {
+            // legacy timestamp cursor
+            return response.body(chatService.getHistory(roomId, size, before));
+        }
+        // reconnect catch-up; the cursor header then holds a sequence number
+        MessagePage page = afterSeq != null ? chatService.getPageAfterSeq(roomId, size, afterSeq)
+                : chatService.getPage(roomId, size, beforeId, afterId);
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.body(page.messages());
     }
 
     @PostMapping("/rooms/{roomId}/messages")
-    public ResponseEntity<Void> append(@PathVariable Long roomId, @RequestBody MessageDTO message) {
-        chatService.saveMessage(roomId, message, null);
+    public ResponseEntity<Void> append(@PathVariable Long roomId, @RequestBody MessageDTO message, Principal principal) {
+        SendRateLimiter.Rejection rejected = rateLimiter.check(principal != null ? principal.getName() : "anonymous", roomId);
+        if (rejected != null) {
+            metrics.rateLimited("rest", rejected.scope());
+            long seconds = (rejected.retryAfterMillis() + 999) / 1000;
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds)).build();
+        }
+        // timed here so the commit is included, it happens when the transactional proxy returns
+        metrics.saveMessage().record(() -> chatService.saveMessage(roomId, message, null));
         return ResponseEntity.accepted().build();
     }
+
+    @GetMapping("/rooms/{roomId}/search")
+    public ResponseEntity<List<SearchHitDTO>> search(
+            @PathVariable Long roomId,
+            @RequestParam(name = "q") String q,
+            @RequestParam(name = "page", required = false) Integer page,
+            @RequestParam(name = "size", required = false) Integer size
+    ) {
+        MessageSearch.Page result = search.search(roomId, q, page, size);
+        var response = ResponseEntity.ok();
+        if (result.nextPage() != null) {
+            response.header(NEXT_PAGE_HEADER, String.valueOf(result.nextPage()));
+        }
+        return response.body(result.hits());
+    }
+
+    @GetMapping("/rooms/{roomId}/retention")
+    public RetentionDTO getRetention(@PathVariable Long roomId) {
+        return archiver.policy(roomId);
+    }
+
+    @PutMapping("/rooms/{roomId}/retention")
+    public ResponseEntity<?> updateRetention(@PathVariable Long roomId, @RequestBody RetentionDTO retention, Principal principal) {
+        if (!archiver.mayUpdatePolicy(principal == null ? null : principal.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "retention can only be changed by an admin"));
+        }
+        try {
+            return ResponseEntity.ok(archiver.updatePolicy(roomId, retention));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package io.turtlemessenger.controller;
 
 import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.dto.ContactSnapshotDTO;
 import io.turtlemessenger.service.ContactService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.List;
@@ -19,14 +23,36 @@ public class ContactController {
         this.contactService = contactService;
     }
 
+    // Both lists carry the version of the user's contact set and answer If-None-Match with 304
     @GetMapping
-    public List<ContactDTO> list(Principal principal) {
-        return contactService.listContacts(principal);
+    public ResponseEntity<List<ContactDTO>> list(Principal principal, WebRequest request) {
+        String etag = contactService.contactsTag(principal);
+        if (request.checkNotModified(etag)) return null;
+        return revalidated(etag).body(contactService.listContacts(principal));
     }
 
     @GetMapping("/requests")
-    public List<ContactDTO> requests(Principal principal) {
-        return contactService.incomingRequests(principal);
+    public ResponseEntity<List<ContactDTO>> requests(Principal principal, WebRequest request) {
+        String etag = contactService.contactsTag(principal);
+        if (request.checkNotModified(etag)) return null;
+        return revalidated(etag).body(contactService.incomingRequests(principal));
+    }
+
+    private static ResponseEntity.BodyBuilder revalidated(String etag) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate());
+    }
+
+    /**
+     * Both lists plus their version, for (re)syncing with the deltas on {@code /user/queue/contacts}.
+     * Given the epoch and version the client already has, answers 304 if nothing changed since.
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<ContactSnapshotDTO> snapshot(@RequestParam(value = "epoch", required = false) Long epoch,
+                                                       @RequestParam(value = "version", required = false) Long version,
+                                                       Principal principal) {
+        ContactSnapshotDTO snapshot = contactService.snapshot(principal, epoch, version);
+        if (snapshot == null) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        return ResponseEntity.ok(snapshot);
     }
 
     public record AddContactRequest(String user) {}
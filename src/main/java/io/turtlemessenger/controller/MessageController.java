@@ -1,7 +1,6 @@
 package io.turtlemessenger.controller;
 
 import io.turtlemessenger.dto.MessageDTO;
-import io.turtlemessenger.model.Message;
 import io.turtlemessenger.service.ChatService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,9 +20,9 @@ public class MessageController {
     @PostMapping
     public String saveMessage(@RequestBody String text, @RequestParam(name = "roomId", defaultValue = "1") Long roomId) {
         MessageDTO dto = new MessageDTO(roomId, "api", text, System.currentTimeMillis());
-        Message saved = chatService.saveMessage(roomId, dto, null);
+        MessageDTO saved = chatService.saveMessage(roomId, dto, null);
         logger.info("Saved message: id={}, room={}, sender={}, len={}",
-                saved.getId(), saved.getRoom().getId(), saved.getSenderUsername(), saved.getContent().length());
+                saved.getId(), saved.getRoomId(), saved.getSenderId(), saved.getContent().length());
         return "Message Saved";
     }
 }
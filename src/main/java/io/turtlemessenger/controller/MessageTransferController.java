@@ -0,0 +1,61 @@
+package io.turtlemessenger.controller;
+
+import io.turtlemessenger.service.MessageExporter;
+import io.turtlemessenger.service.MessageImporter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api")
+public class MessageTransferController {
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+
+    private final MessageExporter exporter;
+    private final MessageImporter importer;
+
+    public MessageTransferController(MessageExporter exporter, MessageImporter importer) {
+        this.exporter = exporter;
+        this.importer = importer;
+    }
+
+    // Written straight to the servlet stream on the request thread: no async timeout cuts a long export short
+    @GetMapping("/rooms/{roomId}/export")
+    public void export(@PathVariable Long roomId,
+                       @RequestParam(name = "afterId", required = false) Long afterId,
+                       HttpServletResponse response) throws IOException {
+        if (!exporter.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "10");
+            return;
+        }
+        try {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"room-" + roomId + ".ndjson\"");
+            response.setBufferSize(EXPORT_BUFFER_BYTES);
+            exporter.export(roomId, afterId == null ? 0 : afterId, response.getOutputStream());
+        } finally {
+            exporter.release();
+        }
+    }
+
+    // The body is read as it arrives, never buffered whole
+    @PostMapping("/rooms/{roomId}/import")
+    public ResponseEntity<?> importMessages(@PathVariable Long roomId, HttpServletRequest request, Principal principal) throws IOException {
+        if (!importer.isEnabled()) return ResponseEntity.notFound().build();
+        if (!importer.mayImport(principal == null ? null : principal.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "import is limited to admins"));
+        }
+        return ResponseEntity.ok(importer.importRoom(roomId, request.getInputStream()));
+    }
+}
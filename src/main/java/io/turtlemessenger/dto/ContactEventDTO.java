@@ -0,0 +1,15 @@
+package io.turtlemessenger.dto;
+
+/**
+ * A change to one user's contact lists, pushed to {@code /user/queue/contacts}. {@code version}
+ * counts the user's changes within {@code epoch} (one server run) without gaps, so a client that
+ * sees a jump or a new epoch knows to fetch a {@link ContactSnapshotDTO}.
+ *
+ * {@code CONTACT} puts the peer on the contact list and off the request list, {@code REQUEST}
+ * adds an incoming request, {@code REMOVED} takes the peer off both.
+ */
+public record ContactEventDTO(long epoch, long version, String type, ContactDTO contact) {
+    public static final String CONTACT = "CONTACT";
+    public static final String REQUEST = "REQUEST";
+    public static final String REMOVED = "REMOVED";
+}
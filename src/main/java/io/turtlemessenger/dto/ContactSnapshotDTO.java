@@ -0,0 +1,7 @@
+package io.turtlemessenger.dto;
+
+import java.util.List;
+
+/** Both contact lists of a user as of {@code version}; see {@link ContactEventDTO}. */
+public record ContactSnapshotDTO(long epoch, long version, List<ContactDTO> contacts, List<ContactDTO> requests) {
+}
@@ -1,10 +1,14 @@
 package io.turtlemessenger.dto;
 
+import java.time.Instant;
+
 public class MessageDTO {
+    private Long id;
     private Long roomId;
     private String senderId;
     private String content;
     private long ts;
+    private Long seq;
 
     public MessageDTO() {}
 
@@ -15,6 +19,27 @@ public class MessageDTO {
         this.ts = ts;
     }
 
+    public MessageDTO(Long id, Long roomId, String senderId, String content, long ts) {
+        this(roomId, senderId, content, ts);
+        this.id = id;
+    }
+
+    // Used by the JPQL constructor expressions in MessageRepository
+    public MessageDTO(Long id, Long roomId, String senderId, String content, Instant createdAt) {
+        this(id, roomId, senderId, content, createdAt.toEpochMilli());
+    }
+
+    public MessageDTO(Long id, Long roomId, String senderId, String content, long ts, Long seq) {
+        this(id, roomId, senderId, content, ts);
+        this.seq = seq;
+    }
+
+    public MessageDTO(Long id, Long roomId, String senderId, String content, Instant createdAt, Long seq) {
+        this(id, roomId, senderId, content, createdAt.toEpochMilli(), seq);
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
     public Long getRoomId() { return roomId; }
     public void setRoomId(Long roomId) { this.roomId = roomId; }
     public String getSenderId() { return senderId; }
@@ -23,5 +48,8 @@ public class MessageDTO {
     public void setContent(String content) { this.content = content; }
     public long getTs() { return ts; }
     public void setTs(long ts) { this.ts = ts; }
+    /** Position in the room, without gaps; null for messages stored before rooms were numbered, or archived. */
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
 }
 
@@ -0,0 +1,11 @@
+package io.turtlemessenger.dto;
+
+import java.util.List;
+
+/**
+ * One page of room history in ascending id order. {@code nextCursor} is the id to pass as
+ * {@code beforeId} (backward paging) or {@code afterId} (forward paging) for the next page,
+ * or null when there is nothing further in that direction.
+ */
+public record MessagePage(List<MessageDTO> messages, Long nextCursor) {
+}
@@ -0,0 +1,8 @@
+package io.turtlemessenger.dto;
+
+/**
+ * A room's effective retention: days in the hot table before archiving, and days before
+ * deletion (0 = never).
+ */
+public record RetentionDTO(Integer hotDays, Integer retainDays) {
+}
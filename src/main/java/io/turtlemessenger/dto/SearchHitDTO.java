@@ -0,0 +1,8 @@
+package io.turtlemessenger.dto;
+
+/**
+ * A search result: the message fields as in {@link MessageDTO}, plus an HTML-escaped excerpt
+ * with the matched terms wrapped in {@code <mark>}.
+ */
+public record SearchHitDTO(Long id, Long roomId, String senderId, String content, long ts, String snippet) {
+}
@@ -0,0 +1,12 @@
+package io.turtlemessenger.dto;
+
+/**
+ * A send that was not accepted, pushed to the sending session on {@code /user/queue/errors}.
+ * {@code ts} is the rejected message's own timestamp, so the client can tell which one to retry, or 0 if it was unreadable.
+ * {@code error} is one of the constants below.
+ * {@code retryAfterMillis} is how long to wait before retrying, or 0 if the server cannot say.
+ */
+public record SendErrorDTO(long roomId, long ts, String error, long retryAfterMillis) {
+    public static final String QUEUE_FULL = "queue_full";
+    public static final String RATE_LIMITED = "rate_limited";
+}
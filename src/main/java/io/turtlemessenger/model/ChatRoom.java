@@ -15,6 +15,10 @@ public class ChatRoom {
     @Column(nullable = false)
     private Instant createdAt = Instant.now();
 
+    // Highest sequence number the room has handed out, kept even once its messages are archived
+    @Column(name = "last_seq")
+    private Long lastSeq;
+
     public ChatRoom() {}
     public ChatRoom(Long id, String name) { this.id = id; this.name = name; }
 
@@ -24,5 +28,7 @@ public class ChatRoom {
     public void setName(String name) { this.name = name; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Long getLastSeq() { return lastSeq; }
+    public void setLastSeq(Long lastSeq) { this.lastSeq = lastSeq; }
 }
 
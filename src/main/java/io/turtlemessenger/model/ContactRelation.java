@@ -6,6 +6,9 @@ import java.time.Instant;
 @Entity
 @Table(name = "contacts", uniqueConstraints = {
         @UniqueConstraint(name = "uk_contacts_pair", columnNames = {"user_id", "contact_id"})
+}, indexes = {
+        // the incoming side of ContactGraph loads
+        @Index(name = "idx_contacts_contact", columnList = "contact_id")
 })
 public class ContactRelation {
     @Id
@@ -5,18 +5,20 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "messages", indexes = {
-        @Index(name = "idx_messages_room_created", columnList = "room_id,created_at")
+        @Index(name = "idx_messages_room_created", columnList = "room_id,created_at"),
+        @Index(name = "idx_messages_room_id", columnList = "room_id,id"),
+        @Index(name = "idx_messages_room_seq", columnList = "room_id,seq")
 })
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "room_id")
     private ChatRoom room;
 
-    @ManyToOne(optional = true)
+    @ManyToOne(optional = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_user_id")
     private UserAccount senderUser;
 
@@ -33,6 +35,10 @@ public class Message {
     @Column(name = "created_at", nullable = false)
     private Instant createdAt = Instant.now();
 
+    // Per-room sequence number, gap-free in send order; see RoomSequences
+    @Column(name = "seq")
+    private Long seq;
+
     public Message() {}
 
     @PrePersist
@@ -55,4 +61,6 @@ public class Message {
     public void setContent(String content) { this.content = content; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
 }
@@ -0,0 +1,15 @@
+package io.turtlemessenger.model;
+
+import java.time.Instant;
+
+/**
+ * A chat message accepted for persistence but not yet written to the database. {@code seq} is
+ * its number in the room from {@code RoomSequences}, 0 if it has none.
+ */
+public record PendingMessage(long roomId, String senderUsername, String content, Instant createdAt, long seq) {
+
+    /** Without a sequence number, for seeding data past the chat service. */
+    public PendingMessage(long roomId, String senderUsername, String content, Instant createdAt) {
+        this(roomId, senderUsername, content, createdAt, 0);
+    }
+}
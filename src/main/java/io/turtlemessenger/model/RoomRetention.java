@@ -0,0 +1,38 @@
+package io.turtlemessenger.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Per-room override of the archive settings. A null field falls back to
+ * {@code tm.archive.hot-days} / {@code tm.archive.retain-days}.
+ */
+@Entity
+@Table(name = "room_retention")
+public class RoomRetention {
+    @Id
+    @Column(name = "room_id")
+    private Long roomId;
+
+    // messages older than this move from the messages table to the archive
+    @Column(name = "hot_days")
+    private Integer hotDays;
+
+    // messages older than this are deleted everywhere; 0 keeps them forever
+    @Column(name = "retain_days")
+    private Integer retainDays;
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    public RoomRetention() {}
+    public RoomRetention(Long roomId) { this.roomId = roomId; }
+
+    public Long getRoomId() { return roomId; }
+    public Integer getHotDays() { return hotDays; }
+    public void setHotDays(Integer hotDays) { this.hotDays = hotDays; }
+    public Integer getRetainDays() { return retainDays; }
+    public void setRetainDays(Integer retainDays) { this.retainDays = retainDays; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -2,7 +2,17 @@ package io.turtlemessenger.repository;
 
 import io.turtlemessenger.model.ChatRoom;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
 
 public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
+    // Atomic create-if-missing: concurrent first sends to a new room can't race each other
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT OR IGNORE INTO chat_rooms (id, name, created_at) VALUES (:id, :name, :createdAt)", nativeQuery = true)
+    int insertIfAbsent(@Param("id") Long id, @Param("name") String name, @Param("createdAt") Instant createdAt);
 }
-
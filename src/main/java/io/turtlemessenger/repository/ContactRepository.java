@@ -4,6 +4,9 @@ import io.turtlemessenger.model.ContactRelation;
 import io.turtlemessenger.model.ContactStatus;
 import io.turtlemessenger.model.UserAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,4 +17,12 @@ public interface ContactRepository extends JpaRepository<ContactRelation, Long>
 
     List<ContactRelation> findByUserAndStatus(UserAccount user, ContactStatus status);
     List<ContactRelation> findByContactAndStatus(UserAccount contact, ContactStatus status);
+
+    @Modifying
+    @Query("update ContactRelation c set c.status = :status where c.user.id = :userId and c.contact.id = :contactId")
+    int updateStatus(@Param("userId") Long userId, @Param("contactId") Long contactId, @Param("status") ContactStatus status);
+
+    @Modifying
+    @Query("delete from ContactRelation c where (c.user.id = :a and c.contact.id = :b) or (c.user.id = :b and c.contact.id = :a)")
+    int deletePair(@Param("a") Long a, @Param("b") Long b);
 }
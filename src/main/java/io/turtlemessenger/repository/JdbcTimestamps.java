@@ -0,0 +1,28 @@
+package io.turtlemessenger.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Binds and reads {@link Instant} columns the same way Hibernate does for the entities,
+ * so rows written through plain JDBC stay comparable with rows written through JPA.
+ */
+public final class JdbcTimestamps {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private JdbcTimestamps() {}
+
+    public static void bind(PreparedStatement ps, int index, Instant instant) throws SQLException {
+        ps.setTimestamp(index, Timestamp.from(instant), Calendar.getInstance(UTC));
+    }
+
+    public static Instant read(ResultSet rs, String column) throws SQLException {
+        Timestamp ts = rs.getTimestamp(column, Calendar.getInstance(UTC));
+        return ts != null ? ts.toInstant() : null;
+    }
+}
@@ -0,0 +1,392 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.MessageDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.sqlite.SQLiteConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Cold storage for chat messages: one SQLite file per month of {@code created_at} under
+ * {@code tm.archive.dir}, with the columns of the messages table.
+ *
+ * Moves run on the main database connection with the month file ATTACHed for one chunk at a time.
+ * Reads open the month files read-only on their own connections and never take a pool connection.
+ * Which months hold which rooms, and their id range, is kept in {@code message_archive_segments}
+ * and mirrored in memory, so a read only opens the files it needs.
+ */
+@Repository
+public class MessageArchive {
+    public record Segment(String bucket, long roomId, long minId, long maxId, Instant maxCreatedAt, long rows) {}
+
+    /** A hot row picked for archiving. */
+    public record Candidate(long id, Instant createdAt) {}
+
+    private record Pruned(int deleted, Segment remaining) {}
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchive.class);
+    private static final DateTimeFormatter BUCKET = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+    private static final String ALIAS = "tm_archive";
+    private static final String COLUMNS = "id, room_id, sender_user_id, sender_username, text, created_at";
+    private static final int INCREMENTAL = 2;
+
+    private final JdbcTemplate jdbc;
+    private final Path dir;
+    // roomId -> bucket -> segment; only the archiver thread writes
+    private final ConcurrentHashMap<Long, NavigableMap<String, Segment>> segments = new ConcurrentHashMap<>();
+
+    public MessageArchive(JdbcTemplate jdbc, @Value("${tm.archive.dir:archive}") String dir) {
+        this.jdbc = jdbc;
+        this.dir = Path.of(dir);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS message_archive_segments (bucket TEXT NOT NULL, room_id INTEGER NOT NULL, "
+                + "min_id INTEGER NOT NULL, max_id INTEGER NOT NULL, max_created_at TIMESTAMP NOT NULL, "
+                + "row_count INTEGER NOT NULL, PRIMARY KEY (room_id, bucket))");
+        jdbc.query("SELECT bucket, room_id, min_id, max_id, max_created_at, row_count FROM message_archive_segments", rs -> {
+            put(new Segment(rs.getString("bucket"), rs.getLong("room_id"), rs.getLong("min_id"), rs.getLong("max_id"),
+                    JdbcTimestamps.read(rs, "max_created_at"), rs.getLong("row_count")));
+        });
+    }
+
+    /** Highest archived message id of the room, 0 if nothing is archived. */
+    public long maxArchivedId(long roomId) {
+        NavigableMap<String, Segment> room = segments.get(roomId);
+        if (room == null) return 0;
+        long max = 0;
+        for (Segment s : room.values()) max = Math.max(max, s.maxId());
+        return max;
+    }
+
+    /** Newest archived {@code created_at} of the room, null if nothing is archived. */
+    public Instant maxArchivedCreatedAt(long roomId) {
+        NavigableMap<String, Segment> room = segments.get(roomId);
+        return room == null || room.isEmpty() ? null : room.lastEntry().getValue().maxCreatedAt();
+    }
+
+    /** Up to {@code limit} archived messages of the room with id below {@code beforeId}, newest first. */
+    public List<MessageDTO> before(long roomId, long beforeId, int limit) {
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment s : roomSegments(roomId)) if (s.minId() < beforeId) candidates.add(s);
+        candidates.sort(Comparator.comparingLong(Segment::maxId).reversed());
+        List<MessageDTO> out = new ArrayList<>();
+        for (Segment s : candidates) {
+            // months can overlap in id when clients send skewed timestamps, so stop only once nothing newer can follow
+            if (out.size() >= limit && s.maxId() < out.get(limit - 1).getId()) break;
+            out.addAll(query(s.bucket(), "SELECT " + COLUMNS + " FROM messages WHERE room_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                    ps -> { ps.setLong(1, roomId); ps.setLong(2, beforeId); ps.setInt(3, limit); }));
+            out.sort(Comparator.comparing(MessageDTO::getId).reversed());
+            if (out.size() > limit) out.subList(limit, out.size()).clear();
+        }
+        return out;
+    }
+
+    /** Up to {@code limit} archived messages of the room with id above {@code afterId}, oldest first. */
+    public List<MessageDTO> after(long roomId, long afterId, int limit) {
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment s : roomSegments(roomId)) if (s.maxId() > afterId) candidates.add(s);
+        candidates.sort(Comparator.comparingLong(Segment::minId));
+        List<MessageDTO> out = new ArrayList<>();
+        for (Segment s : candidates) {
+            if (out.size() >= limit && s.minId() > out.get(limit - 1).getId()) break;
+            out.addAll(query(s.bucket(), "SELECT " + COLUMNS + " FROM messages WHERE room_id = ? AND id > ? ORDER BY id ASC LIMIT ?",
+                    ps -> { ps.setLong(1, roomId); ps.setLong(2, afterId); ps.setInt(3, limit); }));
+            out.sort(Comparator.comparing(MessageDTO::getId));
+            if (out.size() > limit) out.subList(limit, out.size()).clear();
+        }
+        return out;
+    }
+
+    /** Up to {@code limit} archived messages of the room created before {@code before}, newest first. */
+    public List<MessageDTO> beforeCreatedAt(long roomId, Instant before, int limit) {
+        String last = BUCKET.format(before);
+        List<MessageDTO> out = new ArrayList<>();
+        // months are disjoint in created_at, so walking them newest first can stop as soon as the page is full
+        for (Segment s : segments.getOrDefault(roomId, new ConcurrentSkipListMap<>()).headMap(last, true).descendingMap().values()) {
+            if (out.size() >= limit) break;
+            int remaining = limit - out.size();
+            out.addAll(query(s.bucket(), "SELECT " + COLUMNS + " FROM messages WHERE room_id = ? AND created_at < ? ORDER BY created_at DESC LIMIT ?",
+                    ps -> { ps.setLong(1, roomId); JdbcTimestamps.bind(ps, 2, before); ps.setInt(3, remaining); }));
+        }
+        return out;
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    private List<MessageDTO> query(String bucket, String sql, Binder binder) {
+        Path file = file(bucket);
+        if (!Files.exists(file)) {
+            log.warn("Archive file {} is missing", file);
+            return List.of();
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(5_000);
+        try (Connection con = config.createConnection("jdbc:sqlite:" + file);
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            binder.bind(ps);
+            List<MessageDTO> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new MessageDTO(rs.getLong("id"), rs.getLong("room_id"), rs.getString("sender_username"),
+                            rs.getString("text"), JdbcTimestamps.read(rs, "created_at")));
+                }
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Failed to read archive " + file, e);
+        }
+    }
+
+    public List<Long> roomIds() {
+        return jdbc.queryForList("SELECT id FROM chat_rooms ORDER BY id", Long.class);
+    }
+
+    /** The oldest hot rows of the room created before {@code cutoff}. */
+    public List<Candidate> hotRowsBefore(long roomId, Instant cutoff, int limit) {
+        return jdbc.query("SELECT id, created_at FROM messages WHERE room_id = ? AND created_at < ? ORDER BY created_at LIMIT ?",
+                ps -> { ps.setLong(1, roomId); JdbcTimestamps.bind(ps, 2, cutoff); ps.setInt(3, limit); },
+                (rs, i) -> new Candidate(rs.getLong("id"), JdbcTimestamps.read(rs, "created_at")));
+    }
+
+    /** Deletes up to {@code limit} hot rows of the room created before {@code cutoff}. */
+    public int deleteHotBefore(long roomId, Instant cutoff, int limit) {
+        return jdbc.update("DELETE FROM messages WHERE id IN (SELECT id FROM messages WHERE room_id = ? AND created_at < ? LIMIT ?)",
+                ps -> { ps.setLong(1, roomId); JdbcTimestamps.bind(ps, 2, cutoff); ps.setInt(3, limit); });
+    }
+
+    /** Whether freed pages of the main database can be given back with incremental_vacuum. */
+    public boolean incrementalVacuumEnabled() {
+        Integer mode = jdbc.queryForObject("PRAGMA auto_vacuum", Integer.class);
+        return mode != null && mode == INCREMENTAL;
+    }
+
+    public void vacuumMain(int pages) {
+        jdbc.execute("PRAGMA incremental_vacuum(" + pages + ")");
+    }
+
+    /**
+     * Moves the given rows of one room into their month files and deletes them from the messages
+     * table. The copy into each file commits first; the segment bookkeeping and the delete then
+     * commit together, so a crash in between leaves duplicates that the next run skips, never a gap.
+     */
+    public void move(long roomId, List<Candidate> rows) {
+        if (rows.isEmpty()) return;
+        Map<String, List<Candidate>> byBucket = new LinkedHashMap<>();
+        for (Candidate c : rows) byBucket.computeIfAbsent(BUCKET.format(c.createdAt()), k -> new ArrayList<>()).add(c);
+        createDirectory();
+        List<Segment> updated = jdbc.execute((ConnectionCallback<List<Segment>>) con -> {
+            List<Segment> result = new ArrayList<>();
+            for (Map.Entry<String, List<Candidate>> e : byBucket.entrySet()) {
+                String bucket = e.getKey();
+                List<Candidate> chunk = e.getValue();
+                int inserted = withAttached(con, bucket, () -> inTransaction(con, () -> {
+                    try (PreparedStatement ps = con.prepareStatement("INSERT OR IGNORE INTO " + ALIAS + ".messages (" + COLUMNS
+                            + ") SELECT " + COLUMNS + " FROM main.messages WHERE id IN (" + placeholders(chunk.size()) + ")")) {
+                        for (int i = 0; i < chunk.size(); i++) ps.setLong(i + 1, chunk.get(i).id());
+                        return ps.executeUpdate();
+                    }
+                }));
+                result.add(merge(segment(roomId, bucket), bucket, roomId, chunk, inserted));
+            }
+            inTransaction(con, () -> {
+                for (Segment s : result) save(con, s);
+                try (PreparedStatement ps = con.prepareStatement("DELETE FROM messages WHERE id IN (" + placeholders(rows.size()) + ")")) {
+                    for (int i = 0; i < rows.size(); i++) ps.setLong(i + 1, rows.get(i).id());
+                    return ps.executeUpdate();
+                }
+            });
+            return result;
+        });
+        if (updated != null) updated.forEach(this::put);
+    }
+
+    /**
+     * Deletes up to {@code limit} archived rows of the room created before {@code cutoff} from one
+     * month file. Returns the number deleted; the file is removed once no room has rows left in it.
+     */
+    public int deleteArchivedBefore(long roomId, String bucket, Instant cutoff, int limit, int vacuumPages) {
+        Segment current = segment(roomId, bucket);
+        if (current == null) return 0;
+        Pruned outcome = jdbc.execute((ConnectionCallback<Pruned>) con -> withAttached(con, bucket, () -> {
+            int deleted;
+            try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + ALIAS + ".messages WHERE id IN (SELECT id FROM "
+                    + ALIAS + ".messages WHERE room_id = ? AND created_at < ? LIMIT ?)")) {
+                ps.setLong(1, roomId);
+                JdbcTimestamps.bind(ps, 2, cutoff);
+                ps.setInt(3, limit);
+                deleted = ps.executeUpdate();
+            }
+            try (Statement st = con.createStatement()) {
+                st.execute("PRAGMA " + ALIAS + ".incremental_vacuum(" + vacuumPages + ")");
+            }
+            Segment next = null;
+            try (PreparedStatement ps = con.prepareStatement("SELECT min(id) AS min_id, max(id) AS max_id, max(created_at) AS max_created_at, "
+                    + "count(*) AS row_count FROM " + ALIAS + ".messages WHERE room_id = ?")) {
+                ps.setLong(1, roomId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && rs.getLong("row_count") > 0) {
+                        next = new Segment(bucket, roomId, rs.getLong("min_id"), rs.getLong("max_id"),
+                                JdbcTimestamps.read(rs, "max_created_at"), rs.getLong("row_count"));
+                    }
+                }
+            }
+            if (next != null) save(con, next);
+            else remove(con, roomId, bucket);
+            return new Pruned(deleted, next);
+        }));
+        if (outcome == null) return 0;
+        Segment next = outcome.remaining();
+        if (next != null) {
+            put(next);
+        } else {
+            NavigableMap<String, Segment> room = segments.get(roomId);
+            if (room != null) room.remove(bucket);
+            if (segments.values().stream().noneMatch(m -> m.containsKey(bucket))) deleteFile(bucket);
+        }
+        return outcome.deleted();
+    }
+
+    /** Months of the room whose rows may be older than {@code cutoff}. */
+    public List<String> bucketsUpTo(long roomId, Instant cutoff) {
+        NavigableMap<String, Segment> room = segments.get(roomId);
+        return room == null ? List.of() : new ArrayList<>(room.headMap(BUCKET.format(cutoff), true).keySet());
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> T withAttached(Connection con, String bucket, SqlWork<T> work) throws SQLException {
+        try (PreparedStatement attach = con.prepareStatement("ATTACH DATABASE ? AS " + ALIAS)) {
+            attach.setString(1, file(bucket).toString());
+            attach.execute();
+        }
+        try {
+            try (Statement st = con.createStatement()) {
+                // only takes effect while the file is still empty; keeps later retention deletes cheap
+                st.execute("PRAGMA " + ALIAS + ".auto_vacuum = INCREMENTAL");
+                st.execute("CREATE TABLE IF NOT EXISTS " + ALIAS + ".messages (id INTEGER PRIMARY KEY, room_id INTEGER NOT NULL, "
+                        + "sender_user_id INTEGER, sender_username TEXT NOT NULL, text TEXT NOT NULL, created_at TIMESTAMP NOT NULL)");
+                st.execute("CREATE INDEX IF NOT EXISTS " + ALIAS + ".idx_archive_room_id ON messages (room_id, id)");
+                st.execute("CREATE INDEX IF NOT EXISTS " + ALIAS + ".idx_archive_room_created ON messages (room_id, created_at)");
+            }
+            return work.run();
+        } finally {
+            try (Statement st = con.createStatement()) {
+                st.execute("DETACH DATABASE " + ALIAS);
+            }
+        }
+    }
+
+    private static <T> T inTransaction(Connection con, SqlWork<T> work) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            T result = work.run();
+            con.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static Segment merge(Segment current, String bucket, long roomId, List<Candidate> rows, int inserted) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        Instant newest = Instant.MIN;
+        for (Candidate c : rows) {
+            min = Math.min(min, c.id());
+            max = Math.max(max, c.id());
+            if (c.createdAt().isAfter(newest)) newest = c.createdAt();
+        }
+        if (current == null) return new Segment(bucket, roomId, min, max, newest, inserted);
+        return new Segment(bucket, roomId, Math.min(min, current.minId()), Math.max(max, current.maxId()),
+                newest.isAfter(current.maxCreatedAt()) ? newest : current.maxCreatedAt(), current.rows() + inserted);
+    }
+
+    private static void save(Connection con, Segment s) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT OR REPLACE INTO message_archive_segments "
+                + "(bucket, room_id, min_id, max_id, max_created_at, row_count) VALUES (?, ?, ?, ?, ?, ?)")) {
+            ps.setString(1, s.bucket());
+            ps.setLong(2, s.roomId());
+            ps.setLong(3, s.minId());
+            ps.setLong(4, s.maxId());
+            JdbcTimestamps.bind(ps, 5, s.maxCreatedAt());
+            ps.setLong(6, s.rows());
+            ps.executeUpdate();
+        }
+    }
+
+    private static void remove(Connection con, long roomId, String bucket) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM message_archive_segments WHERE room_id = ? AND bucket = ?")) {
+            ps.setLong(1, roomId);
+            ps.setString(2, bucket);
+            ps.executeUpdate();
+        }
+    }
+
+    private void put(Segment s) {
+        segments.computeIfAbsent(s.roomId(), k -> new ConcurrentSkipListMap<>()).put(s.bucket(), s);
+    }
+
+    private Segment segment(long roomId, String bucket) {
+        NavigableMap<String, Segment> room = segments.get(roomId);
+        return room == null ? null : room.get(bucket);
+    }
+
+    private List<Segment> roomSegments(long roomId) {
+        NavigableMap<String, Segment> room = segments.get(roomId);
+        return room == null ? List.of() : new ArrayList<>(room.values());
+    }
+
+    private Path file(String bucket) {
+        return dir.resolve("messages-" + bucket + ".db");
+    }
+
+    private void createDirectory() {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Cannot create archive directory " + dir, e);
+        }
+    }
+
+    private void deleteFile(String bucket) {
+        try {
+            Files.deleteIfExists(file(bucket));
+        } catch (IOException e) {
+            log.warn("Could not delete empty archive file {}: {}", file(bucket), e.getMessage());
+        }
+    }
+
+    private static String placeholders(int n) {
+        return "?" + ", ?".repeat(n - 1);
+    }
+}
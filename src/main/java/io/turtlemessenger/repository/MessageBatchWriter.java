@@ -0,0 +1,82 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.model.PendingMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes chat messages with multi-row JDBC inserts, one transaction per batch.
+ * JPA cannot batch IDENTITY inserts, so the write-behind and bulk import paths go straight to the table.
+ */
+@Repository
+public class MessageBatchWriter {
+    // 7 bind parameters per row keeps a full statement well below SQLite's variable limit
+    private static final int MAX_ROWS_PER_STATEMENT = 128;
+    private static final String FULL_CHUNK_SQL = insertSql(MAX_ROWS_PER_STATEMENT);
+
+    private final JdbcTemplate jdbc;
+    private final MessageSequences sequences;
+
+    public MessageBatchWriter(JdbcTemplate jdbc, MessageSequences sequences) {
+        this.jdbc = jdbc;
+        this.sequences = sequences;
+    }
+
+    /**
+     * Inserts the batch in order and returns the generated message ids, index-aligned with the input.
+     * Rooms must already exist; senders missing from {@code senderIds} are stored without a user id.
+     * Each room's {@code last_seq} is raised to its highest sequence number in the batch.
+     */
+    @Transactional
+    public long[] insert(List<PendingMessage> batch, Map<String, Long> senderIds) {
+        if (batch.isEmpty()) return new long[0];
+        long[] ids = new long[batch.size()];
+        for (int from = 0; from < batch.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<PendingMessage> chunk = batch.subList(from, Math.min(batch.size(), from + MAX_ROWS_PER_STATEMENT));
+            insertChunk(chunk, senderIds);
+            // SQLite hands out consecutive rowids inside a single write transaction
+            Long last = jdbc.queryForObject("SELECT last_insert_rowid()", Long.class);
+            long first = (last == null ? 0L : last) - chunk.size() + 1;
+            for (int i = 0; i < chunk.size(); i++) ids[from + i] = first + i;
+        }
+        Map<Long, Long> lastSeqs = new HashMap<>();
+        for (PendingMessage m : batch) {
+            if (m.seq() > 0) lastSeqs.merge(m.roomId(), m.seq(), Math::max);
+        }
+        lastSeqs.forEach(sequences::advance);
+        return ids;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO messages (room_id, sender_user_id, sender_username, text, content, created_at, seq) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private void insertChunk(List<PendingMessage> chunk, Map<String, Long> senderIds) {
+        // bulk imports are almost all full chunks, which reuse one statement text
+        String sql = chunk.size() == MAX_ROWS_PER_STATEMENT ? FULL_CHUNK_SQL : insertSql(chunk.size());
+        jdbc.update(sql, ps -> {
+            int p = 1;
+            for (PendingMessage m : chunk) {
+                ps.setLong(p++, m.roomId());
+                Long senderId = senderIds.get(m.senderUsername());
+                if (senderId != null) ps.setLong(p++, senderId); else ps.setNull(p++, java.sql.Types.BIGINT);
+                ps.setString(p++, m.senderUsername());
+                ps.setString(p++, m.content());
+                // legacy 'content' column mirrors 'text', see Message#syncLegacyColumns
+                ps.setString(p++, m.content());
+                JdbcTimestamps.bind(ps, p++, m.createdAt());
+                if (m.seq() > 0) ps.setLong(p++, m.seq()); else ps.setNull(p++, java.sql.Types.BIGINT);
+            }
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.MessageDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+/**
+ * Reads a room's messages through one forward-only, read-only JDBC cursor, for exports. Rows
+ * are handed on as they are stepped, so memory stays flat however large the room is.
+ *
+ * The cursor's read transaction stays open until the scan ends, which with a slow consumer can
+ * be a while. Under WAL that doesn't block writers, but checkpoints can't recycle the log past
+ * it, so exports are capped by {@code tm.export.max-concurrent}.
+ */
+@Repository
+public class MessageCursor {
+    private final JdbcTemplate jdbc;
+    private final int fetchSize;
+
+    public MessageCursor(JdbcTemplate jdbc, @Value("${tm.export.fetch-size:1000}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    /** Hands every message of the room with an id above {@code afterId} to {@code sink}, in id order. */
+    @Transactional(readOnly = true)
+    public void scan(long roomId, long afterId, Consumer<MessageDTO> sink) {
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT id, room_id, sender_username, text, created_at, seq FROM messages WHERE room_id = ? AND id > ? ORDER BY id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, roomId);
+            ps.setLong(2, afterId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            // rows from before per-room numbering have no seq; the driver can't read a NULL as a Long
+            long seq = rs.getLong("seq");
+            Long seqOrNull = rs.wasNull() ? null : seq;
+            sink.accept(new MessageDTO(rs.getLong("id"), rs.getLong("room_id"), rs.getString("sender_username"),
+                    rs.getString("text"), JdbcTimestamps.read(rs, "created_at"), seqOrNull));
+        });
+    }
+}
@@ -0,0 +1,532 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.MessageDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of one room's messages: memory-mapped segment files named after the first
+ * message id they hold. A record is {@code [int length][int crc32c]} followed by the body
+ * {@code [long id][long seq][long createdAt][unsigned short senderLength][sender][content]},
+ * strings in UTF-8. Ids only grow, so a segment covers a fixed id range. Sequence numbers mostly
+ * grow with them, but not strictly: a message sent through the write-behind queue can land after
+ * a later-numbered one that was saved directly.
+ *
+ * Each segment keeps a sparse index, one (id, position, highest seq before it) entry every
+ * {@code index-interval} bytes.
+ * Sealed segments write it next to the data as {@code .idx}, so opening a log only scans the
+ * last segment. That scan stops at the first record whose header or CRC does not check out and
+ * seals the segment there; the next append starts a new one, so nothing is ever written behind a
+ * torn tail and whatever a crash left after it is never read.
+ *
+ * Segments are mapped when first read or written, through {@link OpenSegments}, which bounds how
+ * many stay mapped across all logs. No file stays open.
+ *
+ * Appends must be serialized by the caller. Reads take no lock: a record is visible once the
+ * segment's {@code end} covers it, and they decode straight from the mapping.
+ */
+public final class MessageLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MessageLog.class);
+    private static final int HEADER = 8;
+    // id, seq, createdAt, sender length
+    private static final int FIXED = 26;
+    private static final String DATA = ".log";
+    private static final String INDEX = ".idx";
+    // .idx: end, last id, max seq, entry count; then (id, position, seq before) per entry; then a crc
+    private static final int IDX_HEADER = 24;
+    private static final int IDX_ENTRY = 20;
+
+    private final long roomId;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final OpenSegments open;
+    // ascending by base id; replaced, never modified, when a segment is added
+    private volatile List<Segment> segments;
+    private volatile boolean dirty;
+
+    private MessageLog(long roomId, Path dir, int segmentBytes, int indexInterval, OpenSegments open) {
+        this.roomId = roomId;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.open = open;
+    }
+
+    /** Opens or creates the log in {@code dir}, recovering the last segment. */
+    public static MessageLog open(long roomId, Path dir, int segmentBytes, int indexInterval, OpenSegments open) throws IOException {
+        Files.createDirectories(dir);
+        MessageLog room = new MessageLog(roomId, dir, segmentBytes, indexInterval, open);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(DATA))
+                    .sorted()
+                    .toList();
+        }
+        List<Segment> opened = new ArrayList<>(files.size());
+        long previous = 0;
+        long previousSeq = 0;
+        for (int i = 0; i < files.size(); i++) {
+            boolean last = i == files.size() - 1;
+            Segment s = room.openSegment(files.get(i), previous, previousSeq, last);
+            if (last && s.end == 0) {
+                // created but never written to; the next append starts a segment under the same name
+                Files.delete(s.path);
+                Files.deleteIfExists(indexPath(s.path));
+                break;
+            }
+            opened.add(s);
+            previous = s.lastId;
+            previousSeq = s.maxSeq;
+        }
+        room.segments = List.copyOf(opened);
+        return room;
+    }
+
+    public long roomId() {
+        return roomId;
+    }
+
+    /** Highest id in the log, 0 if it is empty. */
+    public long lastId() {
+        List<Segment> current = segments;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (current.get(i).lastId > 0) return current.get(i).lastId;
+        }
+        return 0;
+    }
+
+    /** Highest sequence number in the log, 0 if none. */
+    public long lastSeq() {
+        Segment s = active();
+        return s == null ? 0 : s.maxSeq;
+    }
+
+    /** Appends one message. {@code id} must be above every id already in the log. */
+    public void append(long id, long seq, long createdAt, String sender, String content) throws IOException {
+        byte[] from = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        if (from.length > 0xFFFF) throw new IllegalArgumentException("sender name too long");
+        if (id <= lastId()) throw new IllegalArgumentException("id " + id + " is not above " + lastId());
+        int length = FIXED + from.length + text.length;
+        Segment s = active();
+        if (s == null || !s.writable || s.end + HEADER + length > s.capacity) {
+            s = roll(id, HEADER + length, s == null ? 0 : s.maxSeq);
+        }
+        MappedByteBuffer buf = open.buffer(s);
+        int pos = s.end;
+        int body = pos + HEADER;
+        buf.putLong(body, id);
+        buf.putLong(body + 8, seq);
+        buf.putLong(body + 16, createdAt);
+        buf.putShort(body + 24, (short) from.length);
+        buf.put(body + FIXED, from);
+        buf.put(body + FIXED + from.length, text);
+        buf.putInt(pos + 4, crc(buf, body, length));
+        buf.putInt(pos, length);
+        if (s.index.size == 0 || pos - s.index.positions[s.index.size - 1] >= indexInterval) {
+            s.index = s.index.add(id, pos, s.maxSeq);
+        }
+        s.lastId = id;
+        s.maxSeq = Math.max(s.maxSeq, seq);
+        // publishes the record to readers
+        s.end = pos + HEADER + length;
+        dirty = true;
+    }
+
+    /** Writes appended records through to the disk. */
+    public void force() {
+        if (!dirty) return;
+        dirty = false;
+        Segment s = active();
+        // mapped again if it was evicted meanwhile: syncing any mapping of the file covers the writes
+        if (s != null && s.writable) open.buffer(s).force();
+    }
+
+    /** Up to {@code limit} messages with an id below {@code beforeId}, newest first. */
+    public List<MessageDTO> before(long beforeId, int limit) {
+        return backwards(beforeId, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Up to {@code limit} messages created before {@code createdAt}, newest first. Walks the log
+     * by id, so it follows id order where client timestamps disagree with it.
+     */
+    public List<MessageDTO> beforeCreatedAt(long createdAt, int limit) {
+        return backwards(Long.MAX_VALUE, createdAt, limit);
+    }
+
+    /** Up to {@code limit} messages with an id above {@code afterId}, oldest first. */
+    public List<MessageDTO> after(long afterId, int limit) {
+        List<MessageDTO> out = new ArrayList<>(Math.min(limit, 256));
+        List<Segment> current = segments;
+        for (int i = 0; i < current.size() && out.size() < limit; i++) {
+            // everything in this segment is below the next one's base id
+            if (i + 1 < current.size() && current.get(i + 1).baseId <= afterId + 1) continue;
+            Segment s = current.get(i);
+            int end = s.end;
+            if (end == 0) continue;
+            Index index = s.index;
+            MappedByteBuffer buf = open.buffer(s);
+            int k = index.floor(afterId);
+            int pos = k < 0 ? 0 : index.positions[k];
+            while (pos < end && out.size() < limit) {
+                int length = buf.getInt(pos);
+                if (buf.getLong(pos + HEADER) > afterId) out.add(decode(buf, pos, length));
+                pos += HEADER + length;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Up to {@code limit} messages with a sequence number above {@code afterSeq}, in sequence
+     * order. Starts at the last index entry with nothing above {@code afterSeq} before it and
+     * walks forward, so a message stored out of sequence order just past a full page can be
+     * missing from it; the next page starts below it and picks it up.
+     */
+    public List<MessageDTO> afterSeq(long afterSeq, int limit) {
+        List<MessageDTO> out = new ArrayList<>(Math.min(limit, 256));
+        List<Segment> current = segments;
+        for (int i = 0; i < current.size() && out.size() < limit; i++) {
+            // the next segment starts with nothing above afterSeq behind it, so neither does this one
+            if (i + 1 < current.size() && current.get(i + 1).index.size > 0 && current.get(i + 1).index.seqs[0] <= afterSeq) continue;
+            Segment s = current.get(i);
+            int end = s.end;
+            if (end == 0) continue;
+            Index index = s.index;
+            MappedByteBuffer buf = open.buffer(s);
+            int k = index.floorSeq(afterSeq);
+            int pos = k < 0 ? 0 : index.positions[k];
+            while (pos < end && out.size() < limit) {
+                int length = buf.getInt(pos);
+                if (buf.getLong(pos + HEADER + 8) > afterSeq) out.add(decode(buf, pos, length));
+                pos += HEADER + length;
+            }
+        }
+        out.sort(Comparator.comparing(MessageDTO::getSeq));
+        return out;
+    }
+
+    private List<MessageDTO> backwards(long beforeId, long beforeTs, int limit) {
+        List<MessageDTO> out = new ArrayList<>(Math.min(limit, 256));
+        List<MessageDTO> chunk = new ArrayList<>();
+        List<Segment> current = segments;
+        for (int i = current.size() - 1; i >= 0 && out.size() < limit; i--) {
+            Segment s = current.get(i);
+            if (s.baseId >= beforeId || s.end == 0) continue;
+            int end = s.end;
+            Index index = s.index;
+            MappedByteBuffer buf = open.buffer(s);
+            // one index interval at a time, from the tail of the segment towards its start
+            for (int k = index.size - 1; k >= 0 && out.size() < limit; k--) {
+                if (index.ids[k] >= beforeId) continue;
+                int pos = index.positions[k];
+                int stop = k + 1 < index.size ? index.positions[k + 1] : end;
+                chunk.clear();
+                while (pos < stop) {
+                    int length = buf.getInt(pos);
+                    long id = buf.getLong(pos + HEADER);
+                    if (id >= beforeId) break;
+                    if (buf.getLong(pos + HEADER + 16) < beforeTs) chunk.add(decode(buf, pos, length));
+                    pos += HEADER + length;
+                }
+                for (int j = chunk.size() - 1; j >= 0 && out.size() < limit; j--) out.add(chunk.get(j));
+            }
+        }
+        return out;
+    }
+
+    private MessageDTO decode(ByteBuffer buf, int pos, int length) {
+        int body = pos + HEADER;
+        int senderLength = buf.getShort(body + 24) & 0xFFFF;
+        long seq = buf.getLong(body + 8);
+        return new MessageDTO(buf.getLong(body), roomId,
+                string(buf, body + FIXED, senderLength),
+                string(buf, body + FIXED + senderLength, length - FIXED - senderLength),
+                buf.getLong(body + 16), seq > 0 ? seq : null);
+    }
+
+    private static String string(ByteBuffer buf, int index, int length) {
+        byte[] bytes = new byte[length];
+        buf.get(index, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Segment active() {
+        List<Segment> current = segments;
+        return current.isEmpty() ? null : current.get(current.size() - 1);
+    }
+
+    private Segment roll(long baseId, int recordBytes, long previousSeq) throws IOException {
+        Segment previous = active();
+        if (previous != null && previous.writable) seal(previous);
+        Path path = dir.resolve(String.format("%020d", baseId) + DATA);
+        try (FileChannel created = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            // mapped on the first append, which grows the file; it stays sparse until written
+        }
+        Segment s = new Segment(baseId, path);
+        s.writable = true;
+        s.capacity = Math.max(segmentBytes, recordBytes);
+        s.maxSeq = previousSeq;
+        List<Segment> next = new ArrayList<>(segments);
+        next.add(s);
+        segments = List.copyOf(next);
+        return s;
+    }
+
+    private void seal(Segment s) throws IOException {
+        if (s.writable) open.buffer(s).force();
+        Index index = s.index;
+        ByteBuffer out = ByteBuffer.allocate(IDX_HEADER + index.size * IDX_ENTRY + 4);
+        out.putInt(s.end).putLong(s.lastId).putLong(s.maxSeq).putInt(index.size);
+        for (int k = 0; k < index.size; k++) out.putLong(index.ids[k]).putInt(index.positions[k]).putLong(index.seqs[k]);
+        out.putInt(crc(out, 0, out.position()));
+        Path tmp = indexPath(s.path).resolveSibling(s.path.getFileName() + ".tmp");
+        Files.write(tmp, out.array());
+        Files.move(tmp, indexPath(s.path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        s.writable = false;
+    }
+
+    /**
+     * Sealed segments with an index are not read at all. The last one, or one whose index is
+     * missing, is scanned up to the first invalid record and sealed there.
+     */
+    private Segment openSegment(Path path, long previousId, long previousSeq, boolean last) throws IOException {
+        String name = path.getFileName().toString();
+        long baseId = Long.parseLong(name.substring(0, name.length() - DATA.length()));
+        Segment s = new Segment(baseId, path);
+        if (!last && loadIndex(s)) return s;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        scan(s, buffer, previousId, previousSeq);
+        if (s.end + 4 <= buffer.capacity() && buffer.getInt(s.end) != 0) {
+            log.warn("Message log {} ends in a torn or corrupt record at byte {}; appends continue in a new segment", path, s.end);
+        }
+        seal(s);
+        return s;
+    }
+
+    private void scan(Segment s, MappedByteBuffer buf, long previousId, long previousSeq) {
+        int pos = 0;
+        long lastId = previousId;
+        long maxSeq = previousSeq;
+        Index index = Index.EMPTY;
+        while (pos + HEADER + FIXED <= buf.capacity()) {
+            int length = buf.getInt(pos);
+            if (length < FIXED || pos + HEADER + length > buf.capacity()) break;
+            if (buf.getInt(pos + 4) != crc(buf, pos + HEADER, length)) break;
+            long id = buf.getLong(pos + HEADER);
+            if (id <= lastId || (buf.getShort(pos + HEADER + 24) & 0xFFFF) > length - FIXED) break;
+            if (index.size == 0 || pos - index.positions[index.size - 1] >= indexInterval) index = index.add(id, pos, maxSeq);
+            lastId = id;
+            maxSeq = Math.max(maxSeq, buf.getLong(pos + HEADER + 8));
+            pos += HEADER + length;
+        }
+        s.index = index;
+        s.lastId = index.size == 0 ? 0 : lastId;
+        s.maxSeq = maxSeq;
+        s.end = pos;
+    }
+
+    private boolean loadIndex(Segment s) throws IOException {
+        Path path = indexPath(s.path);
+        if (!Files.exists(path)) return false;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        int entries = in.capacity() - IDX_HEADER - 4;
+        if (entries < 0 || entries % IDX_ENTRY != 0) return false;
+        if (in.getInt(in.capacity() - 4) != crc(in, 0, in.capacity() - 4)) return false;
+        int end = in.getInt();
+        long lastId = in.getLong();
+        long maxSeq = in.getLong();
+        int size = in.getInt();
+        if (size != entries / IDX_ENTRY || end > Files.size(s.path)) return false;
+        long[] ids = new long[size];
+        int[] positions = new int[size];
+        long[] seqs = new long[size];
+        for (int k = 0; k < size; k++) {
+            ids[k] = in.getLong();
+            positions[k] = in.getInt();
+            seqs[k] = in.getLong();
+        }
+        s.index = new Index(ids, positions, seqs, size);
+        s.lastId = lastId;
+        s.maxSeq = maxSeq;
+        s.end = end;
+        return true;
+    }
+
+    private static Path indexPath(Path data) {
+        String name = data.getFileName().toString();
+        return data.resolveSibling(name.substring(0, name.length() - DATA.length()) + INDEX);
+    }
+
+    private static int crc(ByteBuffer buf, int from, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf.slice(from, length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dirty = true;
+        force();
+        open.release(segments);
+    }
+
+    private static final class Segment {
+        final long baseId;
+        final Path path;
+        // null while not mapped; see OpenSegments
+        volatile MappedByteBuffer mapped;
+        volatile long used;
+        // the active segment, appended to through a read-write mapping of capacity bytes
+        volatile boolean writable;
+        volatile int capacity;
+        volatile int end;
+        volatile long lastId;
+        // highest seq in this and all earlier segments
+        volatile long maxSeq;
+        volatile Index index = Index.EMPTY;
+
+        Segment(long baseId, Path path) {
+            this.baseId = baseId;
+            this.path = path;
+        }
+
+        MappedByteBuffer map() throws IOException {
+            if (writable) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+
+    /**
+     * The segments currently mapped, shared by all logs of a store. A segment is mapped on first
+     * use and its file closed straight away; past {@code capacity} mappings the least recently used
+     * segment is dropped, after writing it through if it is being appended to. A hit only stamps
+     * the segment, so reads still take no lock. A reader that holds a dropped mapping can finish
+     * with it: the memory is released once nothing refers to it.
+     */
+    public static final class OpenSegments {
+        private final int capacity;
+        private final List<Segment> mapped = new ArrayList<>();
+
+        public OpenSegments(int capacity) {
+            if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+            this.capacity = capacity;
+        }
+
+        public synchronized int size() {
+            return mapped.size();
+        }
+
+        MappedByteBuffer buffer(Segment s) {
+            MappedByteBuffer b = s.mapped;
+            s.used = System.nanoTime();
+            return b != null ? b : map(s);
+        }
+
+        private MappedByteBuffer map(Segment s) {
+            MappedByteBuffer b;
+            MappedByteBuffer evicted = null;
+            synchronized (this) {
+                b = s.mapped;
+                if (b != null) return b;
+                try {
+                    b = s.map();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                s.mapped = b;
+                mapped.add(s);
+                if (mapped.size() > capacity) {
+                    Segment lru = null;
+                    for (Segment m : mapped) if (m != s && (lru == null || m.used < lru.used)) lru = m;
+                    mapped.remove(lru);
+                    if (lru.writable) evicted = lru.mapped;
+                    lru.mapped = null;
+                }
+            }
+            // outside the lock: an fsync should not hold up every other miss
+            if (evicted != null) evicted.force();
+            return b;
+        }
+
+        synchronized void release(List<Segment> segments) {
+            for (Segment s : segments) {
+                if (s.mapped != null && mapped.remove(s)) s.mapped = null;
+            }
+        }
+    }
+
+    /**
+     * Sparse index entries; {@link #add} writes past {@code size} into the shared arrays, which
+     * readers holding an older instance never look at. {@code seqs[k]} is the highest sequence
+     * number stored before {@code positions[k]}, so it never decreases.
+     */
+    private record Index(long[] ids, int[] positions, long[] seqs, int size) {
+        static final Index EMPTY = new Index(new long[16], new int[16], new long[16], 0);
+
+        Index add(long id, int position, long seqBefore) {
+            long[] i = ids;
+            int[] p = positions;
+            long[] q = seqs;
+            if (size == i.length || this == EMPTY) {
+                i = Arrays.copyOf(ids, Math.max(16, size * 2));
+                p = Arrays.copyOf(positions, i.length);
+                q = Arrays.copyOf(seqs, i.length);
+            }
+            i[size] = id;
+            p[size] = position;
+            q[size] = seqBefore;
+            return new Index(i, p, q, size + 1);
+        }
+
+        /** Last entry with nothing above {@code seq} before it, -1 if none. */
+        int floorSeq(long seq) {
+            int lo = 0, hi = size - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (seqs[mid] <= seq) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        /** Last entry whose id is at most {@code id}, -1 if none. */
+        int floor(long id) {
+            int k = Arrays.binarySearch(ids, 0, size, id);
+            return k >= 0 ? k : -k - 2;
+        }
+    }
+}
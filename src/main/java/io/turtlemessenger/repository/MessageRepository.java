@@ -1,14 +1,33 @@
 package io.turtlemessenger.repository;
 
+import io.turtlemessenger.dto.MessageDTO;
 import io.turtlemessenger.model.Message;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findByRoom_IdAndCreatedAtLessThanOrderByCreatedAtDesc(Long roomId, Instant before, Pageable pageable);
-    List<Message> findByRoom_IdOrderByCreatedAtDesc(Long roomId, Pageable pageable);
-}
+    // History reads project straight into MessageDTO: one statement per page, no entities in the
+    // persistence context, and m.room.id resolves to the FK column without joining chat_rooms.
+    String DTO_SELECT = "select new io.turtlemessenger.dto.MessageDTO(m.id, m.room.id, m.senderUsername, m.content, m.createdAt, m.seq) from Message m ";
+
+    // Keyset pages on (room_id, id): cost depends on the page size, not on how deep the cursor is
+    @Query(DTO_SELECT + "where m.room.id = :roomId order by m.id desc")
+    List<MessageDTO> findLatestPage(@Param("roomId") Long roomId, Pageable pageable);
+
+    @Query(DTO_SELECT + "where m.room.id = :roomId and m.id < :beforeId order by m.id desc")
+    List<MessageDTO> findPageBefore(@Param("roomId") Long roomId, @Param("beforeId") Long beforeId, Pageable pageable);
 
+    @Query(DTO_SELECT + "where m.room.id = :roomId and m.id > :afterId order by m.id asc")
+    List<MessageDTO> findPageAfter(@Param("roomId") Long roomId, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query(DTO_SELECT + "where m.room.id = :roomId and m.seq > :afterSeq order by m.seq asc")
+    List<MessageDTO> findPageAfterSeq(@Param("roomId") Long roomId, @Param("afterSeq") Long afterSeq, Pageable pageable);
+
+    @Query(DTO_SELECT + "where m.room.id = :roomId and m.createdAt < :before order by m.createdAt desc")
+    List<MessageDTO> findPageBeforeCreatedAt(@Param("roomId") Long roomId, @Param("before") Instant before, Pageable pageable);
+}
@@ -0,0 +1,110 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.SearchHitDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * FTS5 index over {@code messages.text}. {@code messages_fts} is an external-content table, so
+ * it stores only the index and reads text back from the messages table for snippets.
+ *
+ * Triggers on the messages table keep it current inside the inserting, updating or deleting
+ * transaction, whichever path wrote the row. Rows that existed when the triggers were installed
+ * (ids up to {@code boundary}) are indexed afterwards by {@link #backfill}, in id order, and
+ * {@code built_up_to} says how far that got. A row is in the index exactly when its id is above
+ * {@code boundary} or at most {@code built_up_to}; the triggers only touch such rows, since
+ * FTS5 corrupts its statistics when asked to delete a row it never indexed.
+ */
+@Repository
+public class MessageSearchIndex {
+    public record Progress(long boundary, long builtUpTo) {
+        public boolean complete() {
+            return builtUpTo >= boundary;
+        }
+    }
+
+    // snippet markers; a stray one typed into a message only costs an extra <mark> tag
+    private static final String OPEN = "\u0001";
+    private static final String CLOSE = "\u0002";
+    private static final String INDEXED =
+            "EXISTS (SELECT 1 FROM message_search_state s WHERE %1$s.id > s.boundary OR %1$s.id <= s.built_up_to)";
+
+    private final JdbcTemplate jdbc;
+
+    public MessageSearchIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Creates the index and its triggers if missing. The trigger install and the boundary are one
+     * transaction, so no row can be both indexed by a trigger and picked up by the backfill.
+     */
+    @Transactional
+    public Progress install() {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS message_search_state (boundary INTEGER NOT NULL, built_up_to INTEGER NOT NULL)");
+        jdbc.execute("CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(text, room_id, "
+                + "content = 'messages', content_rowid = 'id', tokenize = 'unicode61 remove_diacritics 2')");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages WHEN " + INDEXED.formatted("new")
+                + " BEGIN INSERT INTO messages_fts (rowid, text, room_id) VALUES (new.id, new.text, new.room_id); END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_delete AFTER DELETE ON messages WHEN " + INDEXED.formatted("old")
+                + " BEGIN INSERT INTO messages_fts (messages_fts, rowid, text, room_id) VALUES ('delete', old.id, old.text, old.room_id); END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_update AFTER UPDATE OF text, room_id ON messages WHEN " + INDEXED.formatted("old")
+                + " BEGIN INSERT INTO messages_fts (messages_fts, rowid, text, room_id) VALUES ('delete', old.id, old.text, old.room_id);"
+                + " INSERT INTO messages_fts (rowid, text, room_id) VALUES (new.id, new.text, new.room_id); END");
+        Integer rows = jdbc.queryForObject("SELECT count(*) FROM message_search_state", Integer.class);
+        if (rows == null || rows == 0) {
+            jdbc.update("INSERT INTO message_search_state (boundary, built_up_to) SELECT coalesce(max(id), 0), 0 FROM messages");
+        }
+        return progress();
+    }
+
+    public Progress progress() {
+        return jdbc.queryForObject("SELECT boundary, built_up_to FROM message_search_state",
+                (rs, i) -> new Progress(rs.getLong("boundary"), rs.getLong("built_up_to")));
+    }
+
+    /**
+     * Indexes the next {@code chunk} pre-existing rows in one transaction. The rows are copied
+     * inside SQLite and never loaded into the JVM. Returns the new progress.
+     */
+    @Transactional
+    public Progress backfill(int chunk) {
+        Progress p = progress();
+        if (p.complete()) return p;
+        Long upTo = jdbc.queryForObject("SELECT max(id) FROM (SELECT id FROM messages WHERE id > ? AND id <= ? ORDER BY id LIMIT ?)",
+                Long.class, p.builtUpTo(), p.boundary(), chunk);
+        long next = upTo == null ? p.boundary() : upTo;
+        jdbc.update("INSERT INTO messages_fts (rowid, text, room_id) SELECT id, text, room_id FROM messages WHERE id > ? AND id <= ?",
+                p.builtUpTo(), next);
+        jdbc.update("UPDATE message_search_state SET built_up_to = ?", next);
+        return new Progress(p.boundary(), next);
+    }
+
+    /** Merges the index's b-tree segments; worth doing once after a large backfill. */
+    @Transactional
+    public void optimize() {
+        jdbc.update("INSERT INTO messages_fts (messages_fts) VALUES ('optimize')");
+    }
+
+    /** Hits for an FTS5 query within one room, best bm25 rank first. */
+    @Transactional(readOnly = true)
+    public List<SearchHitDTO> search(long roomId, String match, int limit, int offset) {
+        return jdbc.query("SELECT m.id, m.room_id, m.sender_username, m.text, m.created_at, "
+                        + "snippet(messages_fts, 0, char(1), char(2), '…', 16) AS snippet "
+                        + "FROM messages_fts JOIN messages m ON m.id = messages_fts.rowid "
+                        + "WHERE messages_fts MATCH ? ORDER BY rank LIMIT ? OFFSET ?",
+                (rs, i) -> new SearchHitDTO(rs.getLong("id"), rs.getLong("room_id"), rs.getString("sender_username"),
+                        rs.getString("text"), JdbcTimestamps.read(rs, "created_at").toEpochMilli(), highlight(rs.getString("snippet"))),
+                "room_id : \"" + roomId + "\" AND text : (" + match + ")", limit, offset);
+    }
+
+    /** HTML-escapes the snippet, then turns the match markers into {@code <mark>} tags. */
+    private static String highlight(String snippet) {
+        if (snippet == null) return null;
+        return snippet.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")
+                .replace(OPEN, "<mark>").replace(CLOSE, "</mark>");
+    }
+}
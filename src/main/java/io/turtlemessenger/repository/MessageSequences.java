@@ -0,0 +1,52 @@
+package io.turtlemessenger.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Durable side of the per-room message sequence. {@code chat_rooms.last_seq} is raised in the
+ * transaction that inserts the messages, so it survives the rows being archived or deleted.
+ * A room whose {@code last_seq} is still null was never written since sequences were added.
+ */
+@Repository
+public class MessageSequences {
+    private final JdbcTemplate jdbc;
+
+    public MessageSequences(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Highest sequence number of the room in the messages table, 0 if none. */
+    @Transactional(readOnly = true)
+    public long lastSeq(long roomId) {
+        Long last = jdbc.queryForObject("SELECT max(coalesce((SELECT last_seq FROM chat_rooms WHERE id = ?), 0), "
+                + "coalesce((SELECT max(seq) FROM messages WHERE room_id = ?), 0))", Long.class, roomId, roomId);
+        return last == null ? 0 : last;
+    }
+
+    /** Raises the room's {@code last_seq} to {@code seq}; joins the caller's transaction. */
+    public void advance(long roomId, long seq) {
+        jdbc.update("UPDATE chat_rooms SET last_seq = ? WHERE id = ? AND coalesce(last_seq, 0) < ?", seq, roomId, seq);
+    }
+
+    public List<Long> unnumberedRooms() {
+        return jdbc.queryForList("SELECT id FROM chat_rooms WHERE last_seq IS NULL ORDER BY id", Long.class);
+    }
+
+    /**
+     * Numbers the room's messages that have no sequence number in id order, after its highest
+     * one, and records the result. Returns how many were numbered.
+     */
+    @Transactional
+    public int numberRoom(long roomId) {
+        long base = lastSeq(roomId);
+        int numbered = jdbc.update("UPDATE messages SET seq = ? + n.rn FROM (SELECT id, row_number() OVER (ORDER BY id) AS rn "
+                + "FROM messages WHERE room_id = ? AND seq IS NULL) AS n WHERE messages.id = n.id", base, roomId);
+        jdbc.update("UPDATE chat_rooms SET last_seq = max(coalesce(last_seq, 0), "
+                + "coalesce((SELECT max(seq) FROM messages WHERE room_id = ?), 0)) WHERE id = ?", roomId, roomId);
+        return numbered;
+    }
+}
@@ -0,0 +1,7 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.model.RoomRetention;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RoomRetentionRepository extends JpaRepository<RoomRetention, Long> {
+}
@@ -2,11 +2,21 @@ package io.turtlemessenger.repository;
 
 import io.turtlemessenger.model.UserAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<UserAccount, Long> {
     Optional<UserAccount> findByUsername(String username);
     boolean existsByUsername(String username);
-}
 
+    @Query("select u.id from UserAccount u where u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+    // rows of [id, username]
+    @Query("select u.id, u.username from UserAccount u where u.username in :usernames")
+    List<Object[]> findIdsByUsernameIn(@Param("usernames") Collection<String> usernames);
+}
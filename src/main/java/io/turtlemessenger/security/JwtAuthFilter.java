@@ -1,5 +1,6 @@
 package io.turtlemessenger.security;
 
+import io.turtlemessenger.config.MessagingMetrics;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,16 +16,21 @@ import java.util.Collections;
 
 public class JwtAuthFilter extends OncePerRequestFilter {
     private final JwtUtil jwt;
-    public JwtAuthFilter(JwtUtil jwt) { this.jwt = jwt; }
+    private final MessagingMetrics metrics;
+    public JwtAuthFilter(JwtUtil jwt, MessagingMetrics metrics) {
+        this.jwt = jwt;
+        this.metrics = metrics;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String auth = request.getHeader("Authorization");
         if (auth != null && auth.startsWith("Bearer ")) {
-            String token = auth.substring(7);
-            if (jwt.isValid(token)) {
-                String username = jwt.getSubject(token);
-                var principal = new User(username, "", Collections.emptyList());
+            long start = System.nanoTime();
+            JwtUtil.Claims claims = jwt.verify(auth.substring(7));
+            metrics.recordJwtVerify("http", System.nanoTime() - start, claims != null);
+            if (claims != null) {
+                var principal = new User(claims.subject(), "", Collections.emptyList());
                 var authToken = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -3,106 +3,207 @@ package io.turtlemessenger.security;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JwtUtil {
     private static final String HMAC_ALGO = "HmacSHA256";
-    private final byte[] secret;
+    private static final Base64.Encoder B64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64_URL_DECODER = Base64.getUrlDecoder();
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    // the only header this class issues or accepts, so a token naming another alg is refused outright
+    private static final String HEADER = B64_URL.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    /** Claims of a verified token. Times are epoch seconds. */
+    public record Claims(String subject, long issuedAt, long expiresAt) {}
+
+    private record Verified(String token, Claims claims) {}
+
+    private final SecretKeySpec key;
     private final long ttlSeconds;
+    private final int cacheSize;
+    // Mac is not thread-safe; one initialised instance per thread avoids getInstance + init per call
+    private final ThreadLocal<Mac> macs;
+    // Recently verified tokens keyed by their signature segment; repeat requests skip the HMAC
+    private final ConcurrentHashMap<String, Verified> verified = new ConcurrentHashMap<>();
 
     public JwtUtil(String secret, long ttlSeconds) {
-        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this(secret, ttlSeconds, DEFAULT_CACHE_SIZE);
+    }
+
+    public JwtUtil(String secret, long ttlSeconds, int cacheSize) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGO);
         this.ttlSeconds = ttlSeconds;
+        this.cacheSize = cacheSize;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGO);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) { throw new IllegalStateException(e); }
+        });
     }
 
     public String generateToken(String subject) {
         long now = Instant.now().getEpochSecond();
         long exp = now + ttlSeconds;
-        String headerJson = Json.minify("{\"alg\":\"HS256\",\"typ\":\"JWT\"}");
-        String payloadJson = Json.minify(String.format("{\"sub\":\"%s\",\"iat\":%d,\"exp\":%d}", escape(subject), now, exp));
-        String header = base64Url(headerJson.getBytes(StandardCharsets.UTF_8));
-        String payload = base64Url(payloadJson.getBytes(StandardCharsets.UTF_8));
-        String signature = sign(header + "." + payload);
-        return header + "." + payload + "." + signature;
+        String payloadJson = String.format("{\"sub\":\"%s\",\"iat\":%d,\"exp\":%d}", escape(subject), now, exp);
+        String payload = B64_URL.encodeToString(payloadJson.getBytes(StandardCharsets.UTF_8));
+        byte[] signingInput = (HEADER + "." + payload).getBytes(StandardCharsets.US_ASCII);
+        String signature = B64_URL.encodeToString(macs.get().doFinal(signingInput));
+        return HEADER + "." + payload + "." + signature;
     }
 
-    public boolean isValid(String token) {
+    /**
+     * Checks header, signature and expiry in a single pass and returns the claims, or null if the
+     * token is malformed, forged or expired.
+     */
+    public Claims verify(String token) {
+        if (token == null) return null;
+        int d1 = token.indexOf('.');
+        int d2 = d1 < 0 ? -1 : token.indexOf('.', d1 + 1);
+        if (d1 <= 0 || d2 <= d1 + 1 || d2 >= token.length() - 1 || token.indexOf('.', d2 + 1) >= 0) return null;
+        if (d1 != HEADER.length() || !token.startsWith(HEADER)) return null;
+        long now = Instant.now().getEpochSecond();
+
+        String signature = token.substring(d2 + 1);
+        Verified hit = verified.get(signature);
+        if (hit != null && hit.token().equals(token)) {
+            if (now < hit.claims().expiresAt()) return hit.claims();
+            verified.remove(signature, hit);
+            return null;
+        }
+
+        // header.payload as ASCII bytes; base64url never needs more than that
+        byte[] signingInput = new byte[d2];
+        for (int i = 0; i < d2; i++) {
+            char c = token.charAt(i);
+            if (c > 0x7f) return null;
+            signingInput[i] = (byte) c;
+        }
+        byte[] expected = B64_URL.encode(macs.get().doFinal(signingInput));
+        if (!constantTimeEquals(expected, token, d2 + 1)) return null;
+
+        Claims claims;
         try {
-            String[] parts = token.split("\\.");
-            if (parts.length != 3) return false;
-            String sig = sign(parts[0] + "." + parts[1]);
-            if (!constantTimeEquals(sig, parts[2])) return false;
-            Map<String, Object> payload = Json.parse(base64UrlDecode(parts[1]));
-            Object exp = payload.get("exp");
-            if (exp instanceof Number) {
-                long e = ((Number) exp).longValue();
-                return Instant.now().getEpochSecond() < e;
-            }
-            return false;
-        } catch (Exception e) { return false; }
+            byte[] payload = B64_URL_DECODER.decode(Arrays.copyOfRange(signingInput, d1 + 1, d2));
+            claims = parseClaims(new String(payload, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) { return null; }
+        if (claims == null || now >= claims.expiresAt()) return null;
+        remember(signature, new Verified(token, claims), now);
+        return claims;
     }
 
-    public String getSubject(String token) {
-        String[] parts = token.split("\\.");
-        Map<String, Object> payload = Json.parse(base64UrlDecode(parts[1]));
-        Object sub = payload.get("sub");
-        return sub != null ? sub.toString() : null;
+    public boolean isValid(String token) {
+        return verify(token) != null;
     }
 
-    private String sign(String data) {
-        try {
-            Mac mac = Mac.getInstance(HMAC_ALGO);
-            mac.init(new SecretKeySpec(secret, HMAC_ALGO));
-            return base64Url(mac.doFinal(data.getBytes(StandardCharsets.UTF_8)));
-        } catch (Exception e) { throw new RuntimeException(e); }
+    public String getSubject(String token) {
+        Claims claims = verify(token);
+        return claims != null ? claims.subject() : null;
     }
 
-    private static String base64Url(byte[] bytes) {
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
-    }
-    private static String base64UrlDecode(String s) {
-        return new String(Base64.getUrlDecoder().decode(s), StandardCharsets.UTF_8);
+    private void remember(String signature, Verified entry, long now) {
+        if (cacheSize <= 0) return;
+        if (verified.size() >= cacheSize) {
+            for (Iterator<Verified> it = verified.values().iterator(); it.hasNext(); ) {
+                if (it.next().claims().expiresAt() <= now) it.remove();
+            }
+            if (verified.size() >= cacheSize) verified.clear();
+        }
+        verified.put(signature, entry);
     }
-    private static boolean constantTimeEquals(String a, String b) {
-        byte[] x = a.getBytes(StandardCharsets.UTF_8);
-        byte[] y = b.getBytes(StandardCharsets.UTF_8);
-        if (x.length != y.length) return false;
-        int r = 0; for (int i = 0; i < x.length; i++) r |= x[i] ^ y[i];
+
+    private static boolean constantTimeEquals(byte[] expected, String token, int offset) {
+        if (token.length() - offset != expected.length) return false;
+        int r = 0;
+        for (int i = 0; i < expected.length; i++) r |= expected[i] ^ token.charAt(offset + i);
         return r == 0;
     }
+
     private static String escape(String s) {
         return s.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
-    // Minimal JSON helper for flat objects
-    static class Json {
-        static String minify(String s) { return s; }
-        @SuppressWarnings("unchecked")
-        static Map<String, Object> parse(String json) {
-            // Extremely small JSON parser for our controlled payload
-            // Accepts {"k":v} with v as number or string
-            java.util.HashMap<String, Object> map = new java.util.HashMap<>();
-            String body = json.trim();
-            if (body.startsWith("{") && body.endsWith("}")) {
-                body = body.substring(1, body.length()-1).trim();
-                if (body.isEmpty()) return map;
-                for (String part : body.split(",")) {
-                    String[] kv = part.split(":", 2);
-                    String k = kv[0].trim();
-                    String v = kv[1].trim();
-                    if (k.startsWith("\"") && k.endsWith("\"")) k = k.substring(1, k.length()-1);
-                    if (v.startsWith("\"") && v.endsWith("\"")) {
-                        map.put(k, v.substring(1, v.length()-1));
-                    } else {
-                        try { map.put(k, Long.parseLong(v)); }
-                        catch (NumberFormatException e) { map.put(k, v); }
-                    }
+    /**
+     * Reads sub/iat/exp from the flat JSON object this class issues. Returns null if the
+     * payload isn't shaped like that or has no numeric exp.
+     */
+    static Claims parseClaims(String json) {
+        String sub = null;
+        long iat = 0;
+        long exp = -1;
+        int i = skipWs(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') return null;
+        i = skipWs(json, i + 1);
+        if (i < json.length() && json.charAt(i) == '}') return null;
+        StringBuilder sb = new StringBuilder();
+        while (i < json.length()) {
+            if (json.charAt(i) != '"') return null;
+            sb.setLength(0);
+            i = readString(json, i + 1, sb);
+            if (i < 0) return null;
+            String name = sb.toString();
+            i = skipWs(json, i);
+            if (i >= json.length() || json.charAt(i) != ':') return null;
+            i = skipWs(json, i + 1);
+            if (i >= json.length()) return null;
+            if (json.charAt(i) == '"') {
+                sb.setLength(0);
+                i = readString(json, i + 1, sb);
+                if (i < 0) return null;
+                if (name.equals("sub")) sub = sb.toString();
+            } else {
+                int start = i;
+                while (i < json.length() && json.charAt(i) != ',' && json.charAt(i) != '}' && !Character.isWhitespace(json.charAt(i))) i++;
+                try {
+                    long v = Long.parseLong(json, start, i, 10);
+                    if (name.equals("exp")) exp = v;
+                    else if (name.equals("iat")) iat = v;
+                } catch (NumberFormatException ignored) {}
+            }
+            i = skipWs(json, i);
+            if (i >= json.length()) return null;
+            char c = json.charAt(i);
+            if (c == '}') return exp < 0 ? null : new Claims(sub, iat, exp);
+            if (c != ',') return null;
+            i = skipWs(json, i + 1);
+        }
+        return null;
+    }
+
+    // Reads a JSON string body starting after the opening quote; returns the index after the closing quote
+    private static int readString(String json, int i, StringBuilder out) {
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"') return i;
+            if (c != '\\') { out.append(c); continue; }
+            if (i >= json.length()) return -1;
+            char e = json.charAt(i++);
+            switch (e) {
+                case 'n' -> out.append('\n');
+                case 't' -> out.append('\t');
+                case 'r' -> out.append('\r');
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'u' -> {
+                    if (i + 4 > json.length()) return -1;
+                    try { out.append((char) Integer.parseInt(json, i, i + 4, 16)); }
+                    catch (NumberFormatException ex) { return -1; }
+                    i += 4;
                 }
+                default -> out.append(e);
             }
-            return map;
         }
+        return -1;
     }
-}
 
+    private static int skipWs(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+}
@@ -11,10 +11,12 @@ import java.util.Locale;
 public class AuthService {
     private final UserRepository users;
     private final PasswordEncoder encoder;
+    private final IdentityCache identities;
 
-    public AuthService(UserRepository users, PasswordEncoder encoder) {
+    public AuthService(UserRepository users, PasswordEncoder encoder, IdentityCache identities) {
         this.users = users;
         this.encoder = encoder;
+        this.identities = identities;
     }
 
     public UserAccount register(String username, String rawPassword) {
@@ -29,8 +31,10 @@ public class AuthService {
             throw new IllegalArgumentException("username already taken");
         }
         String hash = encoder.encode(rawPassword);
-        UserAccount acc = new UserAccount(u, hash);
-        return users.save(acc);
+        UserAccount acc = users.save(new UserAccount(u, hash));
+        // drop a cached "no such user" left by messages sent under this name before signup
+        identities.invalidateUser(u);
+        return acc;
     }
 
     public UserAccount authenticate(String username, String rawPassword) {
@@ -1,72 +1,224 @@
 package io.turtlemessenger.service;
 
+import io.turtlemessenger.config.MessagingMetrics;
 import io.turtlemessenger.dto.MessageDTO;
-import io.turtlemessenger.model.ChatRoom;
-import io.turtlemessenger.model.Message;
-import io.turtlemessenger.model.UserAccount;
-import io.turtlemessenger.repository.ChatRoomRepository;
-import io.turtlemessenger.repository.MessageRepository;
-import io.turtlemessenger.repository.UserRepository;
-import org.springframework.data.domain.PageRequest;
+import io.turtlemessenger.dto.MessagePage;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.repository.MessageArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class ChatService {
-    private final ChatRoomRepository rooms;
-    private final MessageRepository messages;
-    private final UserRepository users;
+    private static final Logger log = LoggerFactory.getLogger(ChatService.class);
 
-    public ChatService(ChatRoomRepository rooms, MessageRepository messages, UserRepository users) {
-        this.rooms = rooms;
+    private final MessageStore messages;
+    private final MessageWriteBehind writeBehind;
+    private final RecentMessageCache recent;
+    private final MessagingMetrics metrics;
+    private final MessageArchive archive;
+    private final RoomSequences sequences;
+    private final RoomVersions versions;
+    private final long maxClockSkewMillis;
+
+    public ChatService(MessageStore messages, MessageWriteBehind writeBehind, RecentMessageCache recent,
+                       MessagingMetrics metrics, MessageArchive archive, RoomSequences sequences, RoomVersions versions,
+                       @Value("${tm.chat.max-clock-skew-seconds:300}") long maxClockSkewSeconds) {
         this.messages = messages;
-        this.users = users;
+        this.archive = archive;
+        this.writeBehind = writeBehind;
+        this.recent = recent;
+        this.metrics = metrics;
+        this.sequences = sequences;
+        this.versions = versions;
+        this.maxClockSkewMillis = TimeUnit.SECONDS.toMillis(maxClockSkewSeconds);
+    }
+
+    /** Stores the message before returning; the store commits it, then it goes into the ring buffer. */
+    public MessageDTO saveMessage(Long roomId, MessageDTO dto, Principal principal) {
+        MessageDTO saved = sequences.next(roomId, seq -> messages.append(pending(roomId, dto, principal, seq)));
+        recent.append(roomId, saved);
+        versions.bump(roomId);
+        return saved;
     }
 
-    public ChatRoom ensureRoom(Long roomId) {
-        return rooms.findById(roomId).orElseGet(() -> rooms.save(new ChatRoom(roomId, "Room " + roomId)));
+    /** ETag of the room's history; read it before the history itself. */
+    public String historyTag(Long roomId) {
+        return versions.etag(roomId);
     }
 
-    @Transactional
-    public Message saveMessage(Long roomId, MessageDTO dto, Principal principal) {
-        ChatRoom room = ensureRoom(roomId);
-        String username = principal != null ? principal.getName() : Optional.ofNullable(dto.getSenderId()).orElse("anonymous");
-        UserAccount sender = users.findByUsername(username).orElse(null);
-        Message m = new Message();
-        m.setRoom(room);
-        m.setSenderUser(sender);
-        m.setSenderUsername(username);
-        m.setContent(dto.getContent() == null ? "" : dto.getContent());
-        m.setCreatedAt(dto.getTs() > 0 ? Instant.ofEpochMilli(dto.getTs()) : Instant.now());
-        return messages.save(m);
+    /**
+     * Queues the message for write-behind persistence and returns immediately, with its room
+     * sequence number set on {@code dto}. {@code accepted} (the broadcast) runs while the room's
+     * sequence is still held, so concurrent sends reach subscribers in sequence order.
+     * Returns false, without calling {@code accepted}, if the persister dropped it under backpressure.
+     */
+    public boolean enqueueMessage(Long roomId, MessageDTO dto, Principal principal, Consumer<MessageDTO> accepted) {
+        Long seq = sequences.next(roomId, s -> {
+            if (!writeBehind.submit(pending(roomId, dto, principal, s))) return null;
+            dto.setSeq(s);
+            try {
+                accepted.accept(dto);
+            } catch (RuntimeException e) {
+                // the message is queued, so it keeps its number; clients fetch it with afterSeq
+                log.warn("Broadcast of message {} in room {} failed: {}", s, roomId, e.getMessage());
+            }
+            return s;
+        });
+        return seq != null;
     }
 
-    @Transactional(readOnly = true)
+    private PendingMessage pending(Long roomId, MessageDTO dto, Principal principal, long seq) {
+        // created_at decides when the archiver moves and expires the message, so a client clock
+        // only counts while it is close to ours; the broadcast carries the same time
+        long now = System.currentTimeMillis();
+        if (dto.getTs() <= 0 || Math.abs(dto.getTs() - now) > maxClockSkewMillis) dto.setTs(now);
+        return new PendingMessage(
+                roomId,
+                principal != null ? principal.getName() : Optional.ofNullable(dto.getSenderId()).orElse("anonymous"),
+                dto.getContent() == null ? "" : dto.getContent(),
+                Instant.ofEpochMilli(dto.getTs()),
+                seq
+        );
+    }
+
+    /**
+     * Legacy timestamp-cursor history. Timestamps come from clients, so ties and skew can make
+     * these pages skip or repeat messages; prefer {@link #getPage} with an id cursor.
+     */
     public List<MessageDTO> getHistory(Long roomId, Integer size, Long beforeTs) {
-        int limit = (size == null || size <= 0 || size > 200) ? 50 : size;
-        List<Message> list;
-        if (beforeTs != null && beforeTs > 0) {
-            list = messages.findByRoom_IdAndCreatedAtLessThanOrderByCreatedAtDesc(roomId, Instant.ofEpochMilli(beforeTs), PageRequest.of(0, limit));
-        } else {
-            list = messages.findByRoom_IdOrderByCreatedAtDesc(roomId, PageRequest.of(0, limit));
+        if (beforeTs == null || beforeTs <= 0) {
+            return getPage(roomId, size, null, null).messages();
+        }
+        long start = System.nanoTime();
+        int limit = pageSize(size);
+        Instant before = Instant.ofEpochMilli(beforeTs);
+        List<MessageDTO> list = messages.beforeCreatedAt(roomId, before, limit);
+        Instant archivedUpTo = archive.maxArchivedCreatedAt(roomId);
+        // past the hot window: top the page up from the archive
+        if (archivedUpTo != null && (list.size() < limit || list.get(list.size() - 1).getTs() <= archivedUpTo.toEpochMilli())) {
+            list = merge(list, archive.beforeCreatedAt(roomId, before, limit),
+                    Comparator.comparingLong(MessageDTO::getTs).thenComparing(MessageDTO::getId).reversed(), limit);
         }
         Collections.reverse(list); // ascending for UI
-        return list.stream().map(this::toDto).collect(Collectors.toList());
+        metrics.recordHistory(limit, "db", System.nanoTime() - start);
+        return list;
     }
 
-    private MessageDTO toDto(Message m) {
-        return new MessageDTO(
-                m.getRoom().getId(),
-                m.getSenderUsername(),
-                m.getContent(),
-                m.getCreatedAt().toEpochMilli()
-        );
+    /**
+     * Keyset page of room history by message id: the latest page, the page before
+     * {@code beforeId}, or the page after {@code afterId}. Answered from the in-memory ring
+     * buffer when it covers the request; only misses reach SQLite.
+     */
+    public MessagePage getPage(Long roomId, Integer size, Long beforeId, Long afterId) {
+        long start = System.nanoTime();
+        int limit = pageSize(size);
+        MessagePage cached = afterId != null ? recent.after(roomId, afterId, limit)
+                : beforeId != null ? recent.before(roomId, beforeId, limit)
+                : recent.latest(roomId, limit);
+        if (cached != null) {
+            metrics.recordHistory(limit, "cache", System.nanoTime() - start);
+            return cached;
+        }
+        MessagePage page = queryPage(roomId, limit, beforeId, afterId);
+        metrics.recordHistory(limit, "db", System.nanoTime() - start);
+        return page;
+    }
+
+    /**
+     * Messages with a room sequence number above {@code afterSeq}, in sequence order; the cursor
+     * is the last sequence number of the page. For catching up after a reconnect, so only the hot
+     * table is searched: archived messages carry no sequence number.
+     */
+    public MessagePage getPageAfterSeq(Long roomId, Integer size, long afterSeq) {
+        long start = System.nanoTime();
+        int limit = pageSize(size);
+        long after = Math.max(0, afterSeq);
+        MessagePage cached = recent.afterSeq(roomId, after, limit);
+        if (cached != null) {
+            metrics.recordHistory(limit, "cache", System.nanoTime() - start);
+            return cached;
+        }
+        List<MessageDTO> list = messages.afterSeq(roomId, after, limit + 1);
+        boolean more = list.size() > limit;
+        List<MessageDTO> page = more ? new ArrayList<>(list.subList(0, limit)) : list;
+        metrics.recordHistory(limit, "db", System.nanoTime() - start);
+        return new MessagePage(page, more ? page.get(page.size() - 1).getSeq() : null);
+    }
+
+    private MessagePage queryPage(Long roomId, int limit, Long beforeId, Long afterId) {
+        if (afterId != null) {
+            List<MessageDTO> list = messages.after(roomId, afterId, limit + 1);
+            if (afterId < archive.maxArchivedId(roomId)) {
+                list = merge(list, archive.after(roomId, afterId, limit + 1), Comparator.comparing(MessageDTO::getId), limit + 1);
+            }
+            boolean more = list.size() > limit;
+            List<MessageDTO> page = more ? new ArrayList<>(list.subList(0, limit)) : list;
+            return new MessagePage(page, more ? page.get(page.size() - 1).getId() : null);
+        }
+        if (beforeId != null) {
+            List<MessageDTO> list = messages.before(roomId, beforeId, limit + 1);
+            return backwardPage(withArchiveBefore(roomId, beforeId, list, limit + 1), limit);
+        }
+
+        // Miss: load a full buffer's worth so the next reads of this room stay in memory
+        long stamp = recent.stamp(roomId);
+        int want = Math.max(limit + 1, recent.perRoom());
+        List<MessageDTO> dtos = withArchiveBefore(roomId, Long.MAX_VALUE, messages.latest(roomId, want), want);
+        Collections.reverse(dtos); // ascending for UI
+        recent.warm(roomId, stamp, dtos, archive.maxArchivedId(roomId) > 0);
+        int from = Math.max(0, dtos.size() - limit);
+        return new MessagePage(new ArrayList<>(dtos.subList(from, dtos.size())), from > 0 ? dtos.get(from).getId() : null);
+    }
+
+    /**
+     * Adds archived rows to a newest-first page from the messages table when the page reaches
+     * down into the archived id range, i.e. the cursor went past the hot window.
+     */
+    private List<MessageDTO> withArchiveBefore(Long roomId, long beforeId, List<MessageDTO> hot, int want) {
+        long archivedUpTo = archive.maxArchivedId(roomId);
+        if (archivedUpTo == 0) return hot;
+        if (hot.size() >= want && hot.get(hot.size() - 1).getId() > archivedUpTo) return hot;
+        return merge(hot, archive.before(roomId, beforeId, want), Comparator.comparing(MessageDTO::getId).reversed(), want);
+    }
+
+    private static List<MessageDTO> merge(List<MessageDTO> a, List<MessageDTO> b, Comparator<MessageDTO> order, int limit) {
+        List<MessageDTO> all = new ArrayList<>(a.size() + b.size());
+        all.addAll(a);
+        all.addAll(b);
+        all.sort(order);
+        // a row can sit in both while the archiver is between its copy and its delete
+        List<MessageDTO> out = new ArrayList<>(Math.min(limit, all.size()));
+        Long last = null;
+        for (MessageDTO m : all) {
+            if (out.size() == limit) break;
+            if (m.getId().equals(last)) continue;
+            out.add(m);
+            last = m.getId();
+        }
+        return out;
+    }
+
+    private static MessagePage backwardPage(List<MessageDTO> newestFirst, int limit) {
+        boolean more = newestFirst.size() > limit;
+        List<MessageDTO> page = new ArrayList<>(more ? newestFirst.subList(0, limit) : newestFirst);
+        Collections.reverse(page); // ascending for UI
+        return new MessagePage(page, more ? page.get(0).getId() : null);
+    }
+
+    private static int pageSize(Integer size) {
+        return (size == null || size <= 0 || size > 200) ? 50 : size;
     }
 }
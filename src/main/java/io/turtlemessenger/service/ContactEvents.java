@@ -0,0 +1,51 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.dto.ContactEventDTO;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user contact versions and the deltas sent to {@code /user/queue/contacts}. Versions live
+ * in memory only and start over with a new epoch on every run; a user without changes since the
+ * start is at version 0.
+ */
+@Component
+public class ContactEvents {
+    public static final String DESTINATION = "/queue/contacts";
+
+    private final SimpMessagingTemplate messaging;
+    private final long epoch = System.currentTimeMillis();
+    private final ConcurrentHashMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public ContactEvents(SimpMessagingTemplate messaging) {
+        this.messaging = messaging;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public long version(long userId) {
+        AtomicLong v = versions.get(userId);
+        return v == null ? 0 : v.get();
+    }
+
+    /** Strong ETag value for the user's contact lists as of now. */
+    public String etag(long userId) {
+        return "c" + userId + "-" + epoch + "-" + version(userId);
+    }
+
+    /** Bumps the user's version and sends the change to all of the user's sessions. */
+    public void publish(long userId, String username, String type, ContactDTO contact) {
+        AtomicLong v = versions.computeIfAbsent(userId, id -> new AtomicLong());
+        // numbering and sending under one lock hands each user's deltas to the broker in version order
+        synchronized (v) {
+            ContactEventDTO event = new ContactEventDTO(epoch, v.incrementAndGet(), type, contact);
+            messaging.convertAndSendToUser(username, DESTINATION, event);
+        }
+    }
+}
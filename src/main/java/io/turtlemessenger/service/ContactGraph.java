@@ -0,0 +1,335 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.model.ContactStatus;
+import io.turtlemessenger.repository.JdbcTimestamps;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * In-memory contact graph. Each cached user has one open-addressing table keyed by the peer's
+ * user id, holding the status and creation time of both directed rows between the two (mine and
+ * theirs) and the peer's username. A user is loaded with one query on first use; committed
+ * mutations are applied to whichever side is cached. Users are evicted LRU once all tables
+ * together hold more than {@code max-edges} peers.
+ *
+ * Like {@link RecentMessageCache}, a per-stripe stamp is bumped for every mutation of an
+ * uncached user so a load racing with a commit doesn't install a stale table.
+ */
+@Component
+public class ContactGraph {
+    /** Both directed rows between a user and one peer; null status means no row. */
+    public record Edge(long peerId, String peerName, ContactStatus outgoing, long outgoingAt,
+                       ContactStatus incoming, long incomingAt) {}
+
+    public record Stats(long hits, long misses, int users, long edges) {}
+
+    private static final int STAMP_STRIPES = 64;
+    private static final ContactStatus[] STATUSES = ContactStatus.values();
+
+    private final JdbcTemplate jdbc;
+    private final long maxEdges;
+    private final LinkedHashMap<Long, Adjacency> users = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    private final AtomicLong totalEdges = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ContactGraph(JdbcTemplate jdbc, @Value("${tm.contacts.graph.max-edges:2000000}") long maxEdges) {
+        this.jdbc = jdbc;
+        this.maxEdges = maxEdges;
+    }
+
+    /** Accepted contacts of the user, oldest first. */
+    public List<ContactDTO> accepted(long userId) {
+        List<Edge> out = new ArrayList<>();
+        Adjacency adj = adjacency(userId);
+        synchronized (adj) {
+            adj.forEach(e -> {
+                if (e.outgoing() == ContactStatus.ACCEPTED) out.add(e);
+            });
+        }
+        out.sort(Comparator.comparingLong(Edge::outgoingAt).thenComparingLong(Edge::peerId));
+        return dtos(out, ContactStatus.ACCEPTED);
+    }
+
+    /**
+     * Pending requests sent to the user, oldest first. A pending row towards the user whose
+     * mirror row is older was a request the user made, left over from legacy data; it is skipped.
+     */
+    public List<ContactDTO> incomingRequests(long userId) {
+        List<Edge> out = new ArrayList<>();
+        Adjacency adj = adjacency(userId);
+        synchronized (adj) {
+            adj.forEach(e -> {
+                if (e.incoming() == ContactStatus.PENDING && (e.outgoing() == null || e.incomingAt() < e.outgoingAt())) out.add(e);
+            });
+        }
+        out.sort(Comparator.comparingLong(Edge::incomingAt).thenComparingLong(Edge::peerId));
+        return dtos(out, ContactStatus.PENDING);
+    }
+
+    /** The rows between the two users as seen from {@code userId}; statuses are null if absent. */
+    public Edge edge(long userId, long peerId) {
+        Adjacency adj = adjacency(userId);
+        synchronized (adj) {
+            Edge e = adj.get(peerId);
+            return e != null ? e : new Edge(peerId, null, null, 0, null, 0);
+        }
+    }
+
+    /** Applies a committed insert or status change of the row {@code from -> to}. */
+    public void put(long from, String fromName, long to, String toName, ContactStatus status, long createdAt) {
+        Adjacency mine = cached(from);
+        if (mine != null) update(mine, to, toName, true, status, createdAt);
+        Adjacency theirs = cached(to);
+        if (theirs != null) update(theirs, from, fromName, false, status, createdAt);
+    }
+
+    /** Applies a committed delete of both rows between the two users. */
+    public void removePair(long a, long b) {
+        Adjacency first = cached(a);
+        if (first != null) clear(first, b);
+        Adjacency second = cached(b);
+        if (second != null) clear(second, a);
+    }
+
+    public void invalidate(long userId) {
+        Adjacency adj;
+        synchronized (users) {
+            adj = users.remove(userId);
+            stamps.incrementAndGet(stripe(userId));
+        }
+        if (adj != null) release(adj);
+    }
+
+    public Stats stats() {
+        synchronized (users) {
+            return new Stats(hits.get(), misses.get(), users.size(), totalEdges.get());
+        }
+    }
+
+    private void update(Adjacency adj, long peer, String peerName, boolean outgoing, ContactStatus status, long at) {
+        long delta;
+        synchronized (adj) {
+            if (adj.evicted) return;
+            int before = adj.size;
+            adj.set(peer, peerName, outgoing, status, at);
+            delta = adj.size - before;
+        }
+        totalEdges.addAndGet(delta);
+        evictIfNeeded();
+    }
+
+    private void clear(Adjacency adj, long peer) {
+        long delta;
+        synchronized (adj) {
+            if (adj.evicted) return;
+            int before = adj.size;
+            adj.set(peer, null, true, null, 0);
+            adj.set(peer, null, false, null, 0);
+            delta = adj.size - before;
+        }
+        totalEdges.addAndGet(delta);
+    }
+
+    /** The cached table, or null after bumping the stamp so a racing load is discarded. */
+    private Adjacency cached(long userId) {
+        synchronized (users) {
+            Adjacency adj = users.get(userId);
+            if (adj == null) stamps.incrementAndGet(stripe(userId));
+            return adj;
+        }
+    }
+
+    private Adjacency adjacency(long userId) {
+        synchronized (users) {
+            Adjacency adj = users.get(userId);
+            if (adj != null) {
+                hits.incrementAndGet();
+                return adj;
+            }
+        }
+        misses.incrementAndGet();
+        long stamp = stamps.get(stripe(userId));
+        Adjacency fresh = load(userId);
+        synchronized (users) {
+            Adjacency raced = users.get(userId);
+            if (raced != null) return raced;
+            // a mutation committed while loading; answer from the snapshot but don't keep it
+            if (stamps.get(stripe(userId)) != stamp) return fresh;
+            users.put(userId, fresh);
+            totalEdges.addAndGet(fresh.size);
+        }
+        evictIfNeeded();
+        return fresh;
+    }
+
+    private Adjacency load(long userId) {
+        Adjacency adj = new Adjacency(16);
+        jdbc.query("SELECT c.user_id, c.contact_id, c.status, c.created_at, u.username "
+                        + "FROM contacts c JOIN users u ON u.id = c.contact_id WHERE c.user_id = ? "
+                        + "UNION ALL "
+                        + "SELECT c.user_id, c.contact_id, c.status, c.created_at, u.username "
+                        + "FROM contacts c JOIN users u ON u.id = c.user_id WHERE c.contact_id = ?",
+                rs -> {
+                    boolean outgoing = rs.getLong(1) == userId;
+                    long peer = outgoing ? rs.getLong(2) : rs.getLong(1);
+                    adj.set(peer, rs.getString(5), outgoing, ContactStatus.valueOf(rs.getString(3)),
+                            JdbcTimestamps.read(rs, "created_at").toEpochMilli());
+                },
+                userId, userId);
+        return adj;
+    }
+
+    private void evictIfNeeded() {
+        while (totalEdges.get() > maxEdges) {
+            Adjacency victim;
+            synchronized (users) {
+                Iterator<Map.Entry<Long, Adjacency>> it = users.entrySet().iterator();
+                if (!it.hasNext()) return;
+                Map.Entry<Long, Adjacency> eldest = it.next();
+                it.remove();
+                stamps.incrementAndGet(stripe(eldest.getKey()));
+                victim = eldest.getValue();
+            }
+            release(victim);
+        }
+    }
+
+    private void release(Adjacency adj) {
+        synchronized (adj) {
+            if (adj.evicted) return;
+            adj.evicted = true;
+            totalEdges.addAndGet(-adj.size);
+        }
+    }
+
+    private static List<ContactDTO> dtos(List<Edge> edges, ContactStatus status) {
+        List<ContactDTO> out = new ArrayList<>(edges.size());
+        for (Edge e : edges) out.add(new ContactDTO(e.peerId(), e.peerName(), status.name()));
+        return out;
+    }
+
+    private static int stripe(long userId) {
+        return (int) (Long.hashCode(userId) & (STAMP_STRIPES - 1));
+    }
+
+    /**
+     * Linear-probing table from peer id to both directions' status (0 = no row, else ordinal + 1)
+     * and creation time. User ids start at 1, so 0 marks a free slot. Peers whose rows are all
+     * deleted keep their slot until the table is next resized.
+     */
+    private static final class Adjacency {
+        private long[] peers;
+        private byte[] outStatus;
+        private byte[] inStatus;
+        private long[] outAt;
+        private long[] inAt;
+        private String[] names;
+        private int used; // occupied slots
+        private int size; // peers with at least one row
+        private boolean evicted;
+
+        Adjacency(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            peers = new long[capacity];
+            outStatus = new byte[capacity];
+            inStatus = new byte[capacity];
+            outAt = new long[capacity];
+            inAt = new long[capacity];
+            names = new String[capacity];
+            used = 0;
+        }
+
+        private int slot(long peer) {
+            int mask = peers.length - 1;
+            int i = (int) ((peer * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (peers[i] != 0 && peers[i] != peer) i = (i + 1) & mask;
+            return i;
+        }
+
+        Edge get(long peer) {
+            int i = slot(peer);
+            if (peers[i] == 0 || (outStatus[i] == 0 && inStatus[i] == 0)) return null;
+            return edgeAt(i);
+        }
+
+        void set(long peer, String name, boolean outgoing, ContactStatus status, long at) {
+            int i = slot(peer);
+            if (peers[i] == 0) {
+                if (status == null) return;
+                if ((used + 1) * 4 > peers.length * 3) {
+                    resize();
+                    i = slot(peer);
+                }
+                peers[i] = peer;
+                used++;
+            }
+            boolean wasPresent = outStatus[i] != 0 || inStatus[i] != 0;
+            byte code = status == null ? 0 : (byte) (status.ordinal() + 1);
+            if (outgoing) {
+                outStatus[i] = code;
+                outAt[i] = at;
+            } else {
+                inStatus[i] = code;
+                inAt[i] = at;
+            }
+            if (name != null) names[i] = name;
+            boolean present = outStatus[i] != 0 || inStatus[i] != 0;
+            if (present && !wasPresent) size++;
+            if (!present && wasPresent) size--;
+        }
+
+        void forEach(Consumer<Edge> action) {
+            for (int i = 0; i < peers.length; i++) {
+                if (peers[i] != 0 && (outStatus[i] != 0 || inStatus[i] != 0)) action.accept(edgeAt(i));
+            }
+        }
+
+        private Edge edgeAt(int i) {
+            return new Edge(peers[i], names[i], status(outStatus[i]), outAt[i], status(inStatus[i]), inAt[i]);
+        }
+
+        private static ContactStatus status(byte code) {
+            return code == 0 ? null : STATUSES[code - 1];
+        }
+
+        private void resize() {
+            long[] oldPeers = peers;
+            byte[] oldOut = outStatus;
+            byte[] oldIn = inStatus;
+            long[] oldOutAt = outAt;
+            long[] oldInAt = inAt;
+            String[] oldNames = names;
+            // size the new table on live peers only, dropping the slots of removed ones
+            int capacity = Integer.highestOneBit(Math.max(16, size * 2)) * 2;
+            allocate(capacity);
+            for (int j = 0; j < oldPeers.length; j++) {
+                if (oldPeers[j] == 0 || (oldOut[j] == 0 && oldIn[j] == 0)) continue;
+                int i = slot(oldPeers[j]);
+                peers[i] = oldPeers[j];
+                outStatus[i] = oldOut[j];
+                inStatus[i] = oldIn[j];
+                outAt[i] = oldOutAt[j];
+                inAt[i] = oldInAt[j];
+                names[i] = oldNames[j];
+                used++;
+            }
+        }
+    }
+}
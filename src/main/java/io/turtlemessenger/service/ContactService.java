@@ -1,6 +1,8 @@
 package io.turtlemessenger.service;
 
 import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.dto.ContactEventDTO;
+import io.turtlemessenger.dto.ContactSnapshotDTO;
 import io.turtlemessenger.model.ContactRelation;
 import io.turtlemessenger.model.ContactStatus;
 import io.turtlemessenger.model.UserAccount;
@@ -8,136 +10,174 @@ import io.turtlemessenger.repository.ContactRepository;
 import io.turtlemessenger.repository.UserRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.Principal;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
+/**
+ * Contact lists and requests, answered from the {@link ContactGraph}. Mutations decide from the
+ * graph, write with single-row statements, and update the graph once they commit. After the
+ * graph, both parties are sent the change through {@link ContactEvents}.
+ */
 @Service
 public class ContactService {
     private final ContactRepository contacts;
     private final UserRepository users;
+    private final IdentityCache identities;
+    private final ContactGraph graph;
+    private final ContactEvents events;
 
-    public ContactService(ContactRepository contacts, UserRepository users) {
+    public ContactService(ContactRepository contacts, UserRepository users, IdentityCache identities,
+                          ContactGraph graph, ContactEvents events) {
         this.contacts = contacts;
         this.users = users;
+        this.identities = identities;
+        this.graph = graph;
+        this.events = events;
     }
 
-    private UserAccount requireUser(Principal principal) {
+    private long requireUserId(Principal principal) {
         if (principal == null) throw new IllegalArgumentException("unauthenticated");
-        return users.findByUsername(principal.getName()).orElseThrow(() -> new IllegalArgumentException("user not found"));
+        Long id = identities.userId(principal.getName());
+        if (id == null) throw new IllegalArgumentException("user not found");
+        return id;
+    }
+
+    /** ETag of the user's contact lists; read it before the lists themselves. */
+    public String contactsTag(Principal principal) {
+        return events.etag(requireUserId(principal));
     }
 
     @Transactional(readOnly = true)
     public List<ContactDTO> listContacts(Principal principal) {
-        UserAccount me = requireUser(principal);
-        return contacts.findByUserAndStatus(me, ContactStatus.ACCEPTED).stream()
-                .map(c -> new ContactDTO(c.getContact().getId(), c.getContact().getUsername(), c.getStatus().name()))
-                .collect(Collectors.toList());
+        return graph.accepted(requireUserId(principal));
     }
 
     @Transactional(readOnly = true)
     public List<ContactDTO> incomingRequests(Principal principal) {
-        UserAccount me = requireUser(principal);
-        // Only include true incoming requests. If an inverse pending relation exists and was created earlier,
-        // it means I initiated the request; exclude those mirrored records from legacy data.
-        return contacts.findByContactAndStatus(me, ContactStatus.PENDING).stream()
-                .filter(c -> {
-                    Optional<ContactRelation> inverse = contacts.findByUserAndContact(me, c.getUser());
-                    return inverse.isEmpty() || c.getCreatedAt().isBefore(inverse.get().getCreatedAt());
-                })
-                .map(c -> new ContactDTO(c.getUser().getId(), c.getUser().getUsername(), c.getStatus().name()))
-                .collect(Collectors.toList());
+        return graph.incomingRequests(requireUserId(principal));
+    }
+
+    /**
+     * Both lists with the version they reflect, or null if the caller already holds
+     * {@code version} of this {@code epoch}.
+     */
+    @Transactional(readOnly = true)
+    public ContactSnapshotDTO snapshot(Principal principal, Long epoch, Long version) {
+        long me = requireUserId(principal);
+        // read before the lists: a change landing in between shows in the lists and again as a
+        // delta, which clients apply idempotently
+        long current = events.version(me);
+        if (epoch != null && version != null && epoch == events.epoch() && version == current) return null;
+        return new ContactSnapshotDTO(events.epoch(), current, graph.accepted(me), graph.incomingRequests(me));
     }
 
     @Transactional
     public ContactDTO addContact(String usernameOrId, Principal principal) {
-        UserAccount me = requireUser(principal);
-        // try by id then username
-        UserAccount target = null;
-        try {
-            Long id = Long.parseLong(usernameOrId);
-            target = users.findById(id).orElse(null);
-        } catch (NumberFormatException ignored) {}
-        if (target == null) {
-            String u = normalize(usernameOrId);
-            target = users.findByUsername(u).orElse(null);
-        }
+        long me = requireUserId(principal);
+        UserAccount target = resolveUser(usernameOrId);
         if (target == null) throw new IllegalArgumentException("user not found");
-        if (target.getId().equals(me.getId())) throw new IllegalArgumentException("cannot add yourself");
+        if (target.getId() == me) throw new IllegalArgumentException("cannot add yourself");
 
-        Optional<ContactRelation> mineOpt = contacts.findByUserAndContact(me, target);
-        if (mineOpt.isPresent()) {
-            ContactRelation existing = mineOpt.get();
-            return new ContactDTO(existing.getContact().getId(), existing.getContact().getUsername(), existing.getStatus().name());
+        ContactGraph.Edge edge = graph.edge(me, target.getId());
+        if (edge.outgoing() != null) {
+            return new ContactDTO(target.getId(), target.getUsername(), edge.outgoing().name());
         }
-        Optional<ContactRelation> theirsOpt = contacts.findByUserAndContact(target, me);
 
         // If the other user has already sent me a request, auto-accept on add
-        if (theirsOpt.isPresent()) {
-            ContactRelation incoming = theirsOpt.get();
-            if (incoming.getStatus() == ContactStatus.PENDING) {
-                // create my mirror relation if missing and accept both
-                ContactRelation mine = new ContactRelation(me, target, ContactStatus.ACCEPTED);
-                contacts.save(mine);
-                incoming.setStatus(ContactStatus.ACCEPTED);
-                contacts.save(incoming);
-                return new ContactDTO(target.getId(), target.getUsername(), ContactStatus.ACCEPTED.name());
-            } else if (incoming.getStatus() == ContactStatus.ACCEPTED) {
-                // ensure my side exists as ACCEPTED
-                ContactRelation mine = new ContactRelation(me, target, ContactStatus.ACCEPTED);
-                contacts.save(mine);
-                return new ContactDTO(target.getId(), target.getUsername(), ContactStatus.ACCEPTED.name());
-            } else if (incoming.getStatus() == ContactStatus.BLOCKED) {
-                throw new IllegalArgumentException("cannot add contact: blocked");
-            }
+        if (edge.incoming() == ContactStatus.PENDING) {
+            insert(me, principal.getName(), target, ContactStatus.ACCEPTED);
+            updateStatus(target.getId(), target.getUsername(), me, principal.getName(), ContactStatus.ACCEPTED, edge.incomingAt());
+            publishAccepted(me, principal.getName(), target);
+            return new ContactDTO(target.getId(), target.getUsername(), ContactStatus.ACCEPTED.name());
+        } else if (edge.incoming() == ContactStatus.ACCEPTED) {
+            // ensure my side exists as ACCEPTED
+            insert(me, principal.getName(), target, ContactStatus.ACCEPTED);
+            publish(me, principal.getName(), ContactEventDTO.CONTACT, target.getId(), target.getUsername(), ContactStatus.ACCEPTED);
+            return new ContactDTO(target.getId(), target.getUsername(), ContactStatus.ACCEPTED.name());
+        } else if (edge.incoming() == ContactStatus.BLOCKED) {
+            throw new IllegalArgumentException("cannot add contact: blocked");
         }
 
         // Create only my directed relation as PENDING (do NOT create reverse entry)
-        ContactRelation a = new ContactRelation(me, target, ContactStatus.PENDING);
-        contacts.save(a);
-        return new ContactDTO(target.getId(), target.getUsername(), a.getStatus().name());
+        insert(me, principal.getName(), target, ContactStatus.PENDING);
+        // outgoing requests aren't listed, so only the target sees a change
+        publish(target.getId(), target.getUsername(), ContactEventDTO.REQUEST, me, principal.getName(), ContactStatus.PENDING);
+        return new ContactDTO(target.getId(), target.getUsername(), ContactStatus.PENDING.name());
     }
 
     @Transactional
     public ContactDTO accept(String usernameOrId, Principal principal) {
-        UserAccount me = requireUser(principal);
+        long me = requireUserId(principal);
         UserAccount other = resolveUser(usernameOrId);
         if (other == null) throw new IllegalArgumentException("user not found");
         // Must have a pending incoming request from 'other' to 'me'
-        ContactRelation incoming = contacts.findByUserAndContact(other, me)
-                .orElseThrow(() -> new IllegalArgumentException("no request found"));
-        if (incoming.getStatus() != ContactStatus.PENDING) {
+        ContactGraph.Edge edge = graph.edge(me, other.getId());
+        if (edge.incoming() == null) throw new IllegalArgumentException("no request found");
+        if (edge.incoming() != ContactStatus.PENDING) {
             throw new IllegalArgumentException("no pending request to accept");
         }
 
-        Optional<ContactRelation> mineOpt = contacts.findByUserAndContact(me, other);
-
         // Guard: Only the recipient of the original request can accept.
         // If my relation exists and predates the incoming one, I was the requester; reject.
-        if (mineOpt.isPresent() && mineOpt.get().getStatus() == ContactStatus.PENDING
-                && mineOpt.get().getCreatedAt().isBefore(incoming.getCreatedAt())) {
+        if (edge.outgoing() == ContactStatus.PENDING && edge.outgoingAt() < edge.incomingAt()) {
             throw new IllegalArgumentException("only the recipient can accept this request");
         }
 
-        ContactRelation mine = mineOpt.orElseGet(() -> new ContactRelation(me, other, ContactStatus.PENDING));
-
-        incoming.setStatus(ContactStatus.ACCEPTED);
-        mine.setStatus(ContactStatus.ACCEPTED);
-        contacts.save(incoming);
-        contacts.save(mine);
+        updateStatus(other.getId(), other.getUsername(), me, principal.getName(), ContactStatus.ACCEPTED, edge.incomingAt());
+        if (edge.outgoing() != null) {
+            updateStatus(me, principal.getName(), other.getId(), other.getUsername(), ContactStatus.ACCEPTED, edge.outgoingAt());
+        } else {
+            insert(me, principal.getName(), other, ContactStatus.ACCEPTED);
+        }
+        publishAccepted(me, principal.getName(), other);
         return new ContactDTO(other.getId(), other.getUsername(), "ACCEPTED");
     }
 
     @Transactional
     public void remove(String usernameOrId, Principal principal) {
-        UserAccount me = requireUser(principal);
+        long me = requireUserId(principal);
         UserAccount other = resolveUser(usernameOrId);
         if (other == null) return;
-        contacts.findByUserAndContact(me, other).ifPresent(c -> contacts.delete(c));
-        contacts.findByUserAndContact(other, me).ifPresent(c -> contacts.delete(c));
+        if (contacts.deletePair(me, other.getId()) > 0) {
+            afterCommit(() -> graph.removePair(me, other.getId()));
+            publish(me, principal.getName(), ContactEventDTO.REMOVED, other.getId(), other.getUsername(), null);
+            publish(other.getId(), other.getUsername(), ContactEventDTO.REMOVED, me, principal.getName(), null);
+        }
+    }
+
+    private void insert(long me, String myName, UserAccount target, ContactStatus status) {
+        ContactRelation saved = contacts.save(new ContactRelation(users.getReferenceById(me), target, status));
+        long createdAt = saved.getCreatedAt().toEpochMilli();
+        afterCommit(() -> graph.put(me, myName, target.getId(), target.getUsername(), status, createdAt));
+    }
+
+    private void updateStatus(long from, String fromName, long to, String toName, ContactStatus status, long createdAt) {
+        contacts.updateStatus(from, to, status);
+        afterCommit(() -> graph.put(from, fromName, to, toName, status, createdAt));
+    }
+
+    private void publishAccepted(long me, String myName, UserAccount other) {
+        publish(me, myName, ContactEventDTO.CONTACT, other.getId(), other.getUsername(), ContactStatus.ACCEPTED);
+        publish(other.getId(), other.getUsername(), ContactEventDTO.CONTACT, me, myName, ContactStatus.ACCEPTED);
+    }
+
+    /** Sends {@code userId} the change to {@code peer} once committed, after the graph has it. */
+    private void publish(long userId, String username, String type, long peerId, String peerName, ContactStatus status) {
+        ContactDTO contact = new ContactDTO(peerId, peerName, status == null ? null : status.name());
+        afterCommit(() -> events.publish(userId, username, type, contact));
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     private UserAccount resolveUser(String usernameOrId) {
@@ -0,0 +1,183 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.model.ChatRoom;
+import io.turtlemessenger.model.UserAccount;
+import io.turtlemessenger.repository.ChatRoomRepository;
+import io.turtlemessenger.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process identity cache for the message write path: which rooms exist, and which user id
+ * a username maps to. Hits hand out JPA references without touching the database.
+ *
+ * Both maps are bounded LRU. Unknown usernames are cached too, for {@code negative-ttl-millis},
+ * and {@link #invalidateUser} is called when an account is created. Rooms are never deleted, so a
+ * known room stays valid until it is evicted.
+ */
+@Component
+public class IdentityCache {
+    public record Stats(long roomHits, long roomMisses, long userHits, long userMisses, int rooms, int users) {}
+
+    private record UserEntry(Long id, long expiresAt) {}
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatRoomRepository rooms;
+    private final UserRepository users;
+    private final long negativeTtlMillis;
+    private final Map<Long, Boolean> knownRooms;
+    private final Map<String, UserEntry> userIds;
+    private final Object[] roomLocks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong roomHits = new AtomicLong();
+    private final AtomicLong roomMisses = new AtomicLong();
+    private final AtomicLong userHits = new AtomicLong();
+    private final AtomicLong userMisses = new AtomicLong();
+
+    public IdentityCache(ChatRoomRepository rooms, UserRepository users,
+                         @Value("${tm.identity-cache.max-rooms:10000}") int maxRooms,
+                         @Value("${tm.identity-cache.max-users:100000}") int maxUsers,
+                         @Value("${tm.identity-cache.negative-ttl-millis:30000}") long negativeTtlMillis) {
+        this.rooms = rooms;
+        this.users = users;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.knownRooms = lru(maxRooms);
+        this.userIds = lru(maxUsers);
+        for (int i = 0; i < LOCK_STRIPES; i++) roomLocks[i] = new Object();
+    }
+
+    /** Makes sure the room row exists, creating it at most once per id. */
+    public void ensureRoom(long roomId) {
+        if (isKnownRoom(roomId)) {
+            roomHits.incrementAndGet();
+            return;
+        }
+        // Only one thread per stripe issues the insert; INSERT OR IGNORE covers other instances
+        synchronized (roomLocks[(int) (Long.hashCode(roomId) & (LOCK_STRIPES - 1))]) {
+            if (isKnownRoom(roomId)) {
+                roomHits.incrementAndGet();
+                return;
+            }
+            roomMisses.incrementAndGet();
+            rooms.insertIfAbsent(roomId, "Room " + roomId, Instant.now());
+            synchronized (knownRooms) {
+                knownRooms.put(roomId, Boolean.TRUE);
+            }
+        }
+    }
+
+    public void ensureRooms(Collection<Long> roomIds) {
+        for (Long roomId : roomIds) ensureRoom(roomId);
+    }
+
+    public ChatRoom roomReference(long roomId) {
+        ensureRoom(roomId);
+        return rooms.getReferenceById(roomId);
+    }
+
+    /** The user id for a username, or null if there is no such account. */
+    public Long userId(String username) {
+        UserEntry cached = cachedUser(username);
+        if (cached != null) {
+            userHits.incrementAndGet();
+            return cached.id();
+        }
+        userMisses.incrementAndGet();
+        Long id = users.findIdByUsername(username).orElse(null);
+        putUser(username, id);
+        return id;
+    }
+
+    /** Resolves many usernames at once; unknown usernames are absent from the result. */
+    public Map<String, Long> userIds(Collection<String> usernames) {
+        Map<String, Long> out = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String username : usernames) {
+            UserEntry cached = cachedUser(username);
+            if (cached == null) {
+                missing.add(username);
+            } else if (cached.id() != null) {
+                out.put(username, cached.id());
+            }
+        }
+        userHits.addAndGet(usernames.size() - missing.size());
+        if (missing.isEmpty()) return out;
+        userMisses.addAndGet(missing.size());
+        Map<String, Long> found = new HashMap<>();
+        for (Object[] row : users.findIdsByUsernameIn(missing)) {
+            found.put((String) row[1], ((Number) row[0]).longValue());
+        }
+        for (String username : missing) {
+            Long id = found.get(username);
+            putUser(username, id);
+            if (id != null) out.put(username, id);
+        }
+        return out;
+    }
+
+    public UserAccount userReference(String username) {
+        Long id = userId(username);
+        return id == null ? null : users.getReferenceById(id);
+    }
+
+    public void invalidateUser(String username) {
+        synchronized (userIds) {
+            userIds.remove(username);
+        }
+    }
+
+    public Stats stats() {
+        int roomCount;
+        int userCount;
+        synchronized (knownRooms) {
+            roomCount = knownRooms.size();
+        }
+        synchronized (userIds) {
+            userCount = userIds.size();
+        }
+        return new Stats(roomHits.get(), roomMisses.get(), userHits.get(), userMisses.get(), roomCount, userCount);
+    }
+
+    private boolean isKnownRoom(long roomId) {
+        synchronized (knownRooms) {
+            return knownRooms.containsKey(roomId);
+        }
+    }
+
+    private UserEntry cachedUser(String username) {
+        synchronized (userIds) {
+            UserEntry e = userIds.get(username);
+            if (e != null && e.id() == null && e.expiresAt() < System.currentTimeMillis()) {
+                userIds.remove(username);
+                return null;
+            }
+            return e;
+        }
+    }
+
+    private void putUser(String username, Long id) {
+        UserEntry e = new UserEntry(id, id == null ? System.currentTimeMillis() + negativeTtlMillis : Long.MAX_VALUE);
+        synchronized (userIds) {
+            userIds.put(username, e);
+        }
+    }
+
+    private static <K, V> Map<K, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
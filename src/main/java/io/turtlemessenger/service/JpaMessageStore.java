@@ -0,0 +1,118 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.Message;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.repository.MessageBatchWriter;
+import io.turtlemessenger.repository.MessageCursor;
+import io.turtlemessenger.repository.MessageRepository;
+import io.turtlemessenger.repository.MessageSequences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Messages in the SQLite messages table: single saves through JPA, write-behind batches through
+ * {@link MessageBatchWriter}, history as keyset pages projected straight into DTOs.
+ *
+ * Rows written before messages were numbered get sequence numbers once, on start.
+ */
+@Service
+@ConditionalOnProperty(name = "tm.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaMessageStore implements MessageStore {
+    private static final Logger log = LoggerFactory.getLogger(JpaMessageStore.class);
+
+    private final MessageRepository messages;
+    private final MessageBatchWriter writer;
+    private final IdentityCache identities;
+    private final MessageSequences sequences;
+    private final MessageCursor cursor;
+
+    public JpaMessageStore(MessageRepository messages, MessageBatchWriter writer, IdentityCache identities,
+                           MessageSequences sequences, MessageCursor cursor) {
+        this.messages = messages;
+        this.writer = writer;
+        this.identities = identities;
+        this.sequences = sequences;
+        this.cursor = cursor;
+        numberExistingRows();
+    }
+
+    private void numberExistingRows() {
+        long numbered = 0;
+        for (long roomId : sequences.unnumberedRooms()) numbered += sequences.numberRoom(roomId);
+        if (numbered > 0) log.info("Assigned room sequence numbers to {} existing messages", numbered);
+    }
+
+    @Override
+    @Transactional
+    public MessageDTO append(PendingMessage message) {
+        Message m = new Message();
+        m.setRoom(identities.roomReference(message.roomId()));
+        m.setSenderUser(identities.userReference(message.senderUsername()));
+        m.setSenderUsername(message.senderUsername());
+        m.setContent(message.content());
+        m.setCreatedAt(message.createdAt());
+        if (message.seq() > 0) m.setSeq(message.seq());
+        Message saved = messages.save(m);
+        if (message.seq() > 0) sequences.advance(message.roomId(), message.seq());
+        return new MessageDTO(saved.getId(), message.roomId(), saved.getSenderUsername(), saved.getContent(),
+                saved.getCreatedAt(), saved.getSeq());
+    }
+
+    @Override
+    public long[] appendBatch(List<PendingMessage> batch) {
+        Set<Long> roomIds = new HashSet<>();
+        Set<String> senders = new HashSet<>();
+        for (PendingMessage m : batch) {
+            roomIds.add(m.roomId());
+            senders.add(m.senderUsername());
+        }
+        identities.ensureRooms(roomIds);
+        return writer.insert(batch, identities.userIds(senders));
+    }
+
+    @Override
+    public List<MessageDTO> latest(long roomId, int limit) {
+        return messages.findLatestPage(roomId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<MessageDTO> before(long roomId, long beforeId, int limit) {
+        return messages.findPageBefore(roomId, beforeId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<MessageDTO> after(long roomId, long afterId, int limit) {
+        return messages.findPageAfter(roomId, afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<MessageDTO> beforeCreatedAt(long roomId, Instant before, int limit) {
+        return messages.findPageBeforeCreatedAt(roomId, before, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<MessageDTO> afterSeq(long roomId, long afterSeq, int limit) {
+        return messages.findPageAfterSeq(roomId, afterSeq, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public long lastSeq(long roomId) {
+        return sequences.lastSeq(roomId);
+    }
+
+    @Override
+    public void scan(long roomId, long afterId, Consumer<MessageDTO> sink) {
+        cursor.scan(roomId, afterId, sink);
+    }
+}
@@ -0,0 +1,323 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.repository.JdbcTimestamps;
+import io.turtlemessenger.repository.MessageLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * {@code tm.store=log}: every room is a {@link MessageLog} under {@code tm.store.log.dir}.
+ * Ids come from one counter, seeded past everything in the logs and the messages table, and are
+ * taken under the room's lock so they grow within each room.
+ *
+ * Appends land in the page cache and survive a process crash right away. A flusher thread forces
+ * dirty logs to disk every {@code fsync-millis}, one fsync per log for everything appended in that
+ * window; with {@code sync-writes} the append also waits for that flush.
+ *
+ * Segments are mapped only while in use, at most {@code max-open-segments} across all rooms, so
+ * opening every room at startup reads just the segment indexes and the last segment of each.
+ *
+ * With {@code migrate} set and no logs on disk yet, the messages table is copied into the logs,
+ * ids included, before the store starts serving.
+ */
+@Service
+@ConditionalOnProperty(name = "tm.store", havingValue = "log")
+public class LogMessageStore implements MessageStore, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(LogMessageStore.class);
+    private static final int MIGRATION_PAGE = 1000;
+    private static final int SCAN_PAGE = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final long fsyncMillis;
+    private final boolean syncWrites;
+    private final boolean migrate;
+    private final MessageLog.OpenSegments openSegments;
+
+    private final ConcurrentHashMap<Long, MessageLog> rooms = new ConcurrentHashMap<>();
+    private final Set<MessageLog> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+    private final Object flushed = new Object();
+    private long durable;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public LogMessageStore(JdbcTemplate jdbc,
+                           @Value("${tm.store.log.dir:message-log}") String dir,
+                           @Value("${tm.store.log.segment-bytes:8388608}") int segmentBytes,
+                           @Value("${tm.store.log.index-interval-bytes:4096}") int indexInterval,
+                           @Value("${tm.store.log.fsync-millis:100}") long fsyncMillis,
+                           @Value("${tm.store.log.sync-writes:false}") boolean syncWrites,
+                           @Value("${tm.store.log.migrate:false}") boolean migrate,
+                           @Value("${tm.store.log.max-open-segments:256}") int maxOpenSegments) {
+        if (segmentBytes < 4096 || indexInterval <= 0 || maxOpenSegments < 1) {
+            throw new IllegalArgumentException("tm.store.log.segment-bytes must be at least 4096, index-interval-bytes and max-open-segments positive");
+        }
+        this.jdbc = jdbc;
+        this.dir = Path.of(dir);
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.fsyncMillis = Math.max(1, fsyncMillis);
+        this.syncWrites = syncWrites;
+        this.migrate = migrate;
+        this.openSegments = new MessageLog.OpenSegments(maxOpenSegments);
+    }
+
+    @Override
+    public MessageDTO append(PendingMessage message) {
+        long id = write(message);
+        if (syncWrites) awaitDurable(appended.get());
+        return new MessageDTO(id, message.roomId(), message.senderUsername(), message.content(),
+                message.createdAt().toEpochMilli(), message.seq() > 0 ? message.seq() : null);
+    }
+
+    @Override
+    public long[] appendBatch(List<PendingMessage> batch) {
+        long[] out = new long[batch.size()];
+        for (int i = 0; i < out.length; i++) out[i] = write(batch.get(i));
+        if (syncWrites) awaitDurable(appended.get());
+        return out;
+    }
+
+    @Override
+    public List<MessageDTO> latest(long roomId, int limit) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? List.of() : room.before(Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<MessageDTO> before(long roomId, long beforeId, int limit) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? List.of() : room.before(beforeId, limit);
+    }
+
+    @Override
+    public List<MessageDTO> after(long roomId, long afterId, int limit) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? List.of() : room.after(afterId, limit);
+    }
+
+    @Override
+    public List<MessageDTO> beforeCreatedAt(long roomId, Instant before, int limit) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? List.of() : room.beforeCreatedAt(before.toEpochMilli(), limit);
+    }
+
+    @Override
+    public List<MessageDTO> afterSeq(long roomId, long afterSeq, int limit) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? List.of() : room.afterSeq(afterSeq, limit);
+    }
+
+    @Override
+    public long lastSeq(long roomId) {
+        MessageLog room = rooms.get(roomId);
+        return room == null ? 0 : room.lastSeq();
+    }
+
+    @Override
+    public void scan(long roomId, long afterId, Consumer<MessageDTO> sink) {
+        MessageLog room = rooms.get(roomId);
+        if (room == null) return;
+        long cursor = afterId;
+        while (true) {
+            List<MessageDTO> page = room.after(cursor, SCAN_PAGE);
+            page.forEach(sink);
+            if (page.size() < SCAN_PAGE) return;
+            cursor = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private long write(PendingMessage m) {
+        MessageLog room = room(m.roomId());
+        long id;
+        synchronized (room) {
+            id = ids.incrementAndGet();
+            try {
+                room.append(id, m.seq(), m.createdAt().toEpochMilli(), m.senderUsername(), m.content());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        // marked dirty before the sequence moves, so a flush that covers the sequence covers the write
+        dirty.add(room);
+        appended.incrementAndGet();
+        return id;
+    }
+
+    private MessageLog room(long roomId) {
+        return rooms.computeIfAbsent(roomId, id -> {
+            try {
+                return MessageLog.open(id, dir.resolve(Long.toString(id)), segmentBytes, indexInterval, openSegments);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void awaitDurable(long seq) {
+        synchronized (flushed) {
+            while (durable < seq && running) {
+                try {
+                    flushed.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        long seq = appended.get();
+        for (MessageLog room : dirty) {
+            dirty.remove(room);
+            room.force();
+        }
+        synchronized (flushed) {
+            durable = seq;
+            flushed.notifyAll();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                Thread.sleep(fsyncMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Message log flush failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void openAll() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path p : list.filter(Files::isDirectory).toList()) {
+                String name = p.getFileName().toString();
+                if (!name.matches("-?\\d+")) continue;
+                room(Long.parseLong(name));
+            }
+        }
+        long seed = rooms.values().stream().mapToLong(MessageLog::lastId).max().orElse(0);
+        Long tableMax = jdbc.queryForObject("SELECT coalesce(max(id), 0) FROM messages", Long.class);
+        if (rooms.isEmpty() && migrate) seed = Math.max(seed, migrateTable());
+        ids.set(Math.max(seed, tableMax == null ? 0 : tableMax));
+        log.info("Message log open: {} rooms under {}, next id {}", rooms.size(), dir.toAbsolutePath(), ids.get() + 1);
+    }
+
+    /**
+     * Copies the messages table into the logs in (room, id) order; returns the highest id copied.
+     * Rows without a sequence number are numbered after the highest one before them in the room.
+     */
+    private long migrateTable() throws IOException {
+        long lastRoom = Long.MIN_VALUE;
+        long lastId = 0;
+        long lastSeq = 0;
+        long copied = 0;
+        long maxId = 0;
+        while (true) {
+            List<MessageDTO> page = jdbc.query(
+                    "SELECT id, room_id, sender_username, text, created_at, seq FROM messages "
+                            + "WHERE room_id > ? OR (room_id = ? AND id > ?) ORDER BY room_id, id LIMIT ?",
+                    (rs, i) -> {
+                        // the driver can't read a NULL as a Long
+                        long seq = rs.getLong("seq");
+                        Long seqOrNull = rs.wasNull() ? null : seq;
+                        return new MessageDTO(rs.getLong("id"), rs.getLong("room_id"), rs.getString("sender_username"),
+                                rs.getString("text"), JdbcTimestamps.read(rs, "created_at"), seqOrNull);
+                    },
+                    lastRoom, lastRoom, lastId, MIGRATION_PAGE);
+            for (MessageDTO m : page) {
+                if (m.getRoomId() != lastRoom) lastSeq = 0;
+                lastSeq = m.getSeq() != null ? Math.max(lastSeq, m.getSeq()) : lastSeq + 1;
+                room(m.getRoomId()).append(m.getId(), m.getSeq() != null ? m.getSeq() : lastSeq, m.getTs(), m.getSenderId(),
+                        m.getContent() == null ? "" : m.getContent());
+                maxId = Math.max(maxId, m.getId());
+                lastRoom = m.getRoomId();
+            }
+            copied += page.size();
+            if (page.size() < MIGRATION_PAGE) break;
+            lastId = page.get(page.size() - 1).getId();
+        }
+        for (MessageLog room : rooms.values()) room.force();
+        log.info("Migrated {} messages from the messages table into {} room logs", copied, rooms.size());
+        return maxId;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        try {
+            openAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "tm-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (MessageLog room : rooms.values()) {
+            try {
+                room.close();
+            } catch (IOException e) {
+                log.warn("Closing message log of room {}: {}", room.roomId(), e.getMessage());
+            }
+        }
+        synchronized (flushed) {
+            flushed.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // open before the write-behind drainer starts, close after it has flushed
+        return SmartLifecycle.DEFAULT_PHASE - 8192;
+    }
+}
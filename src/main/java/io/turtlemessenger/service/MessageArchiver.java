@@ -0,0 +1,233 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.RetentionDTO;
+import io.turtlemessenger.model.RoomRetention;
+import io.turtlemessenger.repository.MessageArchive;
+import io.turtlemessenger.repository.RoomRetentionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Background retention for the messages table. Every {@code interval-seconds} it walks all rooms:
+ * rows older than the room's hot window move to the monthly archive files, and rows older than
+ * its retention period are deleted from both. Work is done {@code chunk-size} rows at a time with
+ * a {@code pause-millis} gap, so the writer connection is only ever held for one short chunk, and
+ * freed pages are handed back with incremental_vacuum after each chunk.
+ */
+@Service
+public class MessageArchiver implements SmartLifecycle {
+    public record Stats(long archived, long deleted, long passes, long failedPasses) {}
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiver.class);
+
+    private final MessageArchive archive;
+    private final RoomRetentionRepository policies;
+    private final RecentMessageCache recent;
+    private final RoomVersions versions;
+    private final boolean enabled;
+    private final int defaultHotDays;
+    private final int defaultRetainDays;
+    private final long intervalMillis;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final int vacuumPages;
+    private final Set<String> admins;
+
+    private final AtomicLong archived = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong failedPasses = new AtomicLong();
+    private final Object sleeper = new Object();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public MessageArchiver(MessageArchive archive,
+                           RoomRetentionRepository policies,
+                           RecentMessageCache recent,
+                           RoomVersions versions,
+                           @Value("${tm.archive.enabled:true}") boolean enabled,
+                           @Value("${tm.archive.hot-days:30}") int defaultHotDays,
+                           @Value("${tm.archive.retain-days:0}") int defaultRetainDays,
+                           @Value("${tm.archive.interval-seconds:600}") long intervalSeconds,
+                           @Value("${tm.archive.chunk-size:500}") int chunkSize,
+                           @Value("${tm.archive.pause-millis:50}") long pauseMillis,
+                           @Value("${tm.archive.vacuum-pages:256}") int vacuumPages,
+                           @Value("${tm.archive.admins:}") Set<String> admins) {
+        if (chunkSize <= 0 || chunkSize > 900) throw new IllegalArgumentException("tm.archive.chunk-size must be between 1 and 900");
+        this.archive = archive;
+        this.policies = policies;
+        this.recent = recent;
+        this.versions = versions;
+        this.enabled = enabled;
+        this.defaultHotDays = defaultHotDays;
+        this.defaultRetainDays = defaultRetainDays;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(Math.max(1, intervalSeconds));
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.vacuumPages = vacuumPages;
+        this.admins = admins.stream().map(String::trim).filter(a -> !a.isEmpty()).collect(Collectors.toUnmodifiableSet());
+    }
+
+    public RetentionDTO policy(long roomId) {
+        return effective(policies.findById(roomId).orElse(null));
+    }
+
+    /** Retention decides when messages are deleted, so only the users in {@code tm.archive.admins} may change it. */
+    public boolean mayUpdatePolicy(String username) {
+        return username != null && admins.contains(username);
+    }
+
+    /** Stores the room's overrides; a null field goes back to the configured default. */
+    public RetentionDTO updatePolicy(long roomId, RetentionDTO update) {
+        if ((update.hotDays() != null && update.hotDays() < 0) || (update.retainDays() != null && update.retainDays() < 0)) {
+            throw new IllegalArgumentException("retention days must not be negative");
+        }
+        RoomRetention policy = policies.findById(roomId).orElseGet(() -> new RoomRetention(roomId));
+        policy.setHotDays(update.hotDays());
+        policy.setRetainDays(update.retainDays());
+        policy.setUpdatedAt(Instant.now());
+        return effective(policies.save(policy));
+    }
+
+    public Stats stats() {
+        return new Stats(archived.get(), deleted.get(), passes.get(), failedPasses.get());
+    }
+
+    private void pass() {
+        Map<Long, RoomRetention> overrides = policies.findAll().stream()
+                .collect(Collectors.toMap(RoomRetention::getRoomId, Function.identity()));
+        boolean vacuum = archive.incrementalVacuumEnabled();
+        Instant now = Instant.now();
+        for (long roomId : archive.roomIds()) {
+            if (!running) return;
+            RetentionDTO policy = effective(overrides.get(roomId));
+            if (policy.retainDays() > 0) expire(roomId, now.minus(Duration.ofDays(policy.retainDays())), vacuum);
+            if (policy.hotDays() > 0) archiveOlderThan(roomId, now.minus(Duration.ofDays(policy.hotDays())), vacuum);
+        }
+    }
+
+    private void archiveOlderThan(long roomId, Instant cutoff, boolean vacuum) {
+        while (running) {
+            List<MessageArchive.Candidate> rows = archive.hotRowsBefore(roomId, cutoff, chunkSize);
+            if (rows.isEmpty()) return;
+            archive.move(roomId, rows);
+            versions.bump(roomId);
+            archived.addAndGet(rows.size());
+            afterChunk(vacuum);
+            if (rows.size() < chunkSize) return;
+        }
+    }
+
+    private void expire(long roomId, Instant cutoff, boolean vacuum) {
+        long removed = 0;
+        int n;
+        do {
+            n = archive.deleteHotBefore(roomId, cutoff, chunkSize);
+            removed += n;
+            if (n > 0) afterChunk(vacuum);
+        } while (n == chunkSize && running);
+        for (String bucket : archive.bucketsUpTo(roomId, cutoff)) {
+            do {
+                n = archive.deleteArchivedBefore(roomId, bucket, cutoff, chunkSize, vacuumPages);
+                removed += n;
+                if (n > 0) pause();
+            } while (n == chunkSize && running);
+        }
+        if (removed > 0) {
+            deleted.addAndGet(removed);
+            // the ring buffer may still hold some of them
+            recent.invalidate(roomId);
+            versions.bump(roomId);
+        }
+    }
+
+    private void afterChunk(boolean vacuum) {
+        if (vacuum) archive.vacuumMain(vacuumPages);
+        pause();
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) return;
+        synchronized (sleeper) {
+            try {
+                if (running) sleeper.wait(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private RetentionDTO effective(RoomRetention policy) {
+        Integer hot = policy == null ? null : policy.getHotDays();
+        Integer retain = policy == null ? null : policy.getRetainDays();
+        return new RetentionDTO(hot != null ? hot : defaultHotDays, retain != null ? retain : defaultRetainDays);
+    }
+
+    private void loop() {
+        if (!archive.incrementalVacuumEnabled()) {
+            log.info("Database auto_vacuum is not INCREMENTAL; archived space is reused but the file won't shrink "
+                    + "until a one-off VACUUM is run with the application stopped");
+        }
+        while (running) {
+            try {
+                pass();
+                passes.incrementAndGet();
+            } catch (RuntimeException e) {
+                failedPasses.incrementAndGet();
+                log.error("Archive pass failed: {}", e.getMessage(), e);
+            }
+            synchronized (sleeper) {
+                try {
+                    if (running) sleeper.wait(intervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || !enabled) return;
+        running = true;
+        worker = new Thread(this::loop, "tm-archiver");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        synchronized (sleeper) {
+            sleeper.notifyAll();
+        }
+        try {
+            // a chunk in flight finishes; the pass stops before the next one
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
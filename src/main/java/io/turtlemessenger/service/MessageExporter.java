@@ -0,0 +1,126 @@
+package io.turtlemessenger.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.repository.MessageArchive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a room's history as NDJSON, one message per line in the JSON shape of the history
+ * API, oldest id first. Rows come from {@link MessageStore#scan} as they are read; archived
+ * months are merged in by id a page at a time, so memory stays flat for any room size.
+ *
+ * Messages still queued for write-behind are not included. At most {@code max-concurrent}
+ * exports run at once, as each holds a read cursor for its whole duration.
+ */
+@Service
+public class MessageExporter {
+    private static final int ARCHIVE_PAGE = 1000;
+
+    private final MessageStore store;
+    private final MessageArchive archive;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+    private final Semaphore slots;
+
+    public MessageExporter(MessageStore store, MessageArchive archive, ObjectMapper mapper,
+                           @Value("${tm.export.max-concurrent:2}") int maxConcurrent) {
+        this.store = store;
+        this.archive = archive;
+        this.mapper = mapper;
+        // the response buffer decides when bytes go out, not every row
+        this.writer = mapper.writerFor(MessageDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /** Takes an export slot; false if all are in use. Release it with {@link #release}. */
+    public boolean tryAcquire() {
+        return slots.tryAcquire();
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    /** Writes the room's messages with an id above {@code afterId}; returns how many. */
+    public long export(long roomId, long afterId, OutputStream out) throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // lines end in '\n' written below, not in Jackson's default space between root values
+            gen.setRootValueSeparator(null);
+            Merge merge = new Merge(roomId, afterId, gen);
+            try {
+                store.scan(roomId, afterId, merge::hot);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            merge.archivedBelow(Long.MAX_VALUE);
+            return merge.written;
+        }
+    }
+
+    /** Interleaves archived rows, read in pages, with the hot rows pushed by the scan. */
+    private final class Merge {
+        private final long roomId;
+        private final JsonGenerator gen;
+        private List<MessageDTO> page = List.of();
+        private int pos;
+        private long cursor;
+        private boolean exhausted;
+        private long written;
+
+        Merge(long roomId, long afterId, JsonGenerator gen) {
+            this.roomId = roomId;
+            this.gen = gen;
+            this.cursor = afterId;
+            this.exhausted = archive.maxArchivedId(roomId) <= afterId;
+        }
+
+        void hot(MessageDTO m) {
+            try {
+                archivedBelow(m.getId());
+                write(m);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Writes archived rows below {@code id}; an archived copy of {@code id} itself is skipped. */
+        void archivedBelow(long id) throws IOException {
+            while (true) {
+                if (pos == page.size()) {
+                    if (exhausted) return;
+                    page = archive.after(roomId, cursor, ARCHIVE_PAGE);
+                    pos = 0;
+                    exhausted = page.size() < ARCHIVE_PAGE;
+                    if (page.isEmpty()) return;
+                    cursor = page.get(page.size() - 1).getId();
+                }
+                MessageDTO a = page.get(pos);
+                if (a.getId() >= id) {
+                    // the archiver is between copying this row and deleting it from the hot table
+                    if (a.getId() == id) pos++;
+                    return;
+                }
+                write(a);
+                pos++;
+            }
+        }
+
+        private void write(MessageDTO m) throws IOException {
+            writer.writeValue(gen, m);
+            gen.writeRaw('\n');
+            written++;
+        }
+    }
+}
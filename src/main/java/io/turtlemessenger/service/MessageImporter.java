@@ -0,0 +1,127 @@
+package io.turtlemessenger.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.PendingMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk-loads NDJSON in the export format into a room. Lines are parsed as they stream in and
+ * stored {@code batch-size} at a time through {@link MessageStore#appendBatch}, one transaction
+ * per batch. Messages get new ids and the room's next sequence numbers; their sender, content
+ * and timestamp are kept, and their id, room and seq fields are ignored.
+ *
+ * A batch holds the room's sequence lock while it is written, so live sends to that room wait
+ * for it. An import is not atomic: on a malformed line the batches before it stay committed.
+ * Imported messages are not broadcast or rate-limited.
+ */
+@Service
+public class MessageImporter {
+    public record Result(long imported, long firstSeq, long lastSeq) {}
+
+    private static final Logger log = LoggerFactory.getLogger(MessageImporter.class);
+
+    private final MessageStore store;
+    private final RoomSequences sequences;
+    private final RecentMessageCache recent;
+    private final RoomVersions versions;
+    private final ObjectReader reader;
+    private final boolean enabled;
+    private final Set<String> admins;
+    private final int batchSize;
+
+    public MessageImporter(MessageStore store, RoomSequences sequences, RecentMessageCache recent, RoomVersions versions,
+                           ObjectMapper mapper,
+                           @Value("${tm.import.enabled:false}") boolean enabled,
+                           @Value("${tm.import.batch-size:20000}") int batchSize,
+                           @Value("${tm.import.admins:}") Set<String> admins) {
+        this.store = store;
+        this.sequences = sequences;
+        this.recent = recent;
+        this.versions = versions;
+        this.reader = mapper.readerFor(MessageDTO.class);
+        this.enabled = enabled;
+        this.admins = admins;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** An import writes under any sender name into any room, so only the users in {@code tm.import.admins} may run one. */
+    public boolean mayImport(String username) {
+        return username != null && admins.contains(username);
+    }
+
+    public Result importRoom(long roomId, InputStream in) throws IOException {
+        if (!enabled) throw new IllegalStateException("import is disabled");
+        long start = System.nanoTime();
+        long imported = 0;
+        long firstSeq = 0;
+        long lastSeq = 0;
+        List<MessageDTO> rows = new ArrayList<>(batchSize);
+        try (MappingIterator<MessageDTO> lines = reader.readValues(in)) {
+            while (true) {
+                MessageDTO row;
+                try {
+                    if (!lines.hasNextValue()) break;
+                    row = lines.nextValue();
+                } catch (JsonProcessingException e) {
+                    String line = e.getLocation() != null ? String.valueOf(e.getLocation().getLineNr()) : "?";
+                    throw new IllegalArgumentException("malformed message on line " + line
+                            + " after " + imported + " imported messages: " + e.getOriginalMessage());
+                }
+                rows.add(row);
+                if (rows.size() < batchSize) continue;
+                long first = store(roomId, rows);
+                if (firstSeq == 0) firstSeq = first;
+                imported += rows.size();
+                lastSeq = first + rows.size() - 1;
+                rows.clear();
+            }
+            if (!rows.isEmpty()) {
+                long first = store(roomId, rows);
+                if (firstSeq == 0) firstSeq = first;
+                imported += rows.size();
+                lastSeq = first + rows.size() - 1;
+            }
+        }
+        log.info("Imported {} messages into room {} in {} ms", imported, roomId, (System.nanoTime() - start) / 1_000_000);
+        return new Result(imported, firstSeq, lastSeq);
+    }
+
+    /** Stores one batch under the room's next sequence numbers; returns the first of them. */
+    private long store(long roomId, List<MessageDTO> rows) {
+        Long first = sequences.next(roomId, rows.size(), seq -> {
+            List<PendingMessage> batch = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                MessageDTO m = rows.get(i);
+                batch.add(new PendingMessage(roomId,
+                        m.getSenderId() != null ? m.getSenderId() : "anonymous",
+                        m.getContent() == null ? "" : m.getContent(),
+                        m.getTs() > 0 ? Instant.ofEpochMilli(m.getTs()) : Instant.now(),
+                        seq + i));
+            }
+            store.appendBatch(batch);
+            return seq;
+        });
+        // the new rows sort after everything the buffer holds, so rebuild it on the next read
+        recent.invalidate(roomId);
+        versions.bump(roomId);
+        return first;
+    }
+}
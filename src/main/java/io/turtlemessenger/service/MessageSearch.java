@@ -0,0 +1,130 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.config.MessagingMetrics;
+import io.turtlemessenger.dto.SearchHitDTO;
+import io.turtlemessenger.repository.MessageSearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text search over room history. On start it installs the FTS5 index; if messages predate
+ * it, a background thread indexes them {@code backfill-chunk} rows per transaction with
+ * {@code backfill-pause-millis} in between, resuming where it stopped after a restart. Until
+ * that finishes, older messages are missing from results.
+ */
+@Service
+public class MessageSearch implements SmartLifecycle {
+    public record Page(List<SearchHitDTO> hits, Integer nextPage) {}
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSearch.class);
+    private static final int MAX_TERMS = 16;
+
+    private final MessageSearchIndex index;
+    private final MessagingMetrics metrics;
+    private final boolean enabled;
+    private final int backfillChunk;
+    private final long backfillPauseMillis;
+
+    private volatile boolean running;
+    private Thread backfill;
+
+    public MessageSearch(MessageSearchIndex index,
+                         MessagingMetrics metrics,
+                         @Value("${tm.search.enabled:true}") boolean enabled,
+                         @Value("${tm.search.backfill-chunk:5000}") int backfillChunk,
+                         @Value("${tm.search.backfill-pause-millis:20}") long backfillPauseMillis) {
+        this.index = index;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.backfillChunk = Math.max(1, backfillChunk);
+        this.backfillPauseMillis = backfillPauseMillis;
+    }
+
+    /**
+     * Searches one room. Every whitespace-separated term of {@code q} must match, the last one
+     * as a prefix so results show up while typing. {@code page} is 0-based.
+     */
+    public Page search(long roomId, String q, Integer page, Integer size) {
+        if (!running) throw new IllegalStateException("search is disabled");
+        String match = matchExpression(q);
+        int limit = (size == null || size <= 0 || size > 100) ? 20 : size;
+        int p = (page == null || page < 0) ? 0 : page;
+        List<SearchHitDTO> hits = metrics.search().record(() -> index.search(roomId, match, limit + 1, p * limit));
+        boolean more = hits.size() > limit;
+        return new Page(more ? hits.subList(0, limit) : hits, more ? p + 1 : null);
+    }
+
+    /** Quotes every term, so FTS5 operators and column filters in user input are plain text. */
+    static String matchExpression(String q) {
+        List<String> terms = new ArrayList<>();
+        if (q != null) {
+            for (String term : q.trim().split("\\s+")) {
+                // terms without letters or digits produce no tokens and would make an empty phrase
+                if (term.codePoints().noneMatch(Character::isLetterOrDigit)) continue;
+                terms.add(term);
+                if (terms.size() == MAX_TERMS) break;
+            }
+        }
+        if (terms.isEmpty()) throw new IllegalArgumentException("q must contain at least one word");
+        StringBuilder match = new StringBuilder();
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0) match.append(' ');
+            match.append('"').append(terms.get(i).replace("\"", "\"\"")).append('"');
+        }
+        return match.append('*').toString();
+    }
+
+    private void backfillLoop() {
+        try {
+            MessageSearchIndex.Progress progress = index.progress();
+            log.info("Indexing existing messages with ids {} to {} for search", progress.builtUpTo() + 1, progress.boundary());
+            while (running && !progress.complete()) {
+                progress = index.backfill(backfillChunk);
+                if (backfillPauseMillis > 0) Thread.sleep(backfillPauseMillis);
+            }
+            if (progress.complete()) {
+                index.optimize();
+                log.info("Search index backfill complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Search index backfill failed, it resumes on the next start: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || !enabled) return;
+        MessageSearchIndex.Progress progress = index.install();
+        running = true;
+        if (progress.complete()) return;
+        backfill = new Thread(this::backfillLoop, "tm-search-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        if (backfill == null) return;
+        // the loop checks the flag between chunks; interrupting could fail a pool checkout mid-chunk
+        try {
+            backfill.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,47 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.PendingMessage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where chat messages live. {@code tm.store=jpa} (default) keeps them in the messages table,
+ * {@code tm.store=log} in per-room append-only segment files. Ids are unique across rooms and
+ * grow within a room, so they work as page cursors with either store. Messages also keep the
+ * sequence number {@link RoomSequences} gave them.
+ */
+public interface MessageStore {
+
+    /** Stores one message and returns it with its id, once it is readable. */
+    MessageDTO append(PendingMessage message);
+
+    /** Stores the batch in order and returns the new ids, index-aligned with the input. */
+    long[] appendBatch(List<PendingMessage> batch);
+
+    /** The newest messages of the room, newest first. */
+    List<MessageDTO> latest(long roomId, int limit);
+
+    /** Messages with an id below {@code beforeId}, newest first. */
+    List<MessageDTO> before(long roomId, long beforeId, int limit);
+
+    /** Messages with an id above {@code afterId}, oldest first. */
+    List<MessageDTO> after(long roomId, long afterId, int limit);
+
+    /** Messages created before {@code before}, newest first. */
+    List<MessageDTO> beforeCreatedAt(long roomId, Instant before, int limit);
+
+    /** Messages with a sequence number above {@code afterSeq}, in sequence order. */
+    List<MessageDTO> afterSeq(long roomId, long afterSeq, int limit);
+
+    /** Highest sequence number the room has stored, 0 if none. */
+    long lastSeq(long roomId);
+
+    /**
+     * Hands every message of the room with an id above {@code afterId} to {@code sink}, oldest
+     * first, without holding more than a bounded window of them in memory.
+     */
+    void scan(long roomId, long afterId, Consumer<MessageDTO> sink);
+}
@@ -0,0 +1,229 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.config.MessagingMetrics;
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.PendingMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind persister for chat messages. Senders only enqueue; a single drainer thread
+ * hands the queue to the {@link MessageStore} in batches (multi-row inserts, one transaction each,
+ * with the JPA store), one per {@code batch-size} messages or per {@code flush-millis},
+ * whichever comes first. Batches go to the store one at a time and in queue order, so ids
+ * follow the order senders were given their seqs in.
+ */
+@Service
+public class MessageWriteBehind implements SmartLifecycle {
+    public enum OverflowPolicy { BLOCK, DROP, CALLER_RUNS }
+
+    public record Stats(int queueDepth, int capacity, long persisted, long batches,
+                        int lastBatchSize, int maxBatchSize, long dropped, long failed) {}
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBehind.class);
+
+    private final MessageStore store;
+    private final RecentMessageCache recent;
+    private final RoomVersions versions;
+    private final MessagingMetrics metrics;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushNanos;
+    private final OverflowPolicy overflow;
+    private final long offerTimeoutMillis;
+
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    // held by the drainer from taking a batch off the queue until it is flushed, and by caller-runs
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile int lastBatchSize;
+
+    private volatile boolean running;
+    private Thread drainer;
+
+    public MessageWriteBehind(MessageStore store,
+                              RecentMessageCache recent,
+                              RoomVersions versions,
+                              MessagingMetrics metrics,
+                              @Value("${tm.chat.write-behind.capacity:10000}") int capacity,
+                              @Value("${tm.chat.write-behind.batch-size:256}") int batchSize,
+                              @Value("${tm.chat.write-behind.flush-millis:20}") long flushMillis,
+                              @Value("${tm.chat.write-behind.overflow:block}") String overflow,
+                              @Value("${tm.chat.write-behind.offer-timeout-millis:50}") long offerTimeoutMillis) {
+        if (capacity <= 0 || batchSize <= 0) throw new IllegalArgumentException("write-behind capacity and batch-size must be positive");
+        this.store = store;
+        this.recent = recent;
+        this.versions = versions;
+        this.metrics = metrics;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.overflow = OverflowPolicy.valueOf(overflow.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    /**
+     * Hands a message to the persister. Returns false if it was dropped because the queue stayed full,
+     * or, with {@code caller-runs}, if the sender's own insert failed.
+     */
+    public boolean submit(PendingMessage message) {
+        if (queue.offer(message)) return true;
+        switch (overflow) {
+            case BLOCK -> {
+                try {
+                    if (queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS)) return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case CALLER_RUNS -> {
+                return flushQueueAnd(message);
+            }
+            case DROP -> { }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public Stats stats() {
+        return new Stats(queue.size(), capacity, persisted.get(), batches.get(),
+                lastBatchSize, maxBatchSize.get(), dropped.get(), failed.get());
+    }
+
+    /** Flushes everything queued ahead of the message, then the message, in the sender's thread. */
+    private boolean flushQueueAnd(PendingMessage message) {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        flushLock.lock();
+        try {
+            while (queue.drainTo(batch, batchSize) > 0) {
+                flush(batch);
+                batch.clear();
+            }
+            batch.add(message);
+            return flush(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            // a caller-run must not overtake a batch already off the queue, so the lock covers both
+            flushLock.lock();
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) break;
+                    PendingMessage next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        flushLock.lock();
+        try {
+            flush(batch);
+            batch.clear();
+            while (queue.drainTo(batch, batchSize) > 0) {
+                flush(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Persists the batch and publishes it to the caches; returns false if the store threw. */
+    private boolean flush(List<PendingMessage> batch) {
+        if (batch.isEmpty()) return true;
+        try {
+            long[] ids = metrics.persistBatch().record(() -> store.appendBatch(batch));
+            long lastRoom = 0;
+            for (int i = 0; i < ids.length; i++) {
+                PendingMessage m = batch.get(i);
+                // consecutive messages of a busy room take one bump
+                if (i == 0 || m.roomId() != lastRoom) versions.bump(m.roomId());
+                lastRoom = m.roomId();
+                recent.append(m.roomId(),
+                        new MessageDTO(ids[i], m.roomId(), m.senderUsername(), m.content(), m.createdAt().toEpochMilli(),
+                                m.seq() > 0 ? m.seq() : null));
+            }
+            persisted.addAndGet(batch.size());
+            batches.incrementAndGet();
+            lastBatchSize = batch.size();
+            maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+            return true;
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("Failed to persist batch of {} messages: {}", batch.size(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        drainer = new Thread(this::drainLoop, "tm-write-behind");
+        drainer.setDaemon(false);
+        drainer.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        // the drainer polls with a short timeout, notices the flag and flushes what is left
+        running = false;
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Write-behind stopped with {} messages still queued", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop after the web server and the STOMP broker so late sends are still flushed
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,281 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.MessagePage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-room ring buffers holding the most recent persisted messages, so history reads for
+ * active rooms don't have to go to SQLite. Rooms are evicted LRU once the estimated size
+ * of all buffers exceeds {@code max-bytes}.
+ *
+ * Buffers are only ever filled with committed rows: either warmed from the database on a
+ * miss, or appended after the inserting transaction commits.
+ */
+@Component
+public class RecentMessageCache {
+    private static final int STAMP_STRIPES = 64;
+
+    private final int perRoom;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LinkedHashMap<Long, RoomBuffer> rooms = new LinkedHashMap<>(256, 0.75f, true);
+    // Bumped for every write to an uncached room so a concurrent warm-up can tell its snapshot is stale
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    public RecentMessageCache(@Value("${tm.chat.history-cache.per-room:200}") int perRoom,
+                              @Value("${tm.chat.history-cache.max-bytes:33554432}") long maxBytes) {
+        this.perRoom = perRoom;
+        this.maxBytes = maxBytes;
+    }
+
+    public int perRoom() {
+        return perRoom;
+    }
+
+    /** The latest page of the room, or null if the buffer can't answer. */
+    public MessagePage latest(long roomId, int limit) {
+        RoomBuffer buf = get(roomId);
+        return buf == null ? null : buf.latest(limit);
+    }
+
+    /** The page right before {@code beforeId}, or null if the buffer can't answer. */
+    public MessagePage before(long roomId, long beforeId, int limit) {
+        RoomBuffer buf = get(roomId);
+        return buf == null ? null : buf.before(beforeId, limit);
+    }
+
+    /** The page right after {@code afterId}, or null if the buffer can't answer. */
+    public MessagePage after(long roomId, long afterId, int limit) {
+        RoomBuffer buf = get(roomId);
+        return buf == null ? null : buf.after(afterId, limit);
+    }
+
+    /** The messages after sequence number {@code afterSeq}, or null if the buffer can't answer. */
+    public MessagePage afterSeq(long roomId, long afterSeq, int limit) {
+        RoomBuffer buf = get(roomId);
+        return buf == null ? null : buf.afterSeq(afterSeq, limit);
+    }
+
+    /** Read before querying the database for a warm-up; pass it back to {@link #warm}. */
+    public long stamp(long roomId) {
+        return stamps.get(stripe(roomId));
+    }
+
+    /**
+     * Installs a buffer from the newest rows of the room, in ascending id order.
+     * Skipped if the room was written to since {@code stamp} was taken. {@code olderElsewhere}
+     * says the room has older messages outside the queried table (the archive), so a short
+     * buffer still doesn't cover the whole room.
+     */
+    public void warm(long roomId, long stamp, List<MessageDTO> rows, boolean olderElsewhere) {
+        if (perRoom <= 0) return;
+        RoomBuffer fresh = new RoomBuffer(perRoom);
+        for (MessageDTO row : rows) fresh.insert(row);
+        fresh.complete = rows.size() < perRoom && !olderElsewhere;
+        synchronized (rooms) {
+            if (rooms.containsKey(roomId) || stamps.get(stripe(roomId)) != stamp) return;
+            rooms.put(roomId, fresh);
+            totalBytes.addAndGet(fresh.bytes);
+        }
+        evictIfNeeded();
+    }
+
+    /** Called once the row is committed. */
+    public void append(long roomId, MessageDTO dto) {
+        RoomBuffer buf;
+        synchronized (rooms) {
+            buf = rooms.get(roomId);
+            if (buf == null) {
+                stamps.incrementAndGet(stripe(roomId));
+                return;
+            }
+        }
+        long delta;
+        synchronized (buf) {
+            if (buf.evicted) return;
+            long before = buf.bytes;
+            buf.insert(dto);
+            delta = buf.bytes - before;
+        }
+        totalBytes.addAndGet(delta);
+        evictIfNeeded();
+    }
+
+    public void invalidate(long roomId) {
+        RoomBuffer buf;
+        synchronized (rooms) {
+            buf = rooms.remove(roomId);
+            stamps.incrementAndGet(stripe(roomId));
+        }
+        if (buf != null) release(buf);
+    }
+
+    public long sizeBytes() {
+        return totalBytes.get();
+    }
+
+    public int roomCount() {
+        synchronized (rooms) {
+            return rooms.size();
+        }
+    }
+
+    private RoomBuffer get(long roomId) {
+        synchronized (rooms) {
+            return rooms.get(roomId);
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (totalBytes.get() > maxBytes) {
+            RoomBuffer victim;
+            synchronized (rooms) {
+                Iterator<Map.Entry<Long, RoomBuffer>> it = rooms.entrySet().iterator();
+                if (!it.hasNext()) return;
+                Map.Entry<Long, RoomBuffer> eldest = it.next();
+                it.remove();
+                stamps.incrementAndGet(stripe(eldest.getKey()));
+                victim = eldest.getValue();
+            }
+            release(victim);
+        }
+    }
+
+    private void release(RoomBuffer buf) {
+        synchronized (buf) {
+            if (buf.evicted) return;
+            buf.evicted = true;
+            totalBytes.addAndGet(-buf.bytes);
+        }
+    }
+
+    private static int stripe(long roomId) {
+        return (int) (Long.hashCode(roomId) & (STAMP_STRIPES - 1));
+    }
+
+    private record Entry(long id, MessageDTO dto, long bytes) {}
+
+    /**
+     * Fixed-capacity ring ordered by message id, like the history queries. Once full, the
+     * oldest entry falls off and the buffer no longer covers the whole room.
+     */
+    private static final class RoomBuffer {
+        private final Entry[] ring;
+        private int head; // index of the oldest entry
+        private int size;
+        private long bytes;
+        private boolean complete;
+        private boolean evicted;
+
+        RoomBuffer(int capacity) {
+            this.ring = new Entry[capacity];
+        }
+
+        private Entry at(int i) {
+            return ring[(head + i) % ring.length];
+        }
+
+        private void set(int i, Entry e) {
+            ring[(head + i) % ring.length] = e;
+        }
+
+        void insert(MessageDTO dto) {
+            long id = dto.getId();
+            // Commits land in id order almost always; walk back only when two commits raced
+            int pos = size;
+            while (pos > 0) {
+                long prev = at(pos - 1).id();
+                if (prev == id) return; // already present (warm-up raced with the append)
+                if (prev < id) break;
+                pos--;
+            }
+            if (size == ring.length) {
+                if (pos == 0) {
+                    complete = false;
+                    return; // older than everything we keep
+                }
+                bytes -= at(0).bytes();
+                set(0, null);
+                head = (head + 1) % ring.length;
+                size--;
+                pos--;
+                complete = false;
+            }
+            for (int i = size; i > pos; i--) set(i, at(i - 1));
+            Entry e = new Entry(id, dto, estimate(dto));
+            set(pos, e);
+            size++;
+            bytes += e.bytes();
+        }
+
+        synchronized MessagePage latest(int limit) {
+            if (evicted || (size < limit && !complete)) return null;
+            return backward(size, limit);
+        }
+
+        synchronized MessagePage before(long beforeId, int limit) {
+            if (evicted) return null;
+            int end = size;
+            while (end > 0 && at(end - 1).id() >= beforeId) end--;
+            if (end < limit && !complete) return null;
+            return backward(end, limit);
+        }
+
+        synchronized MessagePage after(long afterId, int limit) {
+            // Only answerable if nothing newer than afterId can be missing from the ring
+            if (evicted || (!complete && (size == 0 || at(0).id() > afterId))) return null;
+            int start = 0;
+            while (start < size && at(start).id() <= afterId) start++;
+            int end = Math.min(size, start + limit);
+            List<MessageDTO> page = slice(start, end);
+            return new MessagePage(page, end < size ? at(end - 1).id() : null);
+        }
+
+        synchronized MessagePage afterSeq(long afterSeq, int limit) {
+            // the ring is in id order, which sequence order follows closely: it must reach back to afterSeq
+            if (evicted) return null;
+            if (!complete) {
+                Long oldest = size == 0 ? null : at(0).dto().getSeq();
+                if (oldest == null || oldest > afterSeq) return null;
+            }
+            List<MessageDTO> page = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Long seq = at(i).dto().getSeq();
+                if (seq != null && seq > afterSeq) page.add(at(i).dto());
+            }
+            page.sort(Comparator.comparing(MessageDTO::getSeq));
+            if (page.size() <= limit) return new MessagePage(page, null);
+            List<MessageDTO> head = new ArrayList<>(page.subList(0, limit));
+            return new MessagePage(head, head.get(limit - 1).getSeq());
+        }
+
+        private MessagePage backward(int end, int limit) {
+            int from = Math.max(0, end - limit);
+            boolean more = from > 0 || !complete;
+            return new MessagePage(slice(from, end), more && end > from ? at(from).id() : null);
+        }
+
+        private List<MessageDTO> slice(int from, int to) {
+            List<MessageDTO> out = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) out.add(at(i).dto());
+            return out;
+        }
+
+        private static long estimate(MessageDTO dto) {
+            int chars = (dto.getContent() == null ? 0 : dto.getContent().length())
+                    + (dto.getSenderId() == null ? 0 : dto.getSenderId().length());
+            return 96L + 2L * chars;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.turtlemessenger.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Hands out per-room message sequence numbers: 1, 2, 3... in the order messages are accepted,
+ * with no gaps. Each room has its own counter and lock, so rooms never wait on each other; a
+ * counter starts from the highest number the {@link MessageStore} holds for the room.
+ *
+ * A number is only kept once the message has been stored or queued for the write-behind. A
+ * queued batch that then fails to persist leaves a gap, as its messages are lost.
+ */
+@Component
+public class RoomSequences {
+    private static final class Counter {
+        long last = -1;
+    }
+
+    private final MessageStore store;
+    private final ConcurrentHashMap<Long, Counter> rooms = new ConcurrentHashMap<>();
+
+    public RoomSequences(MessageStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Calls {@code write} with the room's next number, under the room's lock so numbers reach the
+     * store or queue in order. The number is given back if {@code write} throws or returns null.
+     */
+    public <T> T next(long roomId, LongFunction<T> write) {
+        return next(roomId, 1, write);
+    }
+
+    /**
+     * Like {@link #next(long, LongFunction)} for {@code count} consecutive numbers, of which
+     * {@code write} gets the first. Other sends to the room wait until {@code write} returns.
+     */
+    public <T> T next(long roomId, int count, LongFunction<T> write) {
+        Counter counter = rooms.computeIfAbsent(roomId, id -> new Counter());
+        synchronized (counter) {
+            if (counter.last < 0) counter.last = store.lastSeq(roomId);
+            T result = write.apply(counter.last + 1);
+            if (result != null) counter.last += count;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.turtlemessenger.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version of every room's history, bumped once a write to it has committed: new
+ * messages, and archiving or retention deletes. History responses are tagged with the version
+ * read before their query, so a tag can be older than the data it came with but never newer.
+ * Versions start over with a new epoch on every run.
+ */
+@Component
+public class RoomVersions {
+    private final long epoch = System.currentTimeMillis();
+    private final ConcurrentHashMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public void bump(long roomId) {
+        versions.computeIfAbsent(roomId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /** Strong ETag value for the room's history as of now. */
+    public String etag(long roomId) {
+        AtomicLong v = versions.get(roomId);
+        return "r" + roomId + "-" + epoch + "-" + (v == null ? 0 : v.get());
+    }
+}
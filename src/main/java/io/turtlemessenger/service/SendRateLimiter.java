@@ -0,0 +1,124 @@
+package io.turtlemessenger.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets for message sends: one per sender and one per room, refilled at
+ * {@code per-second} up to {@code burst}. A send needs a token from both.
+ *
+ * A bucket is a single AtomicLong holding the time at which it would be empty if every token
+ * taken so far had been spent back to back (GCRA), so taking a token is one compare-and-set and
+ * nothing locks. Buckets live in striped concurrent maps. A bucket that has been full for
+ * {@code idle-seconds} is dropped by a sweep of its stripe, run by whichever send first finds
+ * that stripe due; a send racing the sweep may take a token from the dropped bucket for free.
+ */
+@Component
+public class SendRateLimiter {
+    /** A refused send: which bucket was empty and how long until it has a token. */
+    public record Rejection(String scope, long retryAfterNanos) {
+        public long retryAfterMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(retryAfterNanos) + 1;
+        }
+    }
+
+    private static final int STRIPES = 64;
+
+    private final boolean enabled;
+    private final Buckets<String> users;
+    private final Buckets<Long> rooms;
+
+    public SendRateLimiter(@Value("${tm.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${tm.rate-limit.user.per-second:5}") double userRate,
+                           @Value("${tm.rate-limit.user.burst:20}") int userBurst,
+                           @Value("${tm.rate-limit.room.per-second:200}") double roomRate,
+                           @Value("${tm.rate-limit.room.burst:400}") int roomBurst,
+                           @Value("${tm.rate-limit.idle-seconds:120}") long idleSeconds) {
+        if (userRate <= 0 || roomRate <= 0 || userBurst <= 0 || roomBurst <= 0) {
+            throw new IllegalArgumentException("tm.rate-limit rates and bursts must be positive");
+        }
+        long idleNanos = TimeUnit.SECONDS.toNanos(Math.max(1, idleSeconds));
+        this.enabled = enabled;
+        this.users = new Buckets<>(userRate, userBurst, idleNanos);
+        this.rooms = new Buckets<>(roomRate, roomBurst, idleNanos);
+    }
+
+    /**
+     * Takes a token for {@code user} sending to the room. Returns null if the send may go ahead;
+     * a refused send keeps both tokens.
+     */
+    public Rejection check(String user, long roomId) {
+        if (!enabled) return null;
+        long now = System.nanoTime();
+        AtomicLong mine = users.bucket(user, now);
+        long wait = users.take(mine, now);
+        if (wait > 0) return new Rejection("user", wait);
+        wait = rooms.take(rooms.bucket(roomId, now), now);
+        if (wait > 0) {
+            users.refund(mine);
+            return new Rejection("room", wait);
+        }
+        return null;
+    }
+
+    public int trackedBuckets() {
+        return users.size() + rooms.size();
+    }
+
+    private static final class Buckets<K> {
+        private final long interval; // nanos per token
+        private final long capacity; // nanos worth of burst
+        private final long idleNanos;
+        private final ConcurrentHashMap<K, AtomicLong>[] stripes;
+        private final AtomicLongArray nextSweep = new AtomicLongArray(STRIPES);
+
+        @SuppressWarnings("unchecked")
+        Buckets(double perSecond, int burst, long idleNanos) {
+            this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.capacity = interval * burst;
+            this.idleNanos = idleNanos;
+            this.stripes = new ConcurrentHashMap[STRIPES];
+            for (int i = 0; i < STRIPES; i++) stripes[i] = new ConcurrentHashMap<>();
+            long now = System.nanoTime();
+            for (int i = 0; i < STRIPES; i++) nextSweep.set(i, now + idleNanos);
+        }
+
+        AtomicLong bucket(K key, long now) {
+            int s = key.hashCode() & (STRIPES - 1);
+            ConcurrentHashMap<K, AtomicLong> stripe = stripes[s];
+            AtomicLong b = stripe.get(key);
+            if (b == null) b = stripe.computeIfAbsent(key, k -> new AtomicLong(now));
+            long due = nextSweep.get(s);
+            if (now - due >= 0 && nextSweep.compareAndSet(s, due, now + idleNanos)) {
+                stripe.values().removeIf(t -> now - t.get() > idleNanos);
+            }
+            return b;
+        }
+
+        /** 0 once a token is taken, otherwise nanos until one is free. */
+        long take(AtomicLong bucket, long now) {
+            while (true) {
+                long empty = bucket.get();
+                long next = Math.max(empty, now) + interval;
+                long wait = next - now - capacity;
+                if (wait > 0) return wait;
+                if (bucket.compareAndSet(empty, next)) return 0;
+            }
+        }
+
+        void refund(AtomicLong bucket) {
+            bucket.addAndGet(-interval);
+        }
+
+        int size() {
+            int n = 0;
+            for (ConcurrentHashMap<K, AtomicLong> stripe : stripes) n += stripe.size();
+            return n;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.SendErrorDTO;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tells one STOMP session about a send it made that failed, on {@code /user/queue/errors}.
+ * Unlike an ERROR frame this leaves the session connected.
+ */
+@Component
+public class SessionErrors {
+    public static final String DESTINATION = "/queue/errors";
+
+    private final SimpMessagingTemplate messaging;
+
+    public SessionErrors(SimpMessagingTemplate messaging) {
+        this.messaging = messaging;
+    }
+
+    /** Sends to this session only, not to every session of its user. */
+    public void send(String sessionId, SendErrorDTO error) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        // a user name equal to the session id header addresses that session, with or without a principal
+        messaging.convertAndSendToUser(sessionId, DESTINATION, error, headers.getMessageHeaders());
+    }
+}
@@ -0,0 +1,42 @@
+package io.turtlemessenger.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+
+/**
+ * Runs the STOMP client inbound and outbound channels on virtual threads when
+ * {@code spring.threads.virtual.enabled=true}. Only compiled into Java 21 builds (-PvirtualThreads).
+ *
+ * The pool size is just an upper bound on concurrent virtual threads: core threads are created
+ * per task up to that size and time out after a second idle. Database access stays capped by
+ * {@link DatabaseConcurrencyConfig}.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadChannelConfig implements WebSocketMessageBrokerConfigurer {
+    private static final int MAX_THREADS = 10_000;
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(virtualExecutor("stomp-inbound-"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(virtualExecutor("stomp-outbound-"));
+    }
+
+    private static ThreadPoolTaskExecutor virtualExecutor(String namePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadFactory(Thread.ofVirtual().name(namePrefix, 0).factory());
+        executor.setCorePoolSize(MAX_THREADS);
+        executor.setMaxPoolSize(MAX_THREADS);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(1);
+        return executor;
+    }
+}
@@ -2,10 +2,26 @@ package io.turtlemessenger;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @SpringBootTest
 public class TurtleMessengerApplicationTests {
 
+    // the archiver and the search backfill start with the context; keep them off the committed database.db
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-context");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+    }
+
     @Test
     void contextLoads() {
         // Application context loads
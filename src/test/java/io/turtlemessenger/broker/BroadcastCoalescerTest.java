@@ -0,0 +1,150 @@
+package io.turtlemessenger.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BroadcastCoalescerTest {
+    private record Sent(long roomId, Object payload) {}
+
+    private final List<Sent> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final List<Sent> relayed = Collections.synchronizedList(new ArrayList<>());
+    private BroadcastCoalescer coalescer;
+
+    private BroadcastCoalescer start(boolean enabled, Set<Long> pinned, int autoThreshold, long maxDelayMillis, int maxBatch) {
+        coalescer = new BroadcastCoalescer((room, payload) -> delivered.add(new Sent(room, payload)),
+                (room, payload) -> relayed.add(new Sent(room, payload)), enabled, pinned, autoThreshold, maxDelayMillis, maxBatch);
+        coalescer.start();
+        return coalescer;
+    }
+
+    @AfterEach
+    void stop() {
+        if (coalescer != null) coalescer.stop();
+    }
+
+    /** Every message delivered to the room, batches unpacked, in delivery order. */
+    private List<Object> messages(long roomId) {
+        List<Object> out = new ArrayList<>();
+        synchronized (delivered) {
+            for (Sent s : delivered) {
+                if (s.roomId() != roomId) continue;
+                if (s.payload() instanceof List<?> batch) out.addAll(batch);
+                else out.add(s.payload());
+            }
+        }
+        return out;
+    }
+
+    private void awaitDelivered(long roomId, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (messages(roomId).size() < count && System.nanoTime() < deadline) Thread.sleep(1);
+    }
+
+    @Test
+    void disabledSendsEachMessageAtOnce() {
+        BroadcastCoalescer c = start(false, Set.of(1L), 1, 50, 64);
+        for (int i = 0; i < 3; i++) c.broadcast(1, "m" + i);
+        assertEquals(List.of(new Sent(1, "m0"), new Sent(1, "m1"), new Sent(1, "m2")), delivered);
+        assertEquals(delivered, relayed);
+        assertEquals(3, c.stats().immediate());
+    }
+
+    @Test
+    void quietRoomIsNotCoalesced() {
+        BroadcastCoalescer c = start(true, Set.of(), 1_000, 50, 64);
+        c.broadcast(2, "hello");
+        assertEquals(List.of(new Sent(2, "hello")), delivered);
+        assertEquals(0, c.stats().batches());
+    }
+
+    @Test
+    void pinnedRoomFlushesAFullBatchAtOnce() {
+        BroadcastCoalescer c = start(true, Set.of(1L), 0, 10_000, 4);
+        for (int i = 0; i < 4; i++) c.broadcast(1, "m" + i);
+        assertEquals(List.of(new Sent(1, List.of("m0", "m1", "m2", "m3"))), delivered);
+        assertEquals(delivered, relayed);
+        assertEquals(new BroadcastCoalescer.Stats(0, 1, 4), c.stats());
+    }
+
+    @Test
+    void partialBatchGoesOutAfterTheDelay() throws InterruptedException {
+        BroadcastCoalescer c = start(true, Set.of(1L), 0, 20, 64);
+        c.broadcast(1, "a");
+        c.broadcast(1, "b");
+        c.broadcast(1, "c");
+        assertTrue(delivered.isEmpty());
+        awaitDelivered(1, 3);
+        assertEquals(List.of(new Sent(1, List.of("a", "b", "c"))), delivered);
+    }
+
+    @Test
+    void busyRoomStartsCoalescingAndKeepsOrder() throws InterruptedException {
+        BroadcastCoalescer c = start(true, Set.of(), 10, 200, 8);
+        List<Object> sent = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            sent.add(i);
+            c.broadcast(3, i);
+        }
+        awaitDelivered(3, 100);
+        assertEquals(sent, messages(3));
+        // the first messages go out one by one, the rest in batches
+        assertEquals(9, c.stats().immediate());
+        assertEquals(91, c.stats().batchedMessages());
+        assertEquals(delivered, relayed);
+    }
+
+    @Test
+    void sweepDropsOnlyIdleRooms() throws InterruptedException {
+        BroadcastCoalescer c = start(true, Set.of(1L), 1_000, 10_000, 64);
+        c.broadcast(1, "buffered");
+        c.broadcast(2, "sent");
+        assertEquals(2, c.bufferedRooms());
+        long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        c.sweep(later);
+        // room 1 still holds a message
+        assertEquals(1, c.bufferedRooms());
+        c.stop();
+        c.sweep(later);
+        assertEquals(0, c.bufferedRooms());
+        assertEquals(List.of("buffered"), messages(1));
+    }
+
+    @Test
+    void sweepRacingBroadcastsKeepsOrder() throws InterruptedException {
+        BroadcastCoalescer c = start(true, Set.of(), 1, 5, 8);
+        Thread sweeper = new Thread(() -> {
+            // every room looks idle to this sweep, so it drops buffers whenever they are empty
+            while (!Thread.currentThread().isInterrupted()) c.sweep(System.nanoTime() + TimeUnit.SECONDS.toNanos(3));
+        });
+        sweeper.start();
+        List<Object> sent = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            sent.add(i);
+            c.broadcast(4, i);
+        }
+        awaitDelivered(4, 2_000);
+        sweeper.interrupt();
+        sweeper.join();
+        assertEquals(sent, messages(4));
+    }
+
+    @Test
+    void stopFlushesWhatIsBuffered() {
+        BroadcastCoalescer c = start(true, Set.of(1L), 0, 10_000, 64);
+        c.broadcast(1, "a");
+        c.broadcast(1, "b");
+        c.stop();
+        assertEquals(List.of(new Sent(1, List.of("a", "b"))), delivered);
+        c.broadcast(1, "c");
+        assertEquals(new Sent(1, "c"), delivered.get(1));
+    }
+}
@@ -0,0 +1,129 @@
+package io.turtlemessenger.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class ShardedRoomBrokerTest {
+    private record Frame(String sessionId, String subscriptionId, String destination, String body) {}
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final SimpleBrokerMessageHandler simpleBroker = mock(SimpleBrokerMessageHandler.class);
+    private final List<Frame> frames = Collections.synchronizedList(new ArrayList<>());
+    private final MessageHandler client = message -> {
+        if (message.getHeaders().get(SimpMessageHeaderAccessor.SESSION_ID_HEADER).equals("broken")) {
+            throw new IllegalStateException("session closed");
+        }
+        frames.add(new Frame(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()),
+                SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()),
+                SimpMessageHeaderAccessor.getDestination(message.getHeaders()),
+                new String((byte[]) message.getPayload(), StandardCharsets.UTF_8)));
+    };
+    private final ShardedRoomBroker broker = new ShardedRoomBroker(MappingJackson2MessageConverter::new, () -> client,
+            new WireFormatRegistry(), 4, 1024, 50);
+
+    @AfterEach
+    void stop() {
+        broker.stop();
+    }
+
+    private static Message<byte[]> frame(SimpMessageType type, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(type);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private void awaitFrames(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (frames.size() < count && System.nanoTime() < deadline) Thread.sleep(1);
+        Thread.sleep(20); // and nothing more
+    }
+
+    @Test
+    void takesOverRoomSubscriptionsOnTheirWayToTheSimpleBroker() {
+        Message<byte[]> room = frame(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/rooms.7");
+        // other handlers still see it
+        assertSame(room, broker.beforeHandle(room, channel, mock(MessageHandler.class)));
+        assertNull(broker.beforeHandle(room, channel, simpleBroker));
+        Message<byte[]> queue = frame(SimpMessageType.SUBSCRIBE, "s1", "sub-1", "/user/queue/errors");
+        assertSame(queue, broker.beforeHandle(queue, channel, simpleBroker));
+        assertEquals(new ShardedRoomBroker.Stats(1, 1, 0, 0, 0, 0), broker.stats());
+
+        assertNull(broker.beforeHandle(frame(SimpMessageType.UNSUBSCRIBE, "s1", "sub-0", null), channel, simpleBroker));
+        // not one of ours, the simple broker has it
+        Message<byte[]> other = frame(SimpMessageType.UNSUBSCRIBE, "s1", "sub-1", null);
+        assertSame(other, broker.beforeHandle(other, channel, simpleBroker));
+        assertEquals(0, broker.stats().rooms());
+    }
+
+    @Test
+    void fansOutToTheRoomsSubscribersInOrder() throws InterruptedException {
+        broker.subscribe("s1", "a", 1);
+        broker.subscribe("s2", "b", 1);
+        broker.subscribe("broken", "c", 1);
+        broker.subscribe("s3", "d", 2);
+        // the same subscription twice counts once
+        broker.subscribe("s1", "a", 1);
+        broker.start();
+
+        for (int i = 0; i < 50; i++) broker.broadcast(1, Map.of("n", i));
+        broker.broadcast(2, Map.of("n", -1));
+        awaitFrames(101);
+
+        for (String session : List.of("s1", "s2")) {
+            List<String> bodies = frames.stream().filter(f -> f.sessionId().equals(session)).map(Frame::body).toList();
+            assertEquals(50, bodies.size());
+            for (int i = 0; i < 50; i++) assertEquals("{\"n\":" + i + "}", bodies.get(i));
+        }
+        assertEquals(List.of(new Frame("s3", "d", "/topic/rooms.2", "{\"n\":-1}")),
+                frames.stream().filter(f -> f.sessionId().equals("s3")).toList());
+        ShardedRoomBroker.Stats stats = broker.stats();
+        assertEquals(51, stats.published());
+        // the failing session is skipped, not counted
+        assertEquals(101, stats.delivered());
+        assertEquals(4, stats.subscriptions());
+    }
+
+    @Test
+    void disconnectDropsEverySubscriptionOfTheSession() throws InterruptedException {
+        broker.subscribe("s1", "a", 1);
+        broker.subscribe("s1", "b", 2);
+        broker.subscribe("s2", "c", 2);
+        broker.start();
+
+        broker.beforeHandle(frame(SimpMessageType.DISCONNECT, "s1", null, null), channel, simpleBroker);
+        assertEquals(new ShardedRoomBroker.Stats(1, 1, 0, 0, 0, 0), broker.stats());
+        broker.broadcast(1, "gone");
+        broker.broadcast(2, "kept");
+        awaitFrames(1);
+        assertEquals(List.of(new Frame("s2", "c", "/topic/rooms.2", "\"kept\"")), frames);
+    }
+
+    @Test
+    void dropsBroadcastsWhileStopped() {
+        broker.subscribe("s1", "a", 1);
+        broker.broadcast(1, "early");
+        assertEquals(1, broker.stats().dropped());
+        assertEquals(0, broker.stats().published());
+    }
+}
@@ -0,0 +1,120 @@
+package io.turtlemessenger.broker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Two or more relays on loopback, each delivering into a list instead of a broker. */
+public class TcpClusterRelayTest {
+    private record Received(long roomId, JsonNode payload) {}
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<TcpClusterRelay> started = new ArrayList<>();
+
+    @AfterEach
+    void stopAll() {
+        started.forEach(TcpClusterRelay::stop);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private TcpClusterRelay start(int port, List<String> peers, String secret, List<Received> sink) {
+        TcpClusterRelay relay = new TcpClusterRelay((roomId, payload) -> sink.add(new Received(roomId, (JsonNode) payload)),
+                mapper, "127.0.0.1", port, peers, secret, 1024, 64, 50);
+        relay.start();
+        started.add(relay);
+        return relay;
+    }
+
+    private static void subscribe(TcpClusterRelay relay, String sessionId, long roomId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headers.setDestination(RoomBroadcaster.topic(roomId));
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId("sub-" + roomId);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+        relay.onSubscribe(new SessionSubscribeEvent(relay, message));
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test
+    void refusesABlankSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new TcpClusterRelay((roomId, payload) -> {}, mapper,
+                "127.0.0.1", 0, List.of(), " ", 1024, 64, 50));
+    }
+
+    @Test
+    void relaysOnlyRoomsThePeerSubscribedTo() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        // one peer list for both, each node dials itself too and drops that connection
+        List<String> peers = List.of("127.0.0.1:" + portA, "127.0.0.1:" + portB);
+        List<Received> atA = new CopyOnWriteArrayList<>();
+        List<Received> atB = new CopyOnWriteArrayList<>();
+        TcpClusterRelay a = start(portA, peers, "s3cret", atA);
+        TcpClusterRelay b = start(portB, peers, "s3cret", atB);
+        assertTrue(await(() -> a.stats().connected() == 1 && b.stats().connected() == 1), () -> a.stats() + " " + b.stats());
+
+        subscribe(b, "session-1", 1);
+        // b's subscription reaches a asynchronously; until then a sends nothing for the room
+        int sent = 0;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (atB.isEmpty() && System.nanoTime() < deadline) {
+            a.relay(2, Map.of("n", sent));
+            a.relay(1, Map.of("n", sent++));
+            Thread.sleep(10);
+        }
+        assertTrue(await(() -> atB.size() >= 1));
+        Received first = atB.get(0);
+        assertEquals(1, first.roomId());
+
+        a.relay(1, Map.of("text", "ünïcode \"quoted\""));
+        assertTrue(await(() -> atB.stream().anyMatch(r -> r.payload().has("text"))));
+        Received last = atB.get(atB.size() - 1);
+        assertEquals("ünïcode \"quoted\"", last.payload().get("text").asText());
+        assertTrue(atB.stream().allMatch(r -> r.roomId() == 1), atB::toString);
+        // received broadcasts are delivered locally, never relayed back
+        assertTrue(atA.isEmpty());
+        assertEquals(1, b.stats().localRooms());
+    }
+
+    @Test
+    void peersWithDifferentSecretsNeverConnect() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        TcpClusterRelay a = start(portA, List.of("127.0.0.1:" + portB), "one secret", new CopyOnWriteArrayList<>());
+        TcpClusterRelay b = start(portB, List.of("127.0.0.1:" + portA), "another secret", new CopyOnWriteArrayList<>());
+        Thread.sleep(500);
+        assertEquals(0, a.stats().connected());
+        assertEquals(0, b.stats().connected());
+    }
+}
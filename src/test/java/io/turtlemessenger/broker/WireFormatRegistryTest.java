@@ -0,0 +1,140 @@
+package io.turtlemessenger.broker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class WireFormatRegistryTest {
+    private static final String JSON = "{\"roomId\":3,\"content\":\"hi\",\"tags\":[1,2]}";
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final WireFormatRegistry formats = new WireFormatRegistry();
+
+    /** Exposes the interceptors a configurer registers. */
+    private static final class Registration extends ChannelRegistration {
+        List<ChannelInterceptor> all() {
+            return getInterceptors();
+        }
+    }
+
+    private static Message<byte[]> connect(String sessionId, String encoding) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headers.setSessionId(sessionId);
+        if (encoding != null) headers.setNativeHeader(WireFormatRegistry.ENCODING_HEADER, encoding);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String sessionId, byte[] body) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setDestination("/user/queue/contacts");
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(body, headers.getMessageHeaders());
+    }
+
+    private Message<?> toClient(Message<?> message) {
+        Registration outbound = new Registration();
+        formats.configureClientOutboundChannel(outbound);
+        return outbound.all().get(0).preSend(message, channel);
+    }
+
+    @Test
+    void connectHeaderPicksTheFormatUntilDisconnect() {
+        formats.preSend(connect("s1", " CBOR "), channel);
+        formats.preSend(connect("s2", null), channel);
+        formats.preSend(connect("s3", "msgpack"), channel);
+        assertEquals(WireFormatRegistry.WireFormat.CBOR, formats.formatOf("s1"));
+        assertEquals(WireFormatRegistry.WireFormat.JSON, formats.formatOf("s2"));
+        assertEquals(WireFormatRegistry.WireFormat.JSON, formats.formatOf("s3"));
+        assertEquals(WireFormatRegistry.WireFormat.JSON, formats.formatOf(null));
+
+        SimpMessageHeaderAccessor disconnect = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        disconnect.setSessionId("s1");
+        formats.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), channel);
+        assertEquals(WireFormatRegistry.WireFormat.JSON, formats.formatOf("s1"));
+    }
+
+    @Test
+    void transcodesJsonFramesForCborSessionsOnly() throws Exception {
+        formats.preSend(connect("cbor", "cbor"), channel);
+        byte[] body = JSON.getBytes(StandardCharsets.UTF_8);
+
+        Message<?> json = message("json", body);
+        assertSame(json, toClient(json));
+
+        Message<?> out = toClient(message("cbor", body));
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(out);
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, headers.getContentType());
+        assertEquals("cbor", headers.getFirstNativeHeader(WireFormatRegistry.ENCODING_HEADER));
+        assertEquals("/user/queue/contacts", headers.getDestination());
+        JsonNode decoded = new CBORMapper().readTree((byte[]) out.getPayload());
+        assertEquals(new ObjectMapper().readTree(JSON), decoded);
+        // a fan-out of the same body reuses the encoding
+        assertSame(out.getPayload(), toClient(message("cbor", body)).getPayload());
+
+        // only JSON MESSAGE frames are touched
+        SimpMessageHeaderAccessor text = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        text.setSessionId("cbor");
+        text.setContentType(MimeTypeUtils.TEXT_PLAIN);
+        Message<byte[]> plain = MessageBuilder.createMessage(body, text.getMessageHeaders());
+        assertSame(plain, toClient(plain));
+    }
+
+    @Test
+    void encodesPayloadsStraightToCbor() {
+        Map<String, Object> payload = Map.of("roomId", 3, "content", "hi", "tags", List.of(1, 2));
+        byte[] direct = formats.encodeCbor(payload);
+        assertArrayEquals(direct, formats.encodeCbor(payload));
+        assertEquals(Map.of("roomId", 3, "content", "hi", "tags", List.of(1, 2)), readCbor(direct));
+    }
+
+    @Test
+    void readsSendsThatSayApplicationCbor() {
+        List<MessageConverter> converters = new ArrayList<>();
+        formats.configureMessageConverters(converters);
+        MessageConverter converter = converters.get(0);
+        byte[] body = formats.encodeCbor(Map.of("content", "hi"));
+
+        SimpMessageHeaderAccessor cbor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        cbor.setContentType(WireFormatRegistry.APPLICATION_CBOR);
+        assertEquals(Map.of("content", "hi"), converter.fromMessage(MessageBuilder.createMessage(body, cbor.getMessageHeaders()), Map.class));
+        // JSON frames are left to the default converters
+        SimpMessageHeaderAccessor json = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        json.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        assertNull(converter.fromMessage(MessageBuilder.createMessage(body, json.getMessageHeaders()), Map.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readCbor(byte[] bytes) {
+        try {
+            return new CBORMapper().readValue(bytes, Map.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
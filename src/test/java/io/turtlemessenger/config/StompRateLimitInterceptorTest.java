@@ -0,0 +1,94 @@
+package io.turtlemessenger.config;
+
+import io.turtlemessenger.dto.SendErrorDTO;
+import io.turtlemessenger.service.SendRateLimiter;
+import io.turtlemessenger.service.SessionErrors;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentCaptor.forClass;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StompRateLimitInterceptorTest {
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final MessagingMetrics metrics = mock(MessagingMetrics.class);
+    private final SessionErrors errors = mock(SessionErrors.class);
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<SessionErrors> errorsProvider = mock(ObjectProvider.class);
+    // two sends per user, then one a second
+    private final StompRateLimitInterceptor interceptor = new StompRateLimitInterceptor(
+            new SendRateLimiter(true, 1, 2, 1_000, 1_000, 120), metrics, errorsProvider);
+
+    {
+        when(errorsProvider.getObject()).thenReturn(errors);
+    }
+
+    private static Message<byte[]> send(String destination, String body) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        headers.setSessionId("s1");
+        headers.setUser((Principal) () -> "alice");
+        return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders());
+    }
+
+    @Test
+    void dropsTheRefusedSendAndTellsTheSession() {
+        for (int i = 0; i < 2; i++) {
+            Message<byte[]> ok = send("/app/rooms.5.send", "{\"ts\":" + i + "}");
+            assertSame(ok, interceptor.preSend(ok, channel));
+        }
+        assertNull(interceptor.preSend(send("/app/rooms.5.send", "{\"roomId\":5,\"ts\":1234,\"content\":\"hi\"}"), channel));
+
+        var sent = forClass(SendErrorDTO.class);
+        verify(errors).send(eq("s1"), sent.capture());
+        assertEquals(5, sent.getValue().roomId());
+        assertEquals(1234, sent.getValue().ts());
+        assertEquals(SendErrorDTO.RATE_LIMITED, sent.getValue().error());
+        assertTrue(sent.getValue().retryAfterMillis() > 0);
+        verify(metrics).rateLimited("stomp", "user");
+    }
+
+    @Test
+    void unreadablePayloadStillGetsAnError() {
+        for (int i = 0; i < 2; i++) interceptor.preSend(send("/app/rooms.5.send", "{}"), channel);
+        assertNull(interceptor.preSend(send("/app/rooms.5.send", "not json"), channel));
+        var sent = forClass(SendErrorDTO.class);
+        verify(errors).send(eq("s1"), sent.capture());
+        assertEquals(0, sent.getValue().ts());
+    }
+
+    @Test
+    void otherDestinationsAreNotLimited() {
+        for (int i = 0; i < 10; i++) {
+            Message<byte[]> other = send("/app/rooms.5.typing", "{}");
+            assertSame(other, interceptor.preSend(other, channel));
+        }
+        verify(errors, never()).send(any(), any());
+    }
+
+    @Test
+    void parsesRoomIds() {
+        assertEquals(42L, StompRateLimitInterceptor.roomId("/app/rooms.42.send"));
+        assertEquals(Long.MIN_VALUE, StompRateLimitInterceptor.roomId("/app/rooms..send"));
+        assertEquals(Long.MIN_VALUE, StompRateLimitInterceptor.roomId("/app/rooms.x.send"));
+        assertEquals(Long.MIN_VALUE, StompRateLimitInterceptor.roomId("/topic/rooms.42"));
+        assertEquals(Long.MIN_VALUE, StompRateLimitInterceptor.roomId(null));
+    }
+}
@@ -0,0 +1,130 @@
+package io.turtlemessenger.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.turtlemessenger.dto.ContactSnapshotDTO;
+import io.turtlemessenger.model.UserAccount;
+import io.turtlemessenger.repository.UserRepository;
+import io.turtlemessenger.security.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** ETags and 304s on room history and the contact lists. */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ConditionalGetTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-etag");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+    }
+
+    @Autowired MockMvc mvc;
+    @Autowired @Qualifier("accessJwt") JwtUtil jwt;
+    @Autowired UserRepository users;
+    @Autowired ObjectMapper mapper;
+
+    private String bearer(String username) {
+        if (users.findIdByUsername(username).isEmpty()) users.save(new UserAccount(username, "x"));
+        return "Bearer " + jwt.generateToken(username);
+    }
+
+    private ResultActions getAs(String username, String path, String ifNoneMatch) throws Exception {
+        var request = get(path).header(HttpHeaders.AUTHORIZATION, bearer(username));
+        if (ifNoneMatch != null) request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return mvc.perform(request);
+    }
+
+    private static String etag(ResultActions result) {
+        String etag = result.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+
+    @Test
+    void historyIsNotModifiedUntilTheRoomChanges() throws Exception {
+        String path = "/api/rooms/601/messages";
+        String first = etag(getAs("alice", path, null).andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private")));
+        getAs("alice", path, first).andExpect(status().isNotModified());
+        // the tag is the room's, whoever asks and whichever page
+        getAs("bob", path + "?afterSeq=0", first).andExpect(status().isNotModified());
+
+        mvc.perform(post(path).header(HttpHeaders.AUTHORIZATION, bearer("alice"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"content\":\"hello\"}"))
+                .andExpect(status().isAccepted());
+        String second = etag(getAs("alice", path, first).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].content").value("hello")));
+        assertNotEquals(first, second);
+        getAs("alice", path, second).andExpect(status().isNotModified());
+        // other rooms keep their tags
+        getAs("alice", "/api/rooms/602/messages", null).andExpect(status().isOk());
+    }
+
+    @Test
+    void contactListsAreNotModifiedUntilTheUsersContactsChange() throws Exception {
+        String contacts = etag(getAs("carol", "/api/contacts", null).andExpect(status().isOk()));
+        getAs("carol", "/api/contacts", contacts).andExpect(status().isNotModified());
+        getAs("carol", "/api/contacts/requests", contacts).andExpect(status().isNotModified());
+        String dave = etag(getAs("dave", "/api/contacts", null).andExpect(status().isOk()));
+
+        mvc.perform(post("/api/contacts").header(HttpHeaders.AUTHORIZATION, bearer("dave"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"user\":\"carol\"}"))
+                .andExpect(status().isOk());
+        getAs("carol", "/api/contacts/requests", contacts).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].username").value("dave"));
+        // outgoing requests are not listed, so the sender's tag stays until the request is accepted
+        getAs("dave", "/api/contacts", dave).andExpect(status().isNotModified());
+        mvc.perform(post("/api/contacts/accept").header(HttpHeaders.AUTHORIZATION, bearer("carol"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"user\":\"dave\"}"))
+                .andExpect(status().isOk());
+        getAs("dave", "/api/contacts", dave).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].username").value("carol"));
+        // a third user's lists did not change
+        String erin = etag(getAs("erin", "/api/contacts", null));
+        getAs("erin", "/api/contacts", erin).andExpect(status().isNotModified());
+    }
+
+    @Test
+    void snapshotIsNotModifiedAtTheClientsVersion() throws Exception {
+        ContactSnapshotDTO snapshot = mapper.readValue(getAs("frank", "/api/contacts/snapshot", null).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), ContactSnapshotDTO.class);
+        long epoch = snapshot.epoch();
+        long version = snapshot.version();
+        String query = "/api/contacts/snapshot?epoch=" + epoch + "&version=" + version;
+        getAs("frank", query, null).andExpect(status().isNotModified());
+
+        mvc.perform(post("/api/contacts").header(HttpHeaders.AUTHORIZATION, bearer("grace"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"user\":\"frank\"}"))
+                .andExpect(status().isOk());
+        getAs("frank", query, null).andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(version + 1))
+                .andExpect(jsonPath("$.requests[0].username").value("grace"));
+        // a stale epoch, as after a restart, always gets the lists
+        getAs("frank", "/api/contacts/snapshot?epoch=" + (epoch - 1) + "&version=" + (version + 1), null).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,165 @@
+package io.turtlemessenger.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.model.UserAccount;
+import io.turtlemessenger.repository.UserRepository;
+import io.turtlemessenger.security.JwtUtil;
+import io.turtlemessenger.service.MessageExporter;
+import io.turtlemessenger.service.MessageImporter;
+import io.turtlemessenger.service.MessageStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MessageTransferControllerTest {
+    private static final int MESSAGES = 30;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-transfer");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+        registry.add("tm.import.enabled", () -> "true");
+        registry.add("tm.import.admins", () -> "admin");
+        // small batches, so a round trip spans several of them
+        registry.add("tm.import.batch-size", () -> "7");
+    }
+
+    @Autowired MockMvc mvc;
+    @Autowired @Qualifier("accessJwt") JwtUtil jwt;
+    @Autowired ObjectMapper mapper;
+    @Autowired MessageStore store;
+    @Autowired UserRepository users;
+
+    private String bearer(String username) {
+        return "Bearer " + jwt.generateToken(username);
+    }
+
+    private void seed(long roomId) {
+        for (String name : List.of("alice", "bob")) {
+            if (users.findIdByUsername(name).isEmpty()) users.save(new UserAccount(name, "x"));
+        }
+        Instant base = Instant.now().truncatedTo(ChronoUnit.MILLIS).minusSeconds(MESSAGES);
+        List<PendingMessage> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            batch.add(new PendingMessage(roomId, i % 2 == 0 ? "alice" : "bob", "message " + i + " \"quoted\"\n", base.plusSeconds(i)));
+        }
+        store.appendBatch(batch);
+    }
+
+    private String export(long roomId, long afterId) throws Exception {
+        MvcResult result = mvc.perform(get("/api/rooms/{roomId}/export", roomId).param("afterId", String.valueOf(afterId))
+                        .header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(result.getResponse().getContentType().startsWith(MediaType.APPLICATION_NDJSON_VALUE));
+        return result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+
+    private List<MessageDTO> parse(String ndjson) throws IOException {
+        List<MessageDTO> out = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            if (!line.isEmpty()) out.add(mapper.readValue(line, MessageDTO.class));
+        }
+        return out;
+    }
+
+    @Test
+    void exportedHistoryImportsIntoAnotherRoom() throws Exception {
+        seed(501);
+        String ndjson = export(501, 0);
+        List<MessageDTO> exported = parse(ndjson);
+        assertEquals(MESSAGES, exported.size());
+        // seeded without sequence numbers, like rows from before they existed
+        assertNull(exported.get(0).getSeq());
+
+        mvc.perform(post("/api/rooms/{roomId}/import", 502).content(ndjson.getBytes(StandardCharsets.UTF_8))
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .header(HttpHeaders.AUTHORIZATION, bearer("admin")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(MESSAGES))
+                .andExpect(jsonPath("$.firstSeq").value(1))
+                .andExpect(jsonPath("$.lastSeq").value(MESSAGES));
+
+        List<MessageDTO> imported = parse(export(502, 0));
+        assertEquals(MESSAGES, imported.size());
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageDTO from = exported.get(i);
+            MessageDTO to = imported.get(i);
+            assertEquals(from.getSenderId(), to.getSenderId());
+            assertEquals(from.getContent(), to.getContent());
+            assertEquals(from.getTs(), to.getTs());
+            assertEquals(502L, to.getRoomId());
+            assertEquals(i + 1L, to.getSeq());
+            assertNotEquals(from.getId(), to.getId());
+        }
+        // resuming an export after a row it already sent
+        assertEquals(exported.subList(10, MESSAGES).stream().map(MessageDTO::getId).toList(),
+                parse(export(501, exported.get(9).getId())).stream().map(MessageDTO::getId).toList());
+    }
+
+    @Test
+    void importIsLimitedToAdmins() throws Exception {
+        seed(511);
+        String ndjson = export(511, 0);
+        mvc.perform(post("/api/rooms/{roomId}/import", 512).content(ndjson.getBytes(StandardCharsets.UTF_8))
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isForbidden());
+        assertEquals("", export(512, 0));
+    }
+
+    @Test
+    void malformedLineIsABadRequest() throws Exception {
+        String body = "{\"senderId\":\"alice\",\"content\":\"ok\",\"ts\":1}\n{\"senderId\":";
+        mvc.perform(post("/api/rooms/{roomId}/import", 521).content(body.getBytes(StandardCharsets.UTF_8))
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .header(HttpHeaders.AUTHORIZATION, bearer("admin")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void disabledImportIsNotFound() throws Exception {
+        MessageImporter disabled = new MessageImporter(mock(MessageStore.class), null, null, null, mapper, false, 100, Set.of("admin"));
+        MessageTransferController controller = new MessageTransferController(mock(MessageExporter.class), disabled);
+        Principal admin = () -> "admin";
+        assertEquals(HttpStatus.NOT_FOUND, controller.importMessages(1L, new MockHttpServletRequest(), admin).getStatusCode());
+    }
+}
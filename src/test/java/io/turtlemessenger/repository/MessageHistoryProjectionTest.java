@@ -0,0 +1,112 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.model.Message;
+import io.turtlemessenger.model.PendingMessage;
+import io.turtlemessenger.model.UserAccount;
+import io.turtlemessenger.service.IdentityCache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Before/after comparison for a 200-message history page: the old entity path (with the
+ * associations hydrated the way the former EAGER mapping did) against the DTO projection.
+ */
+@SpringBootTest
+public class MessageHistoryProjectionTest {
+    private static final long ROOM_ID = 4242L;
+    private static final int PAGE = 200;
+    private static final int SENDERS = 20;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path db = Files.createTempFile("tm-projection", ".db");
+        db.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + db);
+        registry.add("tm.archive.dir", () -> db.resolveSibling(db.getFileName() + "-archive").toString());
+    }
+
+    @Autowired MessageRepository messages;
+    @Autowired UserRepository users;
+    @Autowired MessageBatchWriter writer;
+    @Autowired IdentityCache identities;
+    @Autowired EntityManagerFactory emf;
+    @Autowired TransactionTemplate tx;
+    @PersistenceContext EntityManager em;
+
+    private void seed() {
+        for (int i = 0; i < SENDERS; i++) users.save(new UserAccount("sender" + i, "x"));
+        List<PendingMessage> batch = new ArrayList<>();
+        Instant base = Instant.now().minusSeconds(PAGE);
+        for (int i = 0; i < PAGE; i++) {
+            batch.add(new PendingMessage(ROOM_ID, "sender" + (i % SENDERS), "message " + i, base.plusSeconds(i)));
+        }
+        identities.ensureRoom(ROOM_ID);
+        writer.insert(batch, identities.userIds(batch.stream().map(PendingMessage::senderUsername).toList()));
+    }
+
+    @Test
+    void projectionLoadsPageInOneStatement() {
+        seed();
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.setStatisticsEnabled(true);
+
+        Measurement entities = measure(stats, () -> {
+            // the entity query history reads used before the projection
+            List<Message> rows = em.createQuery("select m from Message m where m.room.id = :roomId order by m.createdAt desc", Message.class)
+                    .setParameter("roomId", ROOM_ID)
+                    .setMaxResults(PAGE)
+                    .getResultList();
+            List<MessageDTO> out = new ArrayList<>(rows.size());
+            for (Message m : rows) {
+                Hibernate.initialize(m.getRoom());
+                Hibernate.initialize(m.getSenderUser());
+                out.add(new MessageDTO(m.getId(), m.getRoom().getId(), m.getSenderUsername(), m.getContent(), m.getCreatedAt()));
+            }
+            return out;
+        });
+        Measurement projection = measure(stats, () -> messages.findLatestPage(ROOM_ID, PageRequest.of(0, PAGE)));
+
+        assertEquals(PAGE, projection.rows);
+        assertEquals(1, projection.statements);
+        assertTrue(entities.statements > projection.statements);
+        assertTrue(projection.allocatedBytes < entities.allocatedBytes,
+                () -> "projection allocated " + projection.allocatedBytes + " bytes, entity graph " + entities.allocatedBytes);
+    }
+
+    private record Measurement(int rows, long statements, long allocatedBytes) {}
+
+    private Measurement measure(Statistics stats, Supplier<List<MessageDTO>> query) {
+        // warm up Hibernate's query plan cache so it isn't counted
+        tx.execute(s -> query.get());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        stats.clear();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        List<MessageDTO> rows = tx.execute(s -> query.get());
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        return new Measurement(rows == null ? 0 : rows.size(), stats.getPrepareStatementCount(), allocated);
+    }
+}
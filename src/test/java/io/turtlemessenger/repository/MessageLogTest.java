@@ -0,0 +1,158 @@
+package io.turtlemessenger.repository;
+
+import io.turtlemessenger.dto.MessageDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Crash recovery and segment mapping of {@link MessageLog}. Crashes are simulated by damaging the
+ * last segment file between a close and the next open.
+ */
+public class MessageLogTest {
+    private static final int SEGMENT_BYTES = 4096;
+    private static final int INDEX_INTERVAL = 512;
+
+    @TempDir Path dir;
+
+    private MessageLog open(MessageLog.OpenSegments segments) throws IOException {
+        return MessageLog.open(1L, dir, SEGMENT_BYTES, INDEX_INTERVAL, segments);
+    }
+
+    private static void append(MessageLog log, long from, long to) throws IOException {
+        for (long id = from; id <= to; id++) log.append(id, id, 1_000 + id, "alice", "message " + id);
+    }
+
+    private static List<Long> ids(List<MessageDTO> page) {
+        return page.stream().map(MessageDTO::getId).toList();
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> p.toString().endsWith(".log")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+    }
+
+    /** Length of the written part of a segment: just past its last non-zero byte. */
+    private static int written(Path segment) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) end--;
+        return end;
+    }
+
+    private static void overwrite(Path segment, int position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    @Test
+    void reopensWhatWasWritten() throws IOException {
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            append(log, 1, 100);
+        }
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            assertEquals(100, log.lastId());
+            assertEquals(100, log.lastSeq());
+            assertEquals(List.of(98L, 99L, 100L), ids(log.after(97, 10)));
+            append(log, 101, 110);
+            assertEquals(110, log.before(Long.MAX_VALUE, 1).get(0).getId());
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOffAndNeverReadBack() throws IOException {
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            append(log, 1, 10);
+        }
+        Path segment = lastSegment();
+        // the last byte of message 10: its CRC no longer matches
+        overwrite(segment, written(segment) - 1, new byte[] {'x'});
+
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            assertEquals(9, log.lastId());
+            append(log, 10, 12);
+            assertEquals(List.of(8L, 9L, 10L, 11L, 12L), ids(log.after(7, 10)));
+            assertEquals("message 10", log.after(9, 1).get(0).getContent());
+        }
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            assertEquals(12, log.lastId());
+            assertEquals(12, log.after(0, 100).size());
+        }
+    }
+
+    @Test
+    void recordsBehindAnInvalidHeaderAreDiscarded() throws IOException {
+        int fiveRecords;
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            append(log, 1, 5);
+            log.force();
+            fiveRecords = written(lastSegment());
+            append(log, 6, 10);
+        }
+        // as if message 6 never reached the disk but the ones after it did
+        overwrite(lastSegment(), fiveRecords, new byte[8]);
+
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            assertEquals(5, log.lastId());
+            log.append(6, 6, 2_000, "bob", "6 again");
+            log.append(7, 7, 2_001, "bob", "7 again");
+        }
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            List<MessageDTO> all = log.after(0, 100);
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids(all));
+            assertEquals("7 again", all.get(6).getContent());
+        }
+    }
+
+    @Test
+    void emptyLastSegmentIsDropped() throws IOException {
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            append(log, 1, 3);
+        }
+        // a segment created for message 4 just before a crash
+        Files.createFile(dir.resolve(String.format("%020d", 4) + ".log"));
+
+        try (MessageLog log = open(new MessageLog.OpenSegments(8))) {
+            assertEquals(3, log.lastId());
+            append(log, 4, 5);
+            assertEquals(List.of(4L, 5L), ids(log.after(3, 10)));
+        }
+    }
+
+    @Test
+    void mapsAtMostCapacitySegments() throws IOException {
+        MessageLog.OpenSegments segments = new MessageLog.OpenSegments(2);
+        try (MessageLog log = open(segments)) {
+            // about 60 bytes a record: a few dozen segments
+            append(log, 1, 2_000);
+            assertTrue(segments.size() <= 2);
+
+            List<MessageDTO> all = log.after(0, 5_000);
+            assertEquals(2_000, all.size());
+            for (int i = 0; i < all.size(); i++) assertEquals(i + 1, all.get(i).getId());
+            assertEquals(List.of(1_000L, 999L), ids(log.before(1_001, 2)));
+            assertTrue(segments.size() <= 2);
+        }
+        assertEquals(0, segments.size());
+
+        try (MessageLog log = open(segments)) {
+            assertEquals(2_000, log.lastId());
+            assertEquals(0, segments.size());
+            assertEquals(List.of(1L), ids(log.after(0, 1)));
+            assertEquals(1, segments.size());
+        }
+    }
+}
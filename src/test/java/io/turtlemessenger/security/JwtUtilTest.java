@@ -0,0 +1,101 @@
+package io.turtlemessenger.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class JwtUtilTest {
+    private static final String SECRET = "test-secret";
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+
+    private final JwtUtil jwt = new JwtUtil(SECRET, 600);
+
+    /** A token signed with the right key, for headers and payloads JwtUtil would never issue. */
+    private static String sign(String headerJson, String payloadJson) throws Exception {
+        String signingInput = B64.encodeToString(headerJson.getBytes(StandardCharsets.UTF_8)) + "."
+                + B64.encodeToString(payloadJson.getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return signingInput + "." + B64.encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static String segment(String token, int i) {
+        return token.split("\\.")[i];
+    }
+
+    @Test
+    void verifiesItsOwnTokens() {
+        String token = jwt.generateToken("alice");
+        JwtUtil.Claims claims = jwt.verify(token);
+        assertNotNull(claims);
+        assertEquals("alice", claims.subject());
+        assertEquals(claims.issuedAt() + 600, claims.expiresAt());
+        // the second time from the cache
+        assertEquals(claims, jwt.verify(token));
+        assertEquals("alice", new JwtUtil(SECRET, 600, 0).getSubject(token));
+    }
+
+    @Test
+    void rejectsTamperedSignature() {
+        String token = jwt.generateToken("alice");
+        char last = token.charAt(token.length() - 1);
+        assertNull(jwt.verify(token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A')));
+        assertNull(jwt.verify(token.substring(0, token.length() - 1)));
+        assertNull(new JwtUtil("other-secret", 600).verify(token));
+    }
+
+    @Test
+    void rejectsTamperedPayloadWithTheSignatureCached() {
+        String token = jwt.generateToken("alice");
+        assertNotNull(jwt.verify(token));
+        String forged = segment(token, 0) + "." + segment(jwt.generateToken("mallory"), 1) + "." + segment(token, 2);
+        assertNull(jwt.verify(forged));
+        assertEquals("alice", jwt.getSubject(token));
+    }
+
+    @Test
+    void rejectsExpiredTokens() throws Exception {
+        assertNull(new JwtUtil(SECRET, -1).verify(new JwtUtil(SECRET, -1).generateToken("alice")));
+        long now = Instant.now().getEpochSecond();
+        assertNull(jwt.verify(sign("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", "{\"sub\":\"alice\",\"iat\":" + (now - 20) + ",\"exp\":" + (now - 10) + "}")));
+        assertNull(jwt.verify(sign("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", "{\"sub\":\"alice\",\"iat\":" + now + "}")));
+    }
+
+    @Test
+    void rejectsAnyOtherHeader() throws Exception {
+        long exp = Instant.now().getEpochSecond() + 60;
+        String payload = "{\"sub\":\"alice\",\"iat\":0,\"exp\":" + exp + "}";
+        assertNotNull(jwt.verify(sign("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", payload)));
+        assertNull(jwt.verify(sign("{\"alg\":\"none\",\"typ\":\"JWT\"}", payload)));
+        assertNull(jwt.verify(sign("{\"alg\":\"HS512\",\"typ\":\"JWT\"}", payload)));
+        String unsigned = B64.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + B64.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".";
+        assertNull(jwt.verify(unsigned));
+    }
+
+    @Test
+    void roundTripsEscapedAndUnicodeSubjects() {
+        for (String subject : new String[] {"quo\"te", "back\\slash", "\\\"", "ünïcødé", "猫", "emoji 🐢", "tab\there"}) {
+            assertEquals(subject, jwt.getSubject(jwt.generateToken(subject)), subject);
+        }
+    }
+
+    @Test
+    void parsesEscapesInClaims() {
+        JwtUtil.Claims claims = JwtUtil.parseClaims("{ \"sub\" : \"a\\u00fcb\\\"c\\\\d\\n\" , \"exp\" : 42, \"extra\": \"x\" }");
+        assertNotNull(claims);
+        assertEquals("aüb\"c\\d\n", claims.subject());
+        assertEquals(42, claims.expiresAt());
+        assertNull(JwtUtil.parseClaims("{\"sub\":\"a\\u00\",\"exp\":42}"));
+        assertNull(JwtUtil.parseClaims("{\"sub\":\"unterminated,\"exp\":42}"));
+        assertNull(JwtUtil.parseClaims("[]"));
+    }
+}
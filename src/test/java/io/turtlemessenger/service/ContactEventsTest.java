@@ -0,0 +1,62 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.dto.ContactEventDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ContactEventsTest {
+    private final SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+    private final ContactEvents events = new ContactEvents(messaging);
+
+    @Test
+    void numbersEachUsersChangesAndSendsThemToTheUser() {
+        ContactDTO bob = new ContactDTO(2L, "bob", "PENDING");
+        assertEquals(0, events.version(1));
+        String before = events.etag(1);
+
+        events.publish(1, "alice", ContactEventDTO.REQUEST, bob);
+        verify(messaging).convertAndSendToUser("alice", ContactEvents.DESTINATION,
+                new ContactEventDTO(events.epoch(), 1, ContactEventDTO.REQUEST, bob));
+        events.publish(1, "alice", ContactEventDTO.REMOVED, bob);
+        assertEquals(2, events.version(1));
+        assertNotEquals(before, events.etag(1));
+        // other users count on their own
+        assertEquals(0, events.version(2));
+    }
+
+    @Test
+    void concurrentChangesReachTheBrokerInVersionOrder() throws InterruptedException {
+        List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(inv -> sent.add(((ContactEventDTO) inv.getArgument(2)).version()))
+                .when(messaging).convertAndSendToUser(eq("alice"), eq(ContactEvents.DESTINATION), any(Object.class));
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < perThread; i++) events.publish(1, "alice", ContactEventDTO.CONTACT, new ContactDTO(2L, "bob", "ACCEPTED"));
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(LongStream.rangeClosed(1, (long) threads * perThread).boxed().toList(), sent);
+    }
+}
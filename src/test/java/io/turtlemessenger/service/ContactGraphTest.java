@@ -0,0 +1,148 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.model.ContactStatus;
+import io.turtlemessenger.repository.JdbcTimestamps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContactGraphTest {
+    @TempDir Path dir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void schema() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dir.resolve("test.db"), true);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE users (id INTEGER PRIMARY KEY, username TEXT)");
+        jdbc.execute("CREATE TABLE contacts (user_id INTEGER, contact_id INTEGER, status TEXT, created_at TIMESTAMP)");
+        for (long id = 1; id <= 40; id++) jdbc.update("INSERT INTO users (id, username) VALUES (?, ?)", id, "u" + id);
+    }
+
+    @AfterEach
+    void close() {
+        dataSource.destroy();
+    }
+
+    private void row(long from, long to, ContactStatus status, long at) {
+        jdbc.update(con -> {
+            var ps = con.prepareStatement("INSERT INTO contacts (user_id, contact_id, status, created_at) VALUES (?, ?, ?, ?)");
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            ps.setString(3, status.name());
+            JdbcTimestamps.bind(ps, 4, Instant.ofEpochMilli(at));
+            return ps;
+        });
+    }
+
+    private static List<String> names(List<ContactDTO> contacts) {
+        return contacts.stream().map(ContactDTO::getUsername).toList();
+    }
+
+    @Test
+    void loadsBothDirectionsOfAUser() {
+        row(1, 2, ContactStatus.ACCEPTED, 2_000);
+        row(2, 1, ContactStatus.ACCEPTED, 1_000);
+        row(3, 1, ContactStatus.PENDING, 3_000);
+        row(1, 4, ContactStatus.PENDING, 4_000);
+        // legacy: 5's pending row is younger than 1's, so 1 made the request
+        row(1, 5, ContactStatus.PENDING, 5_000);
+        row(5, 1, ContactStatus.PENDING, 6_000);
+        ContactGraph graph = new ContactGraph(jdbc, 1_000);
+
+        assertEquals(List.of("u2"), names(graph.accepted(1)));
+        assertEquals(List.of("u3"), names(graph.incomingRequests(1)));
+        ContactGraph.Edge edge = graph.edge(1, 2);
+        assertEquals(ContactStatus.ACCEPTED, edge.outgoing());
+        assertEquals(ContactStatus.ACCEPTED, edge.incoming());
+        assertEquals(2_000, edge.outgoingAt());
+        assertNull(graph.edge(1, 9).outgoing());
+        // one load, the rest from memory
+        assertEquals(new ContactGraph.Stats(3, 1, 1, 4), graph.stats());
+    }
+
+    @Test
+    void appliesCommittedChangesToCachedUsers() {
+        ContactGraph graph = new ContactGraph(jdbc, 1_000);
+        assertEquals(List.of(), graph.incomingRequests(2));
+
+        graph.put(1, "u1", 2, "u2", ContactStatus.PENDING, 1_000);
+        assertEquals(List.of("u1"), names(graph.incomingRequests(2)));
+        graph.put(2, "u2", 1, "u1", ContactStatus.ACCEPTED, 2_000);
+        graph.put(1, "u1", 2, "u2", ContactStatus.ACCEPTED, 1_000);
+        assertEquals(List.of("u1"), names(graph.accepted(2)));
+        assertEquals(List.of(), graph.incomingRequests(2));
+
+        graph.removePair(1, 2);
+        assertEquals(List.of(), graph.accepted(2));
+        assertEquals(0, graph.stats().edges());
+        // user 1 was never loaded, so none of this was cached for it
+        assertEquals(1, graph.stats().users());
+    }
+
+    @Test
+    void loadRacingACommitIsNotKept() {
+        row(2, 1, ContactStatus.PENDING, 1_000);
+        ContactGraph[] graph = new ContactGraph[1];
+        // the accept commits between the load's query and its install
+        JdbcTemplate racing = new JdbcTemplate(dataSource) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                super.query(sql, rch, args);
+                if (jdbc.update("UPDATE contacts SET status = 'ACCEPTED' WHERE user_id = 2 AND contact_id = 1 AND status = 'PENDING'") > 0) {
+                    row(1, 2, ContactStatus.ACCEPTED, 2_000);
+                    graph[0].put(2, "u2", 1, "u1", ContactStatus.ACCEPTED, 1_000);
+                    graph[0].put(1, "u1", 2, "u2", ContactStatus.ACCEPTED, 2_000);
+                }
+            }
+        };
+        graph[0] = new ContactGraph(racing, 1_000);
+
+        // answered from the stale snapshot, but not cached
+        assertEquals(List.of("u2"), names(graph[0].incomingRequests(1)));
+        assertEquals(0, graph[0].stats().users());
+        assertEquals(List.of("u2"), names(graph[0].accepted(1)));
+        assertEquals(List.of(), graph[0].incomingRequests(1));
+        assertEquals(1, graph[0].stats().users());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedUsersOverMaxEdges() {
+        // user 1 has 30 peers, which also exercises the table resizing
+        for (long peer = 2; peer <= 31; peer++) row(1, peer, ContactStatus.ACCEPTED, peer);
+        row(32, 33, ContactStatus.ACCEPTED, 1);
+        row(34, 35, ContactStatus.ACCEPTED, 1);
+        ContactGraph graph = new ContactGraph(jdbc, 31);
+
+        assertEquals(LongStream.rangeClosed(2, 31).mapToObj(p -> "u" + p).toList(), names(graph.accepted(1)));
+        graph.accepted(32);
+        assertEquals(2, graph.stats().users());
+        graph.accepted(32);
+        // over the budget: user 1 goes, it was used least recently
+        graph.accepted(34);
+        ContactGraph.Stats stats = graph.stats();
+        assertEquals(2, stats.users());
+        assertTrue(stats.edges() <= 31);
+        long misses = stats.misses();
+        graph.accepted(32);
+        assertEquals(misses, graph.stats().misses());
+        graph.accepted(1);
+        assertEquals(misses + 1, graph.stats().misses());
+    }
+}
@@ -0,0 +1,103 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.ContactDTO;
+import io.turtlemessenger.dto.ContactEventDTO;
+import io.turtlemessenger.model.UserAccount;
+import io.turtlemessenger.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/** Which users ContactService pushes a change to, and as what. */
+@SpringBootTest
+public class ContactPushTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-contact-push");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+    }
+
+    @Autowired ContactService contacts;
+    @Autowired UserRepository users;
+    @SpyBean ContactEvents events;
+
+    private record Push(String username, String type, String peer, String status) {}
+
+    private long user(String name) {
+        return users.findIdByUsername(name).orElseGet(() -> users.save(new UserAccount(name, "x")).getId());
+    }
+
+    private static Principal as(String name) {
+        return () -> name;
+    }
+
+    private List<Push> pushes(int count) {
+        ArgumentCaptor<String> username = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> type = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<ContactDTO> contact = ArgumentCaptor.forClass(ContactDTO.class);
+        verify(events, times(count)).publish(anyLong(), username.capture(), type.capture(), contact.capture());
+        clearInvocations(events);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Push(username.getAllValues().get(i), type.getAllValues().get(i),
+                        contact.getAllValues().get(i).getUsername(), contact.getAllValues().get(i).getStatus()))
+                .toList();
+    }
+
+    @Test
+    void requestAcceptAndRemoveReachTheRightUsers() {
+        user("ann");
+        user("ben");
+        clearInvocations(events);
+
+        contacts.addContact("ben", as("ann"));
+        // ann's own outgoing request isn't listed anywhere, so only ben hears of it
+        assertEquals(List.of(new Push("ben", ContactEventDTO.REQUEST, "ann", "PENDING")), pushes(1));
+
+        contacts.accept("ann", as("ben"));
+        assertEquals(List.of(new Push("ben", ContactEventDTO.CONTACT, "ann", "ACCEPTED"),
+                new Push("ann", ContactEventDTO.CONTACT, "ben", "ACCEPTED")), pushes(2));
+
+        contacts.remove("ben", as("ann"));
+        assertEquals(List.of(new Push("ann", ContactEventDTO.REMOVED, "ben", null),
+                new Push("ben", ContactEventDTO.REMOVED, "ann", null)), pushes(2));
+
+        // nothing left to remove, nothing pushed
+        contacts.remove("ben", as("ann"));
+        verify(events, never()).publish(anyLong(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void rejectedChangesPushNothing() {
+        user("cat");
+        user("dan");
+        clearInvocations(events);
+        assertThrows(IllegalArgumentException.class, () -> contacts.accept("dan", as("cat")));
+        assertThrows(IllegalArgumentException.class, () -> contacts.addContact("cat", as("cat")));
+        verify(events, never()).publish(anyLong(), anyString(), anyString(), any());
+    }
+}
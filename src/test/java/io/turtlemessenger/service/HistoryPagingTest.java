@@ -0,0 +1,98 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.MessagePage;
+import io.turtlemessenger.model.PendingMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Id-keyset history pages, read past the ring buffer so they reach SQLite. */
+@SpringBootTest
+public class HistoryPagingTest {
+    private static final int MESSAGES = 95;
+    private static final int PAGE = 20;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-paging");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+        registry.add("tm.chat.history-cache.per-room", () -> "5");
+    }
+
+    @Autowired ChatService chat;
+    @Autowired MessageStore store;
+
+    /** Seeds two rooms with interleaved ids, all with the same timestamp; returns the ids of {@code roomId}. */
+    private List<Long> seed(long roomId, long otherRoomId) {
+        Instant ts = Instant.now();
+        List<PendingMessage> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            batch.add(new PendingMessage(roomId, "alice", "m" + i, ts));
+            batch.add(new PendingMessage(otherRoomId, "bob", "other " + i, ts));
+        }
+        long[] ids = store.appendBatch(batch);
+        List<Long> mine = new ArrayList<>();
+        for (int i = 0; i < ids.length; i += 2) mine.add(ids[i]);
+        return mine;
+    }
+
+    private static List<Long> ids(MessagePage page) {
+        return page.messages().stream().map(MessageDTO::getId).toList();
+    }
+
+    @Test
+    void backwardPagesCoverTheRoomOnce() {
+        List<Long> all = seed(801, 802);
+        MessagePage page = chat.getPage(801L, PAGE, null, null);
+        assertEquals(all.subList(MESSAGES - PAGE, MESSAGES), ids(page));
+        assertEquals(all.get(MESSAGES - PAGE), page.nextCursor());
+
+        // a message arriving mid-walk must not shift the older pages
+        store.append(new PendingMessage(801, "alice", "late", Instant.now()));
+        List<Long> walked = new ArrayList<>(ids(page));
+        while (page.nextCursor() != null) {
+            page = chat.getPage(801L, PAGE, page.nextCursor(), null);
+            walked.addAll(0, ids(page));
+        }
+        assertEquals(all, walked);
+    }
+
+    @Test
+    void forwardPagesCoverTheRoomOnce() {
+        List<Long> all = seed(811, 812);
+        List<Long> walked = new ArrayList<>();
+        MessagePage page = chat.getPage(811L, PAGE, null, 0L);
+        walked.addAll(ids(page));
+        while (page.nextCursor() != null) {
+            assertEquals(walked.get(walked.size() - 1), page.nextCursor());
+            page = chat.getPage(811L, PAGE, null, page.nextCursor());
+            walked.addAll(ids(page));
+        }
+        assertEquals(all, walked);
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        List<Long> all = seed(821, 822);
+        MessagePage oldest = chat.getPage(821L, PAGE, all.get(3), null);
+        assertEquals(all.subList(0, 3), ids(oldest));
+        assertNull(oldest.nextCursor());
+        assertEquals(List.of(), chat.getPage(821L, PAGE, null, all.get(MESSAGES - 1)).messages());
+    }
+}
@@ -0,0 +1,104 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.repository.ChatRoomRepository;
+import io.turtlemessenger.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdentityCacheTest {
+    private final ChatRoomRepository rooms = mock(ChatRoomRepository.class);
+    private final UserRepository users = mock(UserRepository.class);
+
+    private IdentityCache cache(int maxUsers, long negativeTtlMillis) {
+        return new IdentityCache(rooms, users, 100, maxUsers, negativeTtlMillis);
+    }
+
+    @Test
+    void insertsEachRoomOnce() {
+        IdentityCache cache = cache(100, 30_000);
+        cache.ensureRoom(1);
+        cache.ensureRoom(1);
+        cache.ensureRooms(List.of(1L, 2L, 2L));
+        verify(rooms, times(1)).insertIfAbsent(eq(1L), any(), any());
+        verify(rooms, times(1)).insertIfAbsent(eq(2L), any(), any());
+        IdentityCache.Stats stats = cache.stats();
+        assertEquals(2, stats.roomMisses());
+        assertEquals(3, stats.roomHits());
+        assertEquals(2, stats.rooms());
+    }
+
+    @Test
+    void cachesUserIds() {
+        when(users.findIdByUsername("alice")).thenReturn(Optional.of(10L));
+        IdentityCache cache = cache(100, 30_000);
+        assertEquals(10L, cache.userId("alice"));
+        assertEquals(10L, cache.userId("alice"));
+        verify(users, times(1)).findIdByUsername("alice");
+    }
+
+    @Test
+    void unknownUsersAreCachedUntilTheyRegister() {
+        when(users.findIdByUsername("bob")).thenReturn(Optional.empty());
+        IdentityCache cache = cache(100, 30_000);
+        assertNull(cache.userId("bob"));
+        assertNull(cache.userId("bob"));
+        verify(users, times(1)).findIdByUsername("bob");
+
+        when(users.findIdByUsername("bob")).thenReturn(Optional.of(11L));
+        cache.invalidateUser("bob");
+        assertEquals(11L, cache.userId("bob"));
+    }
+
+    @Test
+    void unknownUsersExpire() throws InterruptedException {
+        when(users.findIdByUsername("bob")).thenReturn(Optional.empty());
+        IdentityCache cache = cache(100, 1);
+        assertNull(cache.userId("bob"));
+        Thread.sleep(5);
+        assertNull(cache.userId("bob"));
+        verify(users, times(2)).findIdByUsername("bob");
+    }
+
+    @Test
+    void batchLookupQueriesOnlyTheMisses() {
+        when(users.findIdByUsername("alice")).thenReturn(Optional.of(10L));
+        when(users.findIdsByUsernameIn(anyCollection())).thenReturn(List.<Object[]>of(new Object[] {12L, "carol"}));
+        IdentityCache cache = cache(100, 30_000);
+        cache.userId("alice");
+
+        assertEquals(Map.of("alice", 10L, "carol", 12L), cache.userIds(List.of("alice", "carol", "dave")));
+        verify(users).findIdsByUsernameIn(List.of("carol", "dave"));
+        // all three are cached now, dave as unknown
+        assertEquals(Map.of("alice", 10L, "carol", 12L), cache.userIds(List.of("alice", "carol", "dave")));
+        verify(users, times(1)).findIdsByUsernameIn(anyCollection());
+    }
+
+    @Test
+    void keepsAtMostMaxUsers() {
+        when(users.findIdByUsername(any())).thenReturn(Optional.of(1L));
+        IdentityCache cache = cache(2, 30_000);
+        cache.userId("a");
+        cache.userId("b");
+        cache.userId("a");
+        cache.userId("c");
+        assertEquals(2, cache.stats().users());
+        // b was the least recently used
+        cache.userId("a");
+        cache.userId("b");
+        verify(users, times(1)).findIdByUsername("a");
+        verify(users, times(2)).findIdByUsername("b");
+    }
+}
@@ -0,0 +1,68 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.repository.JdbcTimestamps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogMessageStoreTest {
+    @TempDir Path dir;
+
+    private SingleConnectionDataSource dataSource;
+    private LogMessageStore store;
+
+    @AfterEach
+    void close() {
+        if (store != null) store.stop();
+        if (dataSource != null) dataSource.destroy();
+    }
+
+    private JdbcTemplate table() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dir.resolve("test.db"), true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE messages (id INTEGER PRIMARY KEY, room_id INTEGER, sender_username TEXT, text TEXT, created_at TIMESTAMP, seq INTEGER)");
+        return jdbc;
+    }
+
+    private static void insert(JdbcTemplate jdbc, long id, long roomId, Long seq) {
+        jdbc.update(con -> {
+            var ps = con.prepareStatement("INSERT INTO messages (id, room_id, sender_username, text, created_at, seq) VALUES (?, ?, ?, ?, ?, ?)");
+            ps.setLong(1, id);
+            ps.setLong(2, roomId);
+            ps.setString(3, "alice");
+            ps.setString(4, "message " + id);
+            JdbcTimestamps.bind(ps, 5, Instant.ofEpochMilli(1_000 * id));
+            if (seq != null) ps.setLong(6, seq); else ps.setNull(6, java.sql.Types.BIGINT);
+            return ps;
+        });
+    }
+
+    @Test
+    void migrationNumbersRowsWithoutASeq() {
+        JdbcTemplate jdbc = table();
+        // rows from before per-room numbering, then numbered ones, in two rooms
+        insert(jdbc, 1, 1, null);
+        insert(jdbc, 2, 1, null);
+        insert(jdbc, 3, 1, 7L);
+        insert(jdbc, 4, 1, null);
+        insert(jdbc, 5, 2, null);
+        store = new LogMessageStore(jdbc, dir.resolve("log").toString(), 4096, 4096, 100, false, true, 16);
+        store.start();
+
+        List<MessageDTO> room1 = store.afterSeq(1, 0, 10);
+        assertEquals(List.of(1L, 2L, 3L, 4L), room1.stream().map(MessageDTO::getId).toList());
+        assertEquals(List.of(1L, 2L, 7L, 8L), room1.stream().map(MessageDTO::getSeq).toList());
+        assertEquals(8L, store.lastSeq(1));
+        assertEquals(1L, store.lastSeq(2));
+        assertEquals("message 5", store.latest(2, 1).get(0).getContent());
+    }
+}
@@ -0,0 +1,142 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.MessagePage;
+import io.turtlemessenger.dto.RetentionDTO;
+import io.turtlemessenger.model.PendingMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class MessageArchiverTest {
+    private static final long ROOM = 901L;
+    private static Path dir;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        dir = Files.createTempDirectory("tm-archive");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+        registry.add("tm.archive.admins", () -> "root, ops");
+        registry.add("tm.archive.pause-millis", () -> "0");
+        // several chunks per room
+        registry.add("tm.archive.chunk-size", () -> "7");
+        registry.add("tm.chat.history-cache.per-room", () -> "5");
+    }
+
+    @Autowired MessageArchiver archiver;
+    @Autowired MessageStore store;
+    @Autowired ChatService chat;
+    @Autowired RoomVersions versions;
+
+    /** Seeds {@code count} messages {@code daysAgo} old; returns their ids. */
+    private List<Long> seed(int count, int daysAgo) {
+        Instant at = Instant.now().minus(Duration.ofDays(daysAgo)).truncatedTo(ChronoUnit.MILLIS);
+        List<PendingMessage> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) batch.add(new PendingMessage(ROOM, "alice", daysAgo + "d " + i, at.plusMillis(i)));
+        List<Long> ids = new ArrayList<>();
+        for (long id : store.appendBatch(batch)) ids.add(id);
+        return ids;
+    }
+
+    /** Restarting runs a pass at once; waits for it to end. */
+    private void runPass() throws InterruptedException {
+        long before = archiver.stats().passes();
+        archiver.stop();
+        archiver.start();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (archiver.stats().passes() == before && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0, archiver.stats().failedPasses());
+    }
+
+    private List<Long> walkBackward() {
+        List<Long> ids = new ArrayList<>();
+        MessagePage page = chat.getPage(ROOM, 9, null, null);
+        ids.addAll(0, page.messages().stream().map(MessageDTO::getId).toList());
+        while (page.nextCursor() != null) {
+            page = chat.getPage(ROOM, 9, page.nextCursor(), null);
+            ids.addAll(0, page.messages().stream().map(MessageDTO::getId).toList());
+        }
+        return ids;
+    }
+
+    private List<Long> walkForward() {
+        List<Long> ids = new ArrayList<>();
+        MessagePage page = chat.getPage(ROOM, 9, null, 0L);
+        ids.addAll(page.messages().stream().map(MessageDTO::getId).toList());
+        while (page.nextCursor() != null) {
+            page = chat.getPage(ROOM, 9, null, page.nextCursor());
+            ids.addAll(page.messages().stream().map(MessageDTO::getId).toList());
+        }
+        return ids;
+    }
+
+    @Test
+    void archivesAndExpiresByThePolicyAndHistoryStillReadsThrough() throws Exception {
+        List<Long> expired = seed(5, 120);
+        List<Long> cold = seed(20, 60);
+        List<Long> hot = seed(15, 1);
+        archiver.updatePolicy(ROOM, new RetentionDTO(30, 90));
+        String tag = versions.etag(ROOM);
+
+        runPass();
+
+        MessageArchiver.Stats stats = archiver.stats();
+        assertEquals(cold.size(), stats.archived());
+        assertEquals(expired.size(), stats.deleted());
+        assertNotEquals(tag, versions.etag(ROOM));
+        try (Stream<Path> files = Files.list(dir.resolve("archive"))) {
+            assertTrue(files.anyMatch(p -> p.getFileName().toString().matches("messages-\\d{4}-\\d{2}\\.db")));
+        }
+
+        // hot and archived rows come back as one history, in id order, without the expired ones
+        List<Long> kept = new ArrayList<>(cold);
+        kept.addAll(hot);
+        assertEquals(kept, walkBackward());
+        assertEquals(kept, walkForward());
+        // the legacy timestamp cursor reaches into the archive too
+        List<MessageDTO> old = chat.getHistory(ROOM, 50, Instant.now().minus(Duration.ofDays(30)).toEpochMilli());
+        assertEquals(cold, old.stream().map(MessageDTO::getId).toList());
+
+        // a second pass finds nothing left to do
+        runPass();
+        assertEquals(stats.archived(), archiver.stats().archived());
+        assertEquals(stats.deleted(), archiver.stats().deleted());
+    }
+
+    @Test
+    void onlyAdminsMayChangeRetention() {
+        assertTrue(archiver.mayUpdatePolicy("root"));
+        assertTrue(archiver.mayUpdatePolicy("ops"));
+        assertFalse(archiver.mayUpdatePolicy("alice"));
+        assertFalse(archiver.mayUpdatePolicy(null));
+    }
+
+    @Test
+    void policyFallsBackToTheDefaults() {
+        archiver.updatePolicy(911L, new RetentionDTO(7, null));
+        assertEquals(new RetentionDTO(7, 0), archiver.policy(911L));
+        archiver.updatePolicy(911L, new RetentionDTO(null, null));
+        assertEquals(new RetentionDTO(30, 0), archiver.policy(911L));
+    }
+}
@@ -0,0 +1,94 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.SearchHitDTO;
+import io.turtlemessenger.model.PendingMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class MessageSearchTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("tm-search");
+        dir.toFile().deleteOnExit();
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("test.db"));
+        registry.add("tm.archive.dir", () -> dir.resolve("archive").toString());
+        registry.add("tm.store.log.dir", () -> dir.resolve("message-log").toString());
+    }
+
+    @Autowired MessageSearch search;
+    @Autowired MessageStore store;
+
+    private void seed(long roomId, String... contents) {
+        List<PendingMessage> batch = new ArrayList<>();
+        for (String content : contents) batch.add(new PendingMessage(roomId, "alice", content, Instant.now()));
+        store.appendBatch(batch);
+    }
+
+    private List<String> contents(long roomId, String q) {
+        return search.search(roomId, q, 0, 100).hits().stream().map(SearchHitDTO::content).sorted().toList();
+    }
+
+    @Test
+    void quotesEveryTermAndPrefixesTheLast() {
+        assertEquals("\"hello\" \"wor\"*", MessageSearch.matchExpression("  hello   wor "));
+        assertEquals("\"a\"\"b\"*", MessageSearch.matchExpression("a\"b"));
+        assertEquals("\"NEAR(x\" \"y)\" \"OR\" \"content:z\"*", MessageSearch.matchExpression("NEAR(x y) OR content:z"));
+        // terms without a word character are left out
+        assertEquals("\"ok\"*", MessageSearch.matchExpression("* ok -- \""));
+        assertThrows(IllegalArgumentException.class, () -> MessageSearch.matchExpression(" \"* "));
+        assertThrows(IllegalArgumentException.class, () -> MessageSearch.matchExpression(null));
+        String many = MessageSearch.matchExpression("a b c d e f g h i j k l m n o p q r s");
+        assertEquals(16, many.split(" ").length);
+    }
+
+    @Test
+    void findsNewMessagesByEveryTermInTheirRoomOnly() {
+        seed(1001, "the turtle crossed the road", "a quick turtle", "nothing here", "roadworks ahead");
+        seed(1002, "another turtle, another room");
+
+        assertEquals(List.of("a quick turtle", "the turtle crossed the road"), contents(1001, "turtle"));
+        assertEquals(List.of("the turtle crossed the road"), contents(1001, "turtle road"));
+        // the last term is a prefix
+        assertEquals(List.of("roadworks ahead", "the turtle crossed the road"), contents(1001, "road"));
+        assertEquals(List.of(), contents(1001, "turtle ahead"));
+        // operators in the input are just words
+        assertEquals(List.of(), contents(1001, "turtle OR nothing"));
+        assertEquals(List.of("another turtle, another room"), contents(1002, "TURTLE"));
+
+        SearchHitDTO hit = search.search(1001, "quick", 0, 10).hits().get(0);
+        assertEquals(1001L, hit.roomId());
+        assertEquals("alice", hit.senderId());
+        assertTrue(hit.snippet().contains("quick"));
+    }
+
+    @Test
+    void pagesThroughHits() {
+        String[] contents = new String[25];
+        for (int i = 0; i < contents.length; i++) contents[i] = "paged message " + i;
+        seed(1011, contents);
+
+        MessageSearch.Page first = search.search(1011, "paged", 0, 10);
+        assertEquals(10, first.hits().size());
+        assertEquals(1, first.nextPage());
+        MessageSearch.Page last = search.search(1011, "paged", 2, 10);
+        assertEquals(5, last.hits().size());
+        assertNull(last.nextPage());
+    }
+}
@@ -0,0 +1,142 @@
+package io.turtlemessenger.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.turtlemessenger.config.MessagingMetrics;
+import io.turtlemessenger.model.PendingMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MessageWriteBehindTest {
+    private static final long ROOM = 3L;
+
+    private final MessageStore store = mock(MessageStore.class);
+    private final RoomVersions versions = new RoomVersions();
+    // every message the store was handed, in the order it was handed them
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong nextId = new AtomicLong(1);
+    private MessageWriteBehind writeBehind;
+
+    private MessageWriteBehind writeBehind(int capacity, String overflow, long offerTimeoutMillis) {
+        writeBehind = new MessageWriteBehind(store, new RecentMessageCache(10, 1 << 20), versions,
+                new MessagingMetrics(new SimpleMeterRegistry(), 100), capacity, 16, 5, overflow, offerTimeoutMillis);
+        return writeBehind;
+    }
+
+    private static PendingMessage message(String content) {
+        return new PendingMessage(ROOM, "alice", content, Instant.now());
+    }
+
+    private void storeRecords() {
+        when(store.appendBatch(any())).thenAnswer(inv -> record(inv.getArgument(0)));
+    }
+
+    private long[] record(List<PendingMessage> batch) {
+        long[] ids = new long[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            written.add(batch.get(i).content());
+            ids[i] = nextId.getAndIncrement();
+        }
+        return ids;
+    }
+
+    @AfterEach
+    void stop() {
+        if (writeBehind != null) writeBehind.stop();
+    }
+
+    @Test
+    void drainerPersistsInOrder() throws InterruptedException {
+        storeRecords();
+        MessageWriteBehind wb = writeBehind(100, "block", 50);
+        wb.start();
+        for (int i = 0; i < 50; i++) assertTrue(wb.submit(message("m" + i)));
+        wb.stop();
+        assertEquals(50, written.size());
+        for (int i = 0; i < 50; i++) assertEquals("m" + i, written.get(i));
+        assertEquals(50, wb.stats().persisted());
+    }
+
+    @Test
+    void dropRefusesOnceFull() {
+        storeRecords();
+        // not started, so nothing drains the queue
+        MessageWriteBehind wb = writeBehind(1, "drop", 50);
+        assertTrue(wb.submit(message("a")));
+        assertFalse(wb.submit(message("b")));
+        assertEquals(1, wb.stats().dropped());
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void blockWaitsForTheTimeoutThenDrops() {
+        storeRecords();
+        MessageWriteBehind wb = writeBehind(1, "block", 30);
+        assertTrue(wb.submit(message("a")));
+        long start = System.nanoTime();
+        assertFalse(wb.submit(message("b")));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(1, wb.stats().dropped());
+    }
+
+    @Test
+    void callerRunsFlushesWhatIsQueuedFirst() {
+        storeRecords();
+        MessageWriteBehind wb = writeBehind(1, "caller-runs", 50);
+        String before = versions.etag(ROOM);
+        assertTrue(wb.submit(message("a")));
+        assertTrue(wb.submit(message("b")));
+        assertEquals(List.of("a", "b"), written);
+        assertEquals(0, wb.stats().dropped());
+        assertNotEquals(before, versions.etag(ROOM));
+    }
+
+    @Test
+    void callerRunsReportsAFailedInsert() {
+        when(store.appendBatch(any())).thenThrow(new IllegalStateException("disk full"));
+        MessageWriteBehind wb = writeBehind(1, "caller-runs", 50);
+        assertTrue(wb.submit(message("a")));
+        assertFalse(wb.submit(message("b")));
+        assertEquals(2, wb.stats().failed());
+        assertEquals(0, wb.stats().dropped());
+    }
+
+    @Test
+    void callerRunsWaitsForTheDrainersBatch() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(store.appendBatch(any())).thenAnswer(inv -> {
+            entered.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return record(inv.getArgument(0));
+        });
+        MessageWriteBehind wb = writeBehind(1, "caller-runs", 50);
+        wb.start();
+        assertTrue(wb.submit(message("a")));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // the drainer is inside the store with "a"; "b" fills the queue and "c" has to run itself
+        assertTrue(wb.submit(message("b")));
+        CompletableFuture<Boolean> c = CompletableFuture.supplyAsync(() -> wb.submit(message("c")));
+        Thread.sleep(50);
+        assertFalse(c.isDone());
+        release.countDown();
+        assertTrue(c.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "c"), written);
+    }
+}
@@ -0,0 +1,116 @@
+package io.turtlemessenger.service;
+
+import io.turtlemessenger.dto.MessageDTO;
+import io.turtlemessenger.dto.MessagePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecentMessageCacheTest {
+    private static final long ROOM = 7L;
+
+    private static MessageDTO message(long id) {
+        return new MessageDTO(id, ROOM, "alice", "message " + id, 1_000 + id, id);
+    }
+
+    private static List<MessageDTO> messages(long from, long to) {
+        List<MessageDTO> out = new ArrayList<>();
+        for (long id = from; id <= to; id++) out.add(message(id));
+        return out;
+    }
+
+    private static List<Long> ids(MessagePage page) {
+        return page.messages().stream().map(MessageDTO::getId).toList();
+    }
+
+    @Test
+    void missesUntilWarmed() {
+        RecentMessageCache cache = new RecentMessageCache(10, 1 << 20);
+        assertNull(cache.latest(ROOM, 5));
+        cache.warm(ROOM, cache.stamp(ROOM), messages(1, 3), false);
+        MessagePage page = cache.latest(ROOM, 5);
+        assertNotNull(page);
+        assertEquals(List.of(1L, 2L, 3L), ids(page));
+        // the whole room is cached: no older page
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void warmUpRacingAWriteIsDropped() {
+        RecentMessageCache cache = new RecentMessageCache(10, 1 << 20);
+        long stamp = cache.stamp(ROOM);
+        // committed after the warm-up read the table, so the snapshot lacks it
+        cache.append(ROOM, message(4));
+        cache.warm(ROOM, stamp, messages(1, 3), false);
+        assertNull(cache.latest(ROOM, 5));
+    }
+
+    @Test
+    void fullRingAnswersOnlyWhatItHolds() {
+        RecentMessageCache cache = new RecentMessageCache(5, 1 << 20);
+        cache.warm(ROOM, cache.stamp(ROOM), messages(6, 10), false);
+        cache.append(ROOM, message(11));
+
+        MessagePage latest = cache.latest(ROOM, 3);
+        assertEquals(List.of(9L, 10L, 11L), ids(latest));
+        assertEquals(9L, latest.nextCursor());
+        assertEquals(List.of(7L, 8L), ids(cache.before(ROOM, 9, 2)));
+        // message 6 fell off, so older pages and pages reaching past the ring go to the store
+        assertNull(cache.before(ROOM, 8, 2));
+        assertNull(cache.latest(ROOM, 6));
+        assertNull(cache.after(ROOM, 5, 10));
+        assertEquals(List.of(9L, 10L, 11L), ids(cache.after(ROOM, 8, 10)));
+        assertEquals(List.of(10L, 11L), ids(cache.afterSeq(ROOM, 9, 10)));
+        assertNull(cache.afterSeq(ROOM, 5, 10));
+    }
+
+    @Test
+    void outOfOrderCommitsLandInIdOrder() {
+        RecentMessageCache cache = new RecentMessageCache(10, 1 << 20);
+        cache.warm(ROOM, cache.stamp(ROOM), messages(1, 2), false);
+        cache.append(ROOM, message(4));
+        cache.append(ROOM, message(3));
+        cache.append(ROOM, message(3));
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(cache.latest(ROOM, 10)));
+    }
+
+    @Test
+    void archivedRoomIsNeverComplete() {
+        RecentMessageCache cache = new RecentMessageCache(10, 1 << 20);
+        cache.warm(ROOM, cache.stamp(ROOM), messages(1, 3), true);
+        assertNull(cache.latest(ROOM, 5));
+        assertEquals(List.of(2L, 3L), ids(cache.latest(ROOM, 2)));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedRoomsOverBudget() {
+        // each message is estimated at a little over 100 bytes
+        RecentMessageCache cache = new RecentMessageCache(10, 1_000);
+        for (long room = 1; room <= 3; room++) {
+            List<MessageDTO> rows = new ArrayList<>();
+            for (long id = 1; id <= 4; id++) rows.add(new MessageDTO(room * 100 + id, room, "alice", "x", 0L, id));
+            cache.warm(room, cache.stamp(room), rows, false);
+            cache.latest(1, 1);
+        }
+        assertTrue(cache.sizeBytes() <= 1_000);
+        assertEquals(2, cache.roomCount());
+        assertNotNull(cache.latest(1, 1));
+        assertNull(cache.latest(2, 1));
+        assertNotNull(cache.latest(3, 1));
+    }
+
+    @Test
+    void invalidateDropsTheRoom() {
+        RecentMessageCache cache = new RecentMessageCache(10, 1 << 20);
+        cache.warm(ROOM, cache.stamp(ROOM), messages(1, 3), false);
+        cache.invalidate(ROOM);
+        assertNull(cache.latest(ROOM, 1));
+        assertEquals(0, cache.sizeBytes());
+    }
+}
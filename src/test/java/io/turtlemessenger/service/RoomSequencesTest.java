@@ -0,0 +1,76 @@
+package io.turtlemessenger.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RoomSequencesTest {
+    private final MessageStore store = mock(MessageStore.class);
+    private final RoomSequences sequences = new RoomSequences(store);
+
+    private long take(long roomId) {
+        return sequences.next(roomId, seq -> seq);
+    }
+
+    @Test
+    void continuesFromTheStore() {
+        when(store.lastSeq(1L)).thenReturn(41L);
+        assertEquals(42L, take(1L));
+        assertEquals(43L, take(1L));
+        // other rooms count on their own
+        assertEquals(1L, take(2L));
+        verify(store, times(1)).lastSeq(1L);
+    }
+
+    @Test
+    void failedWritesGiveTheNumberBack() {
+        assertNull(sequences.next(1L, seq -> null));
+        assertThrows(IllegalStateException.class, () -> sequences.next(1L, seq -> {
+            throw new IllegalStateException("queue full");
+        }));
+        assertEquals(1L, take(1L));
+    }
+
+    @Test
+    void reservesARunForABatch() {
+        assertEquals(1L, sequences.<Long>next(1L, 5, seq -> seq));
+        assertEquals(6L, take(1L));
+    }
+
+    @Test
+    void concurrentSendsGetEveryNumberOnceAndInOrder() throws InterruptedException {
+        int threads = 8;
+        int perThread = 2_000;
+        // appended under the room's lock, so this is the order numbers reach the store
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    sequences.next(7L, seq -> {
+                        written.add(seq);
+                        return seq;
+                    });
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(LongStream.rangeClosed(1, (long) threads * perThread).boxed().toList(), written);
+    }
+}
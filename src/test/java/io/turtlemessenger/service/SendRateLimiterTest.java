@@ -0,0 +1,59 @@
+package io.turtlemessenger.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SendRateLimiterTest {
+
+    private static SendRateLimiter limiter(double userRate, int userBurst, double roomRate, int roomBurst) {
+        return new SendRateLimiter(true, userRate, userBurst, roomRate, roomBurst, 120);
+    }
+
+    @Test
+    void allowsTheBurstThenRefusesTheUser() {
+        SendRateLimiter limiter = limiter(1, 3, 1_000, 1_000);
+        for (int i = 0; i < 3; i++) assertNull(limiter.check("alice", 1));
+        SendRateLimiter.Rejection rejected = limiter.check("alice", 1);
+        assertNotNull(rejected);
+        assertEquals("user", rejected.scope());
+        // one token a second
+        assertTrue(rejected.retryAfterMillis() > 900 && rejected.retryAfterMillis() <= 1_001, () -> rejected.toString());
+        // other users have their own bucket
+        assertNull(limiter.check("bob", 1));
+    }
+
+    @Test
+    void refusesABusyRoomAndRefundsTheUser() {
+        SendRateLimiter limiter = limiter(1, 2, 1, 2);
+        assertNull(limiter.check("alice", 1));
+        assertNull(limiter.check("bob", 1));
+        SendRateLimiter.Rejection rejected = limiter.check("carol", 1);
+        assertNotNull(rejected);
+        assertEquals("room", rejected.scope());
+        // the refused send did not cost carol a token: both of hers are still there for other rooms
+        assertNull(limiter.check("carol", 2));
+        assertNull(limiter.check("carol", 3));
+        assertEquals("user", limiter.check("carol", 4).scope());
+    }
+
+    @Test
+    void tokensComeBackOverTime() throws InterruptedException {
+        SendRateLimiter limiter = limiter(1_000, 1, 1_000, 1_000);
+        assertNull(limiter.check("alice", 1));
+        SendRateLimiter.Rejection rejected = limiter.check("alice", 1);
+        assertNotNull(rejected);
+        Thread.sleep(rejected.retryAfterMillis() + 5);
+        assertNull(limiter.check("alice", 1));
+    }
+
+    @Test
+    void disabledAllowsEverything() {
+        SendRateLimiter limiter = new SendRateLimiter(false, 1, 1, 1, 1, 120);
+        for (int i = 0; i < 100; i++) assertNull(limiter.check("alice", 1));
+        assertEquals(0, limiter.trackedBuckets());
+    }
+}